@@ -0,0 +1,292 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.disk;
+
+import com.github.jbellis.jvector.util.ArrayUtil;
+
+import java.io.DataOutput;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.zip.CRC32C;
+
+/**
+ * CRC32C checksums of the fixed-size blocks of a range of a file -- a whole container, or a
+ * graph or CompressedVectors written on its own -- and a record of which blocks have been
+ * verified.  The blocks are read for verification through a {@link BlockVerifier}, once each.
+ * <p>
+ * On disk, a table is [block size][count][checksums][checksum of the preceding fields], and
+ * follows the bytes it covers.
+ */
+class BlockChecksums
+{
+    static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+    // how many blocks each task of a background verification checks
+    private static final int BLOCKS_PER_TASK = 64;
+
+    private final long start;
+    private final int blockSize;
+    private final long length;
+    private final int[] checksums;
+    private final AtomicLongArray verified;
+
+    /**
+     * @param start  the file offset of the first block
+     * @param length the number of bytes covered by the checksums, which must be
+     *               {@code checksums.length} blocks (the last of which may be partial)
+     */
+    BlockChecksums(long start, int blockSize, long length, int[] checksums) {
+        if (blockSize <= 0 || (length + blockSize - 1) / blockSize != checksums.length) {
+            throw new IllegalArgumentException(String.format("%d checksums of %d-byte blocks cannot cover %d bytes", checksums.length, blockSize, length));
+        }
+        this.start = start;
+        this.blockSize = blockSize;
+        this.length = length;
+        this.checksums = checksums;
+        this.verified = new AtomicLongArray((checksums.length + 63) / 64);
+    }
+
+    /** @return true if every byte covered by `other` is covered by this table */
+    boolean covers(BlockChecksums other) {
+        return other.start >= start && other.start + other.length <= start + length;
+    }
+
+    /**
+     * Verifies any blocks overlapping [position, position + len) that have not been verified yet
+     */
+    void ensureVerified(long position, long len, BlockReader source) throws IOException {
+        long from = Math.max(position, start);
+        long to = Math.min(position + len, start + length);
+        if (from >= to) {
+            return;
+        }
+        int first = (int) ((from - start) / blockSize);
+        int last = (int) ((to - 1 - start) / blockSize);
+        for (int block = first; block <= last; block++) {
+            if (!isVerified(block)) {
+                verify(block, source, null);
+            }
+        }
+    }
+
+    private boolean isVerified(int block) {
+        return (verified.get(block >> 6) & (1L << block)) != 0;
+    }
+
+    private void verify(int block, BlockReader source, byte[] scratch) throws IOException {
+        long blockStart = start + (long) block * blockSize;
+        int n = (int) Math.min(blockSize, start + length - blockStart);
+        var bytes = scratch != null && n == scratch.length ? scratch : new byte[n];
+        source.read(blockStart, bytes);
+        var crc = new CRC32C();
+        crc.update(bytes, 0, n);
+        if ((int) crc.getValue() != checksums[block]) {
+            throw new CorruptIndexException(String.format("Checksum mismatch in block %d (bytes %d to %d)", block, blockStart, blockStart + n));
+        }
+        verified.getAndUpdate(block >> 6, bits -> bits | (1L << block));
+    }
+
+    /**
+     * Verifies every block overlapping [position, position + len) that has not been verified yet,
+     * in parallel tasks on `executor`.  The future completes exceptionally with a
+     * {@link CorruptIndexException} (wrapped in an UncheckedIOException) if any block is corrupt.
+     */
+    CompletableFuture<Void> verifyAll(long position, long len, BlockReader source, Executor executor) {
+        long from = Math.max(position, start);
+        long to = Math.min(position + len, start + length);
+        var tasks = new ArrayList<CompletableFuture<Void>>();
+        if (from < to) {
+            int first = (int) ((from - start) / blockSize);
+            int end = (int) ((to - 1 - start) / blockSize) + 1;
+            for (int taskStart = first; taskStart < end; taskStart += BLOCKS_PER_TASK) {
+                int taskFirst = taskStart;
+                int taskEnd = Math.min(taskStart + BLOCKS_PER_TASK, end);
+                tasks.add(CompletableFuture.runAsync(() -> {
+                    var scratch = new byte[blockSize];
+                    for (int block = taskFirst; block < taskEnd; block++) {
+                        if (!isVerified(block)) {
+                            try {
+                                verify(block, source, scratch);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }
+                    }
+                }, executor));
+            }
+        }
+        return CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0]));
+    }
+
+    long ramBytesUsed() {
+        return (long) checksums.length * Integer.BYTES + verified.length() * Long.BYTES;
+    }
+
+    /** @return the number of bytes {@link #write} writes for `count` checksums */
+    static long serializedSize(int count) {
+        return (3L + count) * Integer.BYTES;
+    }
+
+    /** Writes the table of `checksums` of `blockSize`-byte blocks */
+    static void write(DataOutput out, int blockSize, int[] checksums) throws IOException {
+        var crc = new CRC32C();
+        var bytes = new byte[Integer.BYTES];
+        for (int i = -2; i < checksums.length; i++) {
+            int value = i == -2 ? blockSize : i == -1 ? checksums.length : checksums[i];
+            out.writeInt(value);
+            crc.update(bigEndian(value, bytes));
+        }
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Reads a table written by {@link #write} at the reader's position, covering the `length`
+     * bytes at `start`
+     */
+    static BlockChecksums read(RandomAccessReader in, long start, long length) throws IOException {
+        var crc = new CRC32C();
+        var bytes = new byte[Integer.BYTES];
+        int blockSize = in.readInt();
+        crc.update(bigEndian(blockSize, bytes));
+        int count = in.readInt();
+        crc.update(bigEndian(count, bytes));
+        if (blockSize <= 0 || count < 0 || (length + blockSize - 1) / blockSize != count) {
+            throw new CorruptIndexException(String.format("%d checksums of %d-byte blocks cannot cover %d bytes at %d", count, blockSize, length, start));
+        }
+        var checksums = new int[count];
+        in.read(checksums, 0, count);
+        for (int checksum : checksums) {
+            crc.update(bigEndian(checksum, bytes));
+        }
+        if ((int) crc.getValue() != in.readInt()) {
+            throw new CorruptIndexException("Checksum mismatch in the checksum table of the bytes at " + start);
+        }
+        return new BlockChecksums(start, blockSize, length, checksums);
+    }
+
+    private static byte[] bigEndian(int value, byte[] bytes) {
+        bytes[0] = (byte) (value >>> 24);
+        bytes[1] = (byte) (value >>> 16);
+        bytes[2] = (byte) (value >>> 8);
+        bytes[3] = (byte) value;
+        return bytes;
+    }
+
+    /**
+     * Reads the raw bytes of a file for verification.  Must be threadsafe.
+     */
+    @FunctionalInterface
+    interface BlockReader
+    {
+        void read(long position, byte[] dest) throws IOException;
+    }
+
+    /**
+     * Counts the bytes written (DataOutputStream counts in an int, which overflows past 2GB)
+     * and checksums them in blocks of `blockSize`
+     */
+    static class ChecksummingOutputStream extends FilterOutputStream
+    {
+        final int blockSize;
+        long count;
+        private final CRC32C crc = new CRC32C();
+        private int[] checksums = new int[16];
+        private int checksumCount;
+        private boolean finished;
+
+        ChecksummingOutputStream(OutputStream out, int blockSize) {
+            super(out);
+            if (blockSize <= 0) {
+                throw new IllegalArgumentException("Checksum block size must be positive: " + blockSize);
+            }
+            this.blockSize = blockSize;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (!finished) {
+                crc.update(b);
+            }
+            count++;
+            endBlockIfFull();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            while (len > 0) {
+                int n = finished ? len : (int) Math.min(len, blockSize - count % blockSize);
+                if (!finished) {
+                    crc.update(b, off, n);
+                }
+                count += n;
+                off += n;
+                len -= n;
+                endBlockIfFull();
+            }
+        }
+
+        private void endBlockIfFull() {
+            if (!finished && count % blockSize == 0) {
+                endBlock();
+            }
+        }
+
+        private void endBlock() {
+            checksums = ArrayUtil.grow(checksums, checksumCount + 1);
+            checksums[checksumCount++] = (int) crc.getValue();
+            crc.reset();
+        }
+
+        /** @return the checksums of everything written so far; later writes are not checksummed */
+        int[] finishChecksums() {
+            if (count % blockSize != 0) {
+                endBlock();
+            }
+            finished = true;
+            return Arrays.copyOf(checksums, checksumCount);
+        }
+    }
+
+    /**
+     * Adapts a DataOutput to an OutputStream, so that a {@link ChecksummingOutputStream} can sit
+     * in front of it
+     */
+    static OutputStream asOutputStream(DataOutput out) {
+        if (out instanceof OutputStream) {
+            return (OutputStream) out;
+        }
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+        };
+    }
+}
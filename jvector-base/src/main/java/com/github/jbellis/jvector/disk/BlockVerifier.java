@@ -0,0 +1,229 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.disk;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * The checksum tables registered for one file, and the raw reads used to verify their blocks.
+ * Readers check with their verifier before returning any bytes, so a block is verified the
+ * first time any of them reads from it, and only that once.
+ * <p>
+ * {@link MappedRandomAccessReader} and {@link DirectReaderSupplier} keep a verifier below the
+ * reader -- the mapped reader shares one with its duplicates, and the direct supplier verifies
+ * blocks as it loads them into its pool -- so their readers can be verified without being
+ * wrapped, and the mapped reader keeps scoring vectors in place.  Readers from other suppliers
+ * are wrapped by {@link #verifying}.
+ */
+class BlockVerifier
+{
+    private final BlockChecksums.BlockReader source;
+    private volatile BlockChecksums[] tables = new BlockChecksums[0];
+
+    BlockVerifier(BlockChecksums.BlockReader source) {
+        this.source = source;
+    }
+
+    /**
+     * Registers `checksums`, unless an already registered table covers the same bytes, as the
+     * table of a container does for the structures in it.
+     * @return the table that covers the bytes of `checksums`
+     */
+    synchronized BlockChecksums register(BlockChecksums checksums) {
+        for (var table : tables) {
+            if (table.covers(checksums)) {
+                return table;
+            }
+        }
+        var registered = Arrays.copyOf(tables, tables.length + 1);
+        registered[tables.length] = checksums;
+        tables = registered;
+        registered(checksums);
+        return checksums;
+    }
+
+    /**
+     * Called after `checksums` is registered, for verifiers of readers that cache blocks read
+     * before it was (such as the one that read the checksums themselves) to check them too
+     */
+    void registered(BlockChecksums checksums) {
+    }
+
+    /**
+     * Verifies any blocks overlapping [position, position + len) that have not been verified yet
+     */
+    void ensureVerified(long position, long len) throws IOException {
+        for (var table : tables) {
+            table.ensureVerified(position, len, source);
+        }
+    }
+
+    /** See {@link BlockChecksums#verifyAll} */
+    CompletableFuture<Void> verifyAll(BlockChecksums table, long position, long len, Executor executor) {
+        return table.verifyAll(position, len, source, executor);
+    }
+
+    /**
+     * @return the verifier consulted by the readers from `supplier`, or null if they don't
+     * consult one
+     */
+    static BlockVerifier of(ReaderSupplier supplier) throws IOException {
+        if (supplier instanceof DirectReaderSupplier) {
+            return ((DirectReaderSupplier) supplier).verifier();
+        }
+        if (supplier instanceof VerifyingReaderSupplier) {
+            return ((VerifyingReaderSupplier) supplier).verifier;
+        }
+        try (var reader = supplier.get()) {
+            return of(reader);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /** @return the verifier consulted by `reader`, or null if it doesn't consult one */
+    static BlockVerifier of(RandomAccessReader reader) {
+        if (reader instanceof MappedRandomAccessReader) {
+            return ((MappedRandomAccessReader) reader).verifier();
+        }
+        if (reader instanceof VerifyingReader) {
+            return ((VerifyingReader) reader).verifier;
+        }
+        return null;
+    }
+
+    /**
+     * @return `supplier` if its readers already consult a verifier, and otherwise a supplier that
+     * wraps them in readers that do
+     */
+    static ReaderSupplier verifying(ReaderSupplier supplier) throws IOException {
+        return of(supplier) == null ? new VerifyingReaderSupplier(supplier) : supplier;
+    }
+
+    private static class VerifyingReaderSupplier implements ReaderSupplier
+    {
+        private final ReaderSupplier supplier;
+        private final BlockVerifier verifier;
+
+        VerifyingReaderSupplier(ReaderSupplier supplier) {
+            this.supplier = supplier;
+            this.verifier = new BlockVerifier((position, dest) -> {
+                try (var reader = supplier.get()) {
+                    reader.seek(position);
+                    reader.readFully(dest);
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+            });
+        }
+
+        @Override
+        public RandomAccessReader get() {
+            return new VerifyingReader(supplier.get(), verifier);
+        }
+
+        @Override
+        public void close() throws IOException {
+            supplier.close();
+        }
+    }
+
+    /**
+     * A RandomAccessReader that verifies each block before reading from it for the first time
+     */
+    private static class VerifyingReader implements RandomAccessReader
+    {
+        private final RandomAccessReader reader;
+        private final BlockVerifier verifier;
+        private long position;
+
+        VerifyingReader(RandomAccessReader reader, BlockVerifier verifier) {
+            this.reader = reader;
+            this.verifier = verifier;
+        }
+
+        private void check(long bytes) throws IOException {
+            verifier.ensureVerified(position, bytes);
+            position += bytes;
+        }
+
+        @Override
+        public void seek(long offset) throws IOException {
+            reader.seek(offset);
+            position = offset;
+        }
+
+        @Override
+        public long length() throws IOException {
+            return reader.length();
+        }
+
+        @Override
+        public int readInt() throws IOException {
+            check(Integer.BYTES);
+            return reader.readInt();
+        }
+
+        @Override
+        public float readFloat() throws IOException {
+            check(Float.BYTES);
+            return reader.readFloat();
+        }
+
+        @Override
+        public long readLong() throws IOException {
+            check(Long.BYTES);
+            return reader.readLong();
+        }
+
+        @Override
+        public void readFully(byte[] bytes) throws IOException {
+            check(bytes.length);
+            reader.readFully(bytes);
+        }
+
+        @Override
+        public void readFully(float[] floats) throws IOException {
+            check((long) floats.length * Float.BYTES);
+            reader.readFully(floats);
+        }
+
+        @Override
+        public void readFully(short[] shorts) throws IOException {
+            check((long) shorts.length * Short.BYTES);
+            reader.readFully(shorts);
+        }
+
+        @Override
+        public void read(int[] ints, int offset, int count) throws IOException {
+            check((long) count * Integer.BYTES);
+            reader.read(ints, offset, count);
+        }
+
+        @Override
+        public void close() throws Exception {
+            reader.close();
+        }
+    }
+}
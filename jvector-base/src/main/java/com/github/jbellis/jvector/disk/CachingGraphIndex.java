@@ -17,8 +17,10 @@
 package com.github.jbellis.jvector.disk;
 
 import com.github.jbellis.jvector.graph.GraphIndex;
+import com.github.jbellis.jvector.graph.NeighborSimilarity;
 import com.github.jbellis.jvector.graph.NodesIterator;
 import com.github.jbellis.jvector.util.Accountable;
+import com.github.jbellis.jvector.vector.VectorSimilarityFunction;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
@@ -29,12 +31,24 @@ public class CachingGraphIndex implements GraphIndex<float[]>, AutoCloseable, Ac
 
     private final GraphCache cache;
     private final OnDiskGraphIndex<float[]> graph;
+    private final NodeAccessProfile profile;
 
     public CachingGraphIndex(OnDiskGraphIndex<float[]> graph)
+    {
+        this(graph, new int[0], null);
+    }
+
+    /**
+     * @param warmupNodes nodes to cache in addition to those near the entry node, usually the
+     *                    hot nodes saved from the profile of a previous run
+     * @param profile if not null, records the nodes expanded by searches against this index
+     */
+    public CachingGraphIndex(OnDiskGraphIndex<float[]> graph, int[] warmupNodes, NodeAccessProfile profile)
     {
         this.graph = graph;
+        this.profile = profile;
         try {
-            this.cache = GraphCache.load(graph, BFS_DISTANCE);
+            this.cache = GraphCache.load(graph, BFS_DISTANCE, warmupNodes);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
@@ -51,7 +65,7 @@ public class CachingGraphIndex implements GraphIndex<float[]>, AutoCloseable, Ac
     }
 
     @Override
-    public View<float[]> getView() {
+    public CachedView getView() {
         return new CachedView(graph.getView());
     }
 
@@ -70,27 +84,72 @@ public class CachingGraphIndex implements GraphIndex<float[]>, AutoCloseable, Ac
         graph.close();
     }
 
-    private class CachedView implements View<float[]> {
-        private final View<float[]> view;
+    public class CachedView implements View<float[]> {
+        private final OnDiskGraphIndex<float[]>.OnDiskView view;
+        private int[] uncached = new int[0];
 
-        public CachedView(View<float[]> view) {
+        public CachedView(OnDiskGraphIndex<float[]>.OnDiskView view) {
             this.view = view;
         }
 
+        /**
+         * Compares `query` with the vector of `node`, in the cache if it is there and otherwise
+         * in place on disk; see {@link OnDiskGraphIndex.OnDiskView#similarity}
+         */
+        public float similarity(float[] query, int node, VectorSimilarityFunction vsf) {
+            float score = cache.similarity(query, node, vsf);
+            if (!Float.isNaN(score)) {
+                return score;
+            }
+            return view.similarity(query, node, vsf);
+        }
+
+        /**
+         * @return a ReRanker that scores vectors in place with {@link #similarity}
+         */
+        public NeighborSimilarity.DirectReRanker<float[]> rerankerFor(float[] query, VectorSimilarityFunction vsf) {
+            return node -> similarity(query, node, vsf);
+        }
+
         @Override
         public NodesIterator getNeighborsIterator(int node) {
-            var cached = cache.getNode(node);
+            if (profile != null) {
+                profile.record(node);
+            }
+            var cached = cache.getNeighborsIterator(node);
             if (cached != null) {
-                return new NodesIterator.ArrayNodesIterator(cached.neighbors, cached.neighbors.length);
+                return cached;
             }
             return view.getNeighborsIterator(node);
         }
 
+        @Override
+        public void prefetch(int[] nodes, int count) {
+            // cached nodes don't need loading
+            if (uncached.length < count) {
+                uncached = new int[count];
+            }
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                if (!cache.containsNode(nodes[i])) {
+                    uncached[n++] = nodes[i];
+                }
+            }
+            if (n > 0) {
+                view.prefetch(uncached, n);
+            }
+        }
+
+        @Override
+        public long getIoRounds() {
+            return view.getIoRounds();
+        }
+
         @Override
         public float[] getVector(int node) {
-            var cached = cache.getNode(node);
+            var cached = cache.getVector(node);
             if (cached != null) {
-                return cached.vector;
+                return cached;
             }
             return view.getVector(node);
         }
@@ -16,16 +16,32 @@
 
 package com.github.jbellis.jvector.disk;
 
+import com.github.jbellis.jvector.graph.NeighborSimilarity;
 import com.github.jbellis.jvector.pq.ProductQuantization;
 import com.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import com.github.jbellis.jvector.vector.VectorUtil;
 
+import java.io.BufferedOutputStream;
 import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Product-quantized codes for a set of vectors, with the ProductQuantization that encodes them.
+ * <p>
+ * On disk, a header is followed by the codebooks, the codes, and a table of CRC32C checksums of
+ * each block of all of that, which {@link #load} verifies before returning.  Files written before
+ * the header was added (which start directly with the codebooks) can still be loaded, unverified.
+ */
 public class CompressedVectors
 {
+    // negative, and not ProductQuantization's rotation marker, so it can't be mistaken for the
+    // start of the codebooks that unversioned files start with
+    private static final int MAGIC = 0xC0DE5EC5;
+    private static final int VERSION = 1;
+
     private final ProductQuantization pq;
     private final List<byte[]> compressedVectors;
 
@@ -37,20 +53,43 @@ public class CompressedVectors
 
     public void write(DataOutput out) throws IOException
     {
+        // everything up to the checksums goes through `checksummed`
+        var checksummed = new BlockChecksums.ChecksummingOutputStream(BlockChecksums.asOutputStream(out), BlockChecksums.DEFAULT_BLOCK_SIZE);
+        var dataOut = new DataOutputStream(new BufferedOutputStream(checksummed, BlockChecksums.DEFAULT_BLOCK_SIZE));
+        dataOut.writeInt(MAGIC);
+        dataOut.writeInt(VERSION);
+
         // pq codebooks
-        pq.write(out);
+        pq.write(dataOut);
 
         // compressed vectors
-        out.writeInt(compressedVectors.size());
-        out.writeInt(pq.getSubspaceCount());
+        dataOut.writeInt(compressedVectors.size());
+        dataOut.writeInt(pq.getSubspaceCount());
         for (var v : compressedVectors) {
-            out.write(v);
+            dataOut.write(v);
         }
+
+        dataOut.flush();
+        BlockChecksums.write(out, checksummed.blockSize, checksummed.finishChecksums());
     }
 
+    /**
+     * Loads the CompressedVectors written at `offset`, after verifying their checksums unless
+     * `in` has already verified them (as the readers of an {@link IndexContainer} do)
+     */
     public static CompressedVectors load(RandomAccessReader in, long offset) throws IOException
     {
         in.seek(offset);
+        boolean checksummed = in.readInt() == MAGIC;
+        if (checksummed) {
+            int version = in.readInt();
+            if (version > VERSION) {
+                throw new IllegalArgumentException(String.format("Unsupported version %d; max supported is %d", version, VERSION));
+            }
+        } else {
+            // unversioned
+            in.seek(offset);
+        }
 
         // pq codebooks
         var pq = ProductQuantization.load(in);
@@ -59,6 +98,11 @@ public class CompressedVectors
         int size = in.readInt();
         var compressedVectors = new ArrayList<byte[]>(size);
         int compressedDimension = in.readInt();
+        if (checksummed) {
+            long codesOffset = offset + 4 * Integer.BYTES + pq.serializedSize();
+            verify(in, offset, codesOffset + (long) size * compressedDimension);
+            in.seek(codesOffset);
+        }
         for (int i = 0; i < size; i++)
         {
             byte[] vector = new byte[compressedDimension];
@@ -69,17 +113,143 @@ public class CompressedVectors
         return new CompressedVectors(pq, compressedVectors);
     }
 
+    /** Checks the bytes in [offset, end) against the checksums that follow them */
+    private static void verify(RandomAccessReader in, long offset, long end) throws IOException
+    {
+        in.seek(end);
+        var checksums = BlockChecksums.read(in, offset, end - offset);
+        var verifier = BlockVerifier.of(in);
+        if (verifier == null) {
+            verifier = new BlockVerifier((position, dest) -> {
+                in.seek(position);
+                in.readFully(dest);
+            });
+        }
+        verifier.register(checksums);
+        verifier.ensureVerified(offset, end - offset);
+    }
+
     public float decodedSimilarity(int ordinal, float[] v, VectorSimilarityFunction similarityFunction)
+    {
+        return decodedSimilarity(pq, compressedVectors.get(ordinal), v, similarityFunction);
+    }
+
+    /**
+     * @return a score function for `query` that looks up the partial scores of each code in a table
+     * computed once per query, instead of decoding each vector it scores; see {@link #codeScoreFunctionFor}
+     */
+    public NeighborSimilarity.ApproximateScoreFunction approximateScoreFunctionFor(float[] query, VectorSimilarityFunction similarityFunction)
+    {
+        var scoreFunction = codeScoreFunctionFor(pq, query, similarityFunction);
+        return node -> scoreFunction.similarityTo(compressedVectors.get(node), 0);
+    }
+
+    /**
+     * Scores the code at `offset` in `codes` against a fixed query
+     */
+    interface CodeScoreFunction
+    {
+        float similarityTo(byte[] codes, int offset);
+    }
+
+    /**
+     * @return a function that scores codes against `query` by summing their entries in the table
+     * computed by {@link ProductQuantization#partialScores}.  COSINE does not decompose by
+     * subspace, so it sums the DOT_PRODUCT table and {@link ProductQuantization#partialSquaredNorms}
+     * instead, and divides one by the other.
+     */
+    static CodeScoreFunction codeScoreFunctionFor(ProductQuantization pq, float[] query, VectorSimilarityFunction similarityFunction)
+    {
+        int M = pq.getSubspaceCount();
+        int clusters = pq.getClusterCount();
+        if (similarityFunction == VectorSimilarityFunction.COSINE) {
+            var dots = pq.partialScores(query, VectorSimilarityFunction.DOT_PRODUCT);
+            var norms = pq.partialSquaredNorms();
+            float queryNorm = (float) Math.sqrt(VectorUtil.dotProduct(query, query));
+            return (codes, offset) -> {
+                float dot = 0;
+                float squaredNorm = 0;
+                for (int m = 0; m < M; m++) {
+                    int i = m * clusters + Byte.toUnsignedInt(codes[offset + m]);
+                    dot += dots[i];
+                    squaredNorm += norms[i];
+                }
+                float cosine = (float) (dot / (queryNorm * Math.sqrt(squaredNorm)));
+                return (1 + cosine) / 2;
+            };
+        }
+
+        var partials = pq.partialScores(query, similarityFunction);
+        boolean dot = similarityFunction == VectorSimilarityFunction.DOT_PRODUCT;
+        return (codes, offset) -> {
+            float sum = 0;
+            for (int m = 0; m < M; m++) {
+                sum += partials[m * clusters + Byte.toUnsignedInt(codes[offset + m])];
+            }
+            return dot ? (1 + sum) / 2 : 1 / (1 + sum);
+        };
+    }
+
+    /**
+     * @return similarities between the compressed vectors themselves, from the centroid-to-centroid
+     * tables computed once here by {@link ProductQuantization#symmetricScores}, so that graph
+     * construction or repair can compare nodes without their full vectors.  COSINE does not
+     * decompose by subspace, so it decodes the first node of each comparison instead.
+     */
+    public NeighborSimilarity neighborSimilarity(VectorSimilarityFunction similarityFunction)
+    {
+        if (similarityFunction == VectorSimilarityFunction.COSINE) {
+            return node1 -> {
+                var decoded = new float[pq.getOriginalDimension()];
+                pq.decode(compressedVectors.get(node1), decoded);
+                return (NeighborSimilarity.ApproximateScoreFunction) node2 -> decodedSimilarity(node2, decoded, similarityFunction);
+            };
+        }
+
+        var tables = pq.symmetricScores(similarityFunction);
+        int M = pq.getSubspaceCount();
+        int clusters = pq.getClusterCount();
+        boolean dot = similarityFunction == VectorSimilarityFunction.DOT_PRODUCT;
+        return node1 -> {
+            var encoded1 = compressedVectors.get(node1);
+            return (NeighborSimilarity.ApproximateScoreFunction) node2 -> {
+                var encoded2 = compressedVectors.get(node2);
+                float sum = 0;
+                for (int m = 0; m < M; m++) {
+                    sum += tables[(m * clusters + Byte.toUnsignedInt(encoded1[m])) * clusters + Byte.toUnsignedInt(encoded2[m])];
+                }
+                return dot ? (1 + sum) / 2 : 1 / (1 + sum);
+            };
+        };
+    }
+
+    static float decodedSimilarity(ProductQuantization pq, byte[] encoded, float[] v, VectorSimilarityFunction similarityFunction)
     {
         switch (similarityFunction)
         {
             case DOT_PRODUCT:
-                return (1 + pq.decodedDotProduct(compressedVectors.get(ordinal), v)) / 2;
+                return (1 + pq.decodedDotProduct(encoded, v)) / 2;
             default:
                 // TODO implement other similarity functions efficiently
                 var decoded = new float[pq.getOriginalDimension()];
-                pq.decode(compressedVectors.get(ordinal), decoded);
+                pq.decode(encoded, decoded);
                 return similarityFunction.compare(decoded, v);
         }
     }
+
+    public ProductQuantization getProductQuantization()
+    {
+        return pq;
+    }
+
+    /** return the compressed vector of the given ordinal */
+    public byte[] get(int ordinal)
+    {
+        return compressedVectors.get(ordinal);
+    }
+
+    public int size()
+    {
+        return compressedVectors.size();
+    }
 }
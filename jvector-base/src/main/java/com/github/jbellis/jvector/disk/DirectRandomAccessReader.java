@@ -0,0 +1,105 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.disk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A RandomAccessReader over the buffer pool of a {@link DirectReaderSupplier}.  Values are
+ * big-endian, as written by DataOutput.  Not threadsafe; get one reader per thread from the supplier.
+ */
+public class DirectRandomAccessReader implements RandomAccessReader
+{
+    private final DirectReaderSupplier supplier;
+    private final byte[] scalar = new byte[Long.BYTES];
+    private final ByteBuffer scalarBuffer = ByteBuffer.wrap(scalar);
+    private byte[] scratch = new byte[0];
+    private final DirectReaderSupplier.LastBlock lastBlock = new DirectReaderSupplier.LastBlock();
+    private long position;
+
+    DirectRandomAccessReader(DirectReaderSupplier supplier) {
+        this.supplier = supplier;
+    }
+
+    @Override
+    public void seek(long offset) {
+        position = offset;
+    }
+
+    @Override
+    public long length() {
+        return supplier.length();
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        read(scalar, Integer.BYTES);
+        return scalarBuffer.getInt(0);
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        read(scalar, Float.BYTES);
+        return scalarBuffer.getFloat(0);
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        read(scalar, Long.BYTES);
+        return scalarBuffer.getLong(0);
+    }
+
+    @Override
+    public void readFully(byte[] bytes) throws IOException {
+        read(bytes, bytes.length);
+    }
+
+    @Override
+    public void readFully(float[] floats) throws IOException {
+        ByteBuffer.wrap(readScratch(floats.length * Float.BYTES)).asFloatBuffer().get(floats);
+    }
+
+    @Override
+    public void readFully(short[] shorts) throws IOException {
+        ByteBuffer.wrap(readScratch(shorts.length * Short.BYTES)).asShortBuffer().get(shorts);
+    }
+
+    @Override
+    public void read(int[] ints, int offset, int count) throws IOException {
+        ByteBuffer.wrap(readScratch(count * Integer.BYTES)).asIntBuffer().get(ints, offset, count);
+    }
+
+    private void read(byte[] dest, int len) throws IOException {
+        supplier.read(position, dest, 0, len, lastBlock);
+        position += len;
+    }
+
+    /** @return a scratch array (possibly longer than `len`) whose first `len` bytes were read from the current position */
+    private byte[] readScratch(int len) throws IOException {
+        if (scratch.length < len) {
+            scratch = new byte[len];
+        }
+        read(scratch, len);
+        return scratch;
+    }
+
+    @Override
+    public void close() {
+        // the pool and the file belong to the supplier
+    }
+}
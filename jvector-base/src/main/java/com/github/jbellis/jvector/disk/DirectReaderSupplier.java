@@ -0,0 +1,428 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.disk;
+
+import com.github.jbellis.jvector.util.Accountable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+/**
+ * A ReaderSupplier that reads with O_DIRECT, bypassing the OS page cache, through a fixed-size
+ * pool of aligned buffers that it manages itself.  Memory use is therefore exactly the pool size,
+ * and is not duplicated between the page cache and our own caches such as CachingGraphIndex.
+ * <p>
+ * The file is read in blocks of `blockSize` bytes.  Each block is loaded into a free buffer on
+ * first use; when there are none, a buffer is evicted with the CLOCK algorithm, skipping buffers
+ * that are in use.  The pool is shared by all the readers from {@link #get}, which may be used
+ * concurrently from different threads.
+ * <p>
+ * Each reader remembers the buffer it last read from, and reads from it again without locking
+ * for as long as the buffer is not reloaded, which a version number per buffer detects.  Reads
+ * of consecutive values from a record therefore only go through the pool once.
+ * <p>
+ * Files with checksums are verified as blocks are loaded into the pool, by a {@link BlockVerifier}
+ * that reads the bytes it checks directly from the file.
+ * <p>
+ * If the file system does not support direct I/O (tmpfs, for instance), the file is read
+ * through the page cache instead, with the same pool on top.
+ */
+public class DirectReaderSupplier implements ReaderSupplier, Accountable
+{
+    private static final Logger LOG = Logger.getLogger(DirectReaderSupplier.class.getName());
+    private static final int DEFAULT_ALIGNMENT = 4096;
+    // com.sun.nio.file.ExtendedOpenOption.DIRECT, looked up at runtime since it is not part of
+    // the standard API and may be missing; null if it is
+    private static final OpenOption DIRECT_OPTION = directOption();
+
+    private final FileChannel channel;
+    private final long length;
+    private final boolean direct;
+    private final int alignment;
+    private final int blockSize;
+    private final ByteBuffer[] buffers;
+
+    // the block each buffer is assigned to, or -1; guarded by `this`
+    private final long[] assigned;
+    private final int[] pins;
+    private final boolean[] referenced;
+    private final BlockTable bufferOf;
+    private int clockHand;
+
+    // the block whose contents are actually in each buffer, or -1; guarded by the buffer
+    private final long[] loaded;
+    // incremented before and after each load, so odd while one is in progress
+    private final AtomicLongArray versions;
+
+    private final BlockVerifier verifier = new BlockVerifier(this::readUnpooled) {
+        @Override
+        void registered(BlockChecksums checksums) {
+            verifyLoaded(checksums);
+        }
+    };
+
+    /**
+     * @param blockSize the unit of I/O and caching; rounded up to a multiple of the file system's block size
+     * @param capacity the total size of the buffer pool, in bytes
+     */
+    public DirectReaderSupplier(Path path, int blockSize, long capacity) throws IOException {
+        this.alignment = alignmentOf(path);
+        this.blockSize = (Math.max(blockSize, 1) + alignment - 1) / alignment * alignment;
+        long count = capacity / this.blockSize;
+        if (count < 1 || count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("Capacity %d must hold between 1 and %d blocks of %d bytes", capacity, Integer.MAX_VALUE, this.blockSize));
+        }
+
+        FileChannel channel;
+        boolean direct;
+        try {
+            if (DIRECT_OPTION == null) {
+                throw new UnsupportedOperationException("com.sun.nio.file.ExtendedOpenOption.DIRECT is not available");
+            }
+            channel = FileChannel.open(path, StandardOpenOption.READ, DIRECT_OPTION);
+            direct = true;
+        } catch (UnsupportedOperationException | IOException e) {
+            LOG.fine(() -> "Direct I/O is not available for " + path + "; reading through the page cache: " + e);
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            direct = false;
+        }
+        this.channel = channel;
+        this.direct = direct;
+        this.length = channel.size();
+
+        buffers = new ByteBuffer[(int) count];
+        for (int i = 0; i < buffers.length; i++) {
+            // the aligned slice may be up to `alignment` bytes longer than a block
+            buffers[i] = ByteBuffer.allocateDirect(this.blockSize + alignment).alignedSlice(alignment).limit(this.blockSize).slice();
+        }
+        assigned = new long[buffers.length];
+        loaded = new long[buffers.length];
+        Arrays.fill(assigned, -1);
+        Arrays.fill(loaded, -1);
+        pins = new int[buffers.length];
+        referenced = new boolean[buffers.length];
+        bufferOf = new BlockTable(buffers.length);
+        versions = new AtomicLongArray(buffers.length);
+    }
+
+    private static OpenOption directOption() {
+        try {
+            var options = Class.forName("com.sun.nio.file.ExtendedOpenOption");
+            return (OpenOption) options.getMethod("valueOf", String.class).invoke(null, "DIRECT");
+        } catch (ReflectiveOperationException | ClassCastException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static int alignmentOf(Path path) {
+        try {
+            long size = Files.getFileStore(path).getBlockSize();
+            return size > 0 && size <= (1 << 20) ? (int) size : DEFAULT_ALIGNMENT;
+        } catch (IOException | UnsupportedOperationException e) {
+            return DEFAULT_ALIGNMENT;
+        }
+    }
+
+    @Override
+    public RandomAccessReader get() {
+        return new DirectRandomAccessReader(this);
+    }
+
+    /** @return true if the file is read with O_DIRECT, false if the file system did not support it */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    public long length() {
+        return length;
+    }
+
+    BlockVerifier verifier() {
+        return verifier;
+    }
+
+    /**
+     * A reader's memory of the buffer it last read from.  Not threadsafe.
+     */
+    static class LastBlock
+    {
+        private long block = -1;
+        private int buffer;
+        private long version;
+        // a view of the buffer with its own position
+        private ByteBuffer view;
+    }
+
+    /**
+     * Copies `len` bytes starting at `position` in the file into `dest`, from the buffer in
+     * `last` if it still holds the block, and otherwise through the pool, updating `last`
+     */
+    void read(long position, byte[] dest, int offset, int len, LastBlock last) throws IOException {
+        if (position < 0 || position + len > length) {
+            throw new EOFException(String.format("Read of %d bytes at %d is past the end of the file (%d)", len, position, length));
+        }
+        while (len > 0) {
+            long block = position / blockSize;
+            int start = (int) (position % blockSize);
+            int n = Math.min(len, blockSize - start);
+            if (block != last.block || !readUnlocked(last, start, dest, offset, n)) {
+                readPinned(block, start, dest, offset, n, last);
+            }
+            position += n;
+            offset += n;
+            len -= n;
+        }
+    }
+
+    /** @return true if the bytes were copied from the buffer in `last`, which was not reloaded meanwhile */
+    private boolean readUnlocked(LastBlock last, int start, byte[] dest, int offset, int n) {
+        if (versions.get(last.buffer) != last.version) {
+            return false;
+        }
+        last.view.position(start);
+        last.view.get(dest, offset, n);
+        // the copy may have raced with a load, in which case the version has changed since
+        VarHandle.loadLoadFence();
+        return versions.get(last.buffer) == last.version;
+    }
+
+    private void readPinned(long block, int start, byte[] dest, int offset, int n, LastBlock last) throws IOException {
+        int i = pin(block);
+        try {
+            var buffer = buffers[i];
+            synchronized (buffer) {
+                if (loaded[i] != block) {
+                    // forget the old block first, so that if the load fails partway the
+                    // buffer is reloaded instead of serving a mix of the two
+                    loaded[i] = -1;
+                    versions.incrementAndGet(i);
+                    try {
+                        load(buffer, block);
+                        long blockStart = block * blockSize;
+                        verifier.ensureVerified(blockStart, Math.min(blockSize, length - blockStart));
+                    } finally {
+                        versions.incrementAndGet(i);
+                    }
+                    loaded[i] = block;
+                }
+                if (last.block != block || last.buffer != i) {
+                    last.view = buffer.duplicate();
+                }
+                last.view.position(start);
+                last.view.get(dest, offset, n);
+                last.block = block;
+                last.buffer = i;
+                last.version = versions.get(i);
+            }
+        } finally {
+            unpin(i);
+        }
+    }
+
+    private void load(ByteBuffer buffer, long block) throws IOException {
+        var target = buffer.duplicate().clear();
+        long position = block * blockSize;
+        while (target.hasRemaining() && position < length) {
+            int n = channel.read(target, position);
+            if (n < 0) {
+                break;
+            }
+            position += n;
+        }
+    }
+
+    /**
+     * Verifies the blocks that were loaded before `checksums` were registered, and forgets any
+     * that are corrupt so that the next read of them reloads them and fails
+     */
+    private void verifyLoaded(BlockChecksums checksums) {
+        for (int i = 0; i < buffers.length; i++) {
+            synchronized (buffers[i]) {
+                if (loaded[i] < 0) {
+                    continue;
+                }
+                long blockStart = loaded[i] * blockSize;
+                try {
+                    checksums.ensureVerified(blockStart, Math.min(blockSize, length - blockStart), this::readUnpooled);
+                } catch (IOException e) {
+                    loaded[i] = -1;
+                    // by two, so that a load does not appear to be in progress
+                    versions.addAndGet(i, 2);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the bytes at `position` into `dest` without going through the pool, for verification.
+     * Direct I/O must be aligned, so the read is widened to aligned bounds in a temporary buffer.
+     */
+    private void readUnpooled(long position, byte[] dest) throws IOException {
+        long start = position / alignment * alignment;
+        long end = (position + dest.length + alignment - 1) / alignment * alignment;
+        var target = ByteBuffer.allocateDirect((int) (end - start) + alignment).alignedSlice(alignment).limit((int) (end - start)).slice();
+        long filePosition = start;
+        while (target.hasRemaining() && filePosition < length) {
+            int n = channel.read(target, filePosition);
+            if (n < 0) {
+                break;
+            }
+            filePosition += n;
+        }
+        if (filePosition < position + dest.length) {
+            throw new EOFException(String.format("Read of %d bytes at %d is past the end of the file (%d)", dest.length, position, length));
+        }
+        target.position((int) (position - start));
+        target.get(dest);
+    }
+
+    /** @return the index of the buffer assigned to `block`, which can't be evicted until it is unpinned */
+    private synchronized int pin(long block) throws IOException {
+        int i = bufferOf.get(block);
+        while (i < 0) {
+            int victim = findVictim();
+            if (victim >= 0) {
+                if (assigned[victim] >= 0) {
+                    bufferOf.remove(assigned[victim]);
+                }
+                assigned[victim] = block;
+                bufferOf.put(block, victim);
+                i = victim;
+                break;
+            }
+            // every buffer is pinned by another read
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for a buffer", e);
+            }
+            i = bufferOf.get(block);
+        }
+        pins[i]++;
+        referenced[i] = true;
+        return i;
+    }
+
+    private synchronized void unpin(int i) {
+        if (--pins[i] == 0) {
+            notifyAll();
+        }
+    }
+
+    /** @return an unpinned buffer that has not been used since the clock hand last passed it, or -1 */
+    private int findVictim() {
+        // two passes: the first clears reference bits, the second is guaranteed to find any unpinned buffer
+        for (int step = 0; step < 2 * buffers.length; step++) {
+            int i = clockHand;
+            clockHand = (clockHand + 1) % buffers.length;
+            if (pins[i] > 0) {
+                continue;
+            }
+            if (referenced[i]) {
+                referenced[i] = false;
+                continue;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Maps blocks to the buffers they are assigned to, with open addressing, so that looking
+     * one up does not box the block number.  Holds at most one entry per buffer.
+     */
+    private static class BlockTable
+    {
+        private final long[] keys;
+        private final int[] values;
+        private final int mask;
+
+        BlockTable(int capacity) {
+            int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 2;
+            keys = new long[size];
+            values = new int[size];
+            mask = size - 1;
+            Arrays.fill(keys, -1);
+        }
+
+        private int slot(long block) {
+            // spread the bits of consecutive block numbers
+            return (int) ((block * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        }
+
+        /** @return the buffer assigned to `block`, or -1 */
+        int get(long block) {
+            for (int s = slot(block); keys[s] != -1; s = (s + 1) & mask) {
+                if (keys[s] == block) {
+                    return values[s];
+                }
+            }
+            return -1;
+        }
+
+        void put(long block, int buffer) {
+            int s = slot(block);
+            while (keys[s] != -1 && keys[s] != block) {
+                s = (s + 1) & mask;
+            }
+            keys[s] = block;
+            values[s] = buffer;
+        }
+
+        void remove(long block) {
+            int s = slot(block);
+            while (keys[s] != block) {
+                if (keys[s] == -1) {
+                    return;
+                }
+                s = (s + 1) & mask;
+            }
+            // shift back the entries after it that would no longer be found past the gap
+            int gap = s;
+            for (s = (s + 1) & mask; keys[s] != -1; s = (s + 1) & mask) {
+                int home = slot(keys[s]);
+                if (((s - home) & mask) >= ((s - gap) & mask)) {
+                    keys[gap] = keys[s];
+                    values[gap] = values[s];
+                    gap = s;
+                }
+            }
+            keys[gap] = -1;
+        }
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        return (long) buffers.length * blockSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.disk;
+
+import com.github.jbellis.jvector.graph.GraphIndex;
+import com.github.jbellis.jvector.graph.NeighborSimilarity;
+import com.github.jbellis.jvector.graph.NodesIterator;
+import com.github.jbellis.jvector.util.Accountable;
+import com.github.jbellis.jvector.util.RamUsageEstimator;
+import com.github.jbellis.jvector.vector.Float16;
+import com.github.jbellis.jvector.vector.VectorEncoding;
+import com.github.jbellis.jvector.vector.VectorSimilarityFunction;
+
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable in-memory copy of an {@link OnDiskGraphIndex}, for pinning small indexes in RAM
+ * without rebuilding them.  The adjacency lists are stored in one flat array, M slots per node,
+ * and the vectors in another, in the encoding they have on disk, so the whole graph is a handful
+ * of arrays no matter how many nodes it has.
+ * <p>
+ * Exact searches should score with {@link FlatView#rerankerFor}, which compares against the
+ * stored vectors without allocating.
+ */
+public class FlatGraphIndex<T> implements GraphIndex<T>, Accountable
+{
+    private final int size;
+    private final int M;
+    private final int dimension;
+    private final int entryNode;
+    private final VectorEncoding encoding;
+    private final int[] neighborCounts;
+    private final int[] neighbors;
+    // exactly one of these is used, depending on the encoding
+    private final float[] floats;
+    private final short[] halves;
+    private final byte[] bytes;
+
+    private FlatGraphIndex(OnDiskGraphIndex<T> graph)
+    {
+        size = graph.size();
+        M = graph.maxEdgesPerNode();
+        dimension = graph.getDimension();
+        entryNode = graph.entryNode();
+        encoding = graph.getVectorEncoding();
+        if ((long) size * Math.max(M, dimension) > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException(String.format("A graph of %d nodes with M=%d and dimension %d is too large to load into arrays", size, M, dimension));
+        }
+
+        neighborCounts = new int[size];
+        neighbors = new int[size * M];
+        floats = encoding == VectorEncoding.FLOAT32 ? new float[size * dimension] : null;
+        halves = encoding == VectorEncoding.FLOAT16 ? new short[size * dimension] : null;
+        bytes = encoding == VectorEncoding.BYTE ? new byte[size * dimension] : null;
+
+        try (var scanner = graph.scan()) {
+            while (scanner.next()) {
+                int node = scanner.node();
+                var it = scanner.neighbors();
+                neighborCounts[node] = it.size();
+                for (int i = 0; it.hasNext(); i++) {
+                    neighbors[node * M + i] = it.nextInt();
+                }
+
+                if (encoding == VectorEncoding.FLOAT16) {
+                    scanner.copyHalves(halves, node * dimension);
+                } else if (encoding == VectorEncoding.BYTE) {
+                    System.arraycopy((byte[]) scanner.vector(), 0, bytes, node * dimension, dimension);
+                } else {
+                    System.arraycopy((float[]) scanner.vector(), 0, floats, node * dimension, dimension);
+                }
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Error loading graph into memory", e);
+        }
+    }
+
+    /**
+     * Reads the whole of `graph`, sequentially, into memory.  The result does not depend on
+     * `graph`, which may be closed afterwards.
+     */
+    public static <T> FlatGraphIndex<T> load(OnDiskGraphIndex<T> graph)
+    {
+        return new FlatGraphIndex<>(graph);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int maxEdgesPerNode() {
+        return M;
+    }
+
+    public VectorEncoding getVectorEncoding() {
+        return encoding;
+    }
+
+    @Override
+    public NodesIterator getNodes()
+    {
+        return new NodesIterator(size) {
+            private int next;
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return next++;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+        };
+    }
+
+    /** Views hold only scratch space, so they are cheap to create */
+    @Override
+    public FlatView getView()
+    {
+        return new FlatView();
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        long vectors = floats != null ? RamUsageEstimator.sizeOf(floats)
+                       : halves != null ? RamUsageEstimator.sizeOf(halves)
+                       : RamUsageEstimator.sizeOf(bytes);
+        return RamUsageEstimator.sizeOf(neighborCounts) + RamUsageEstimator.sizeOf(neighbors) + vectors
+               + 5 * Integer.BYTES + 6 * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+    }
+
+    public class FlatView implements GraphIndex.View<T>
+    {
+        // there is no byte[] comparison that takes an offset, so BYTE vectors are compared from a copy
+        private byte[] scratchBytes;
+
+        @Override
+        public NodesIterator getNeighborsIterator(int node) {
+            return new NodesIterator.ArrayNodesIterator(neighbors, node * M, neighborCounts[node]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int entryNode() {
+            return entryNode;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T getVector(int node) {
+            int offset = node * dimension;
+            if (encoding == VectorEncoding.BYTE) {
+                var vector = new byte[dimension];
+                System.arraycopy(bytes, offset, vector, 0, dimension);
+                return (T) vector;
+            }
+            var vector = new float[dimension];
+            if (encoding == VectorEncoding.FLOAT16) {
+                Float16.toFloats(halves, offset, vector);
+            } else {
+                System.arraycopy(floats, offset, vector, 0, dimension);
+            }
+            return (T) vector;
+        }
+
+        /** Compares `query` with the vector of `node` without allocating */
+        public float similarity(T query, int node, VectorSimilarityFunction vsf) {
+            int offset = node * dimension;
+            if (encoding == VectorEncoding.BYTE) {
+                if (scratchBytes == null) {
+                    scratchBytes = new byte[dimension];
+                }
+                System.arraycopy(bytes, offset, scratchBytes, 0, dimension);
+                return vsf.compare((byte[]) query, scratchBytes);
+            }
+            if (encoding == VectorEncoding.FLOAT16) {
+                return vsf.compare((float[]) query, halves, offset);
+            }
+            return vsf.compare((float[]) query, floats, offset);
+        }
+
+        /** @return a ReRanker that scores nodes against `query` with {@link #similarity} */
+        public NeighborSimilarity.DirectReRanker<T> rerankerFor(T query, VectorSimilarityFunction vsf) {
+            return node -> similarity(query, node, vsf);
+        }
+    }
+}
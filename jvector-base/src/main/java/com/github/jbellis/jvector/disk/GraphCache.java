@@ -17,43 +17,114 @@
 package com.github.jbellis.jvector.disk;
 
 import com.github.jbellis.jvector.graph.GraphIndex;
+import com.github.jbellis.jvector.graph.NodesIterator;
 import com.github.jbellis.jvector.util.Accountable;
+import com.github.jbellis.jvector.util.ArrayUtil;
+import com.github.jbellis.jvector.util.DocIdSetIterator;
+import com.github.jbellis.jvector.util.FixedBitSet;
 import com.github.jbellis.jvector.util.RamUsageEstimator;
+import com.github.jbellis.jvector.vector.VectorSimilarityFunction;
 
 import java.io.IOException;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Arrays;
 
 public abstract class GraphCache implements Accountable
 {
-    public static final class CachedNode {
-        public final float[] vector;
-        public final int[] neighbors;
+    /** return the cached neighbors of the node if present, or null if not */
+    public abstract NodesIterator getNeighborsIterator(int ordinal);
 
-        public CachedNode(float[] vector, int[] neighbors) {
-            this.vector = vector;
-            this.neighbors = neighbors;
-        }
-    }
+    /** return a copy of the cached vector of the node if present, or null if not */
+    public abstract float[] getVector(int ordinal);
+
+    /**
+     * return the similarity of `query` to the cached vector of the node, scored in place, or NaN
+     * if the node is not cached
+     */
+    public abstract float similarity(float[] query, int ordinal, VectorSimilarityFunction vsf);
 
-    /** return the cached node if present, or null if not */
-    public abstract CachedNode getNode(int ordinal);
+    /** return true if the node is cached */
+    public abstract boolean containsNode(int ordinal);
 
     public static GraphCache load(GraphIndex<float[]> graph, int distance) throws IOException
     {
-        if (distance <= 0)
+        return load(graph, distance, new int[0]);
+    }
+
+    /**
+     * Caches the nodes within `distance` hops of the entry node, plus the given additional nodes
+     * (typically the hot nodes from a {@link NodeAccessProfile}).  Additional nodes that are not
+     * in the graph, as in a profile saved from a different version of the index, are skipped.
+     */
+    public static GraphCache load(GraphIndex<float[]> graph, int distance, int[] additionalNodes) throws IOException
+    {
+        if (distance <= 0 && additionalNodes.length == 0)
             return new EmptyGraphCache();
-        return new CHMGraphCache(graph, distance);
+
+        var nodes = distance <= 0 ? new FixedBitSet(graph.size()) : nodesWithin(graph, distance);
+        for (int node : additionalNodes) {
+            if (node >= 0 && node < graph.size()) {
+                nodes.set(node);
+            }
+        }
+        return new ArrayGraphCache(graph, nodes);
     }
 
     public abstract long ramBytesUsed();
 
+    /**
+     * @return the nodes within `distance` hops of the entry node
+     */
+    private static FixedBitSet nodesWithin(GraphIndex<float[]> graph, int distance) {
+        var nodes = new FixedBitSet(graph.size());
+        var view = graph.getView();
+        if (view.entryNode() < 0) {
+            return nodes;
+        }
+
+        // breadth-first, one level of the graph at a time
+        int[] level = new int[] { view.entryNode() };
+        int levelSize = 1;
+        nodes.set(view.entryNode());
+        for (int d = 0; d < distance; d++) {
+            int[] next = new int[0];
+            int nextSize = 0;
+            for (int i = 0; i < levelSize; i++) {
+                for (var it = view.getNeighborsIterator(level[i]); it.hasNext(); ) {
+                    int neighbor = it.nextInt();
+                    if (!nodes.getAndSet(neighbor)) {
+                        next = ArrayUtil.grow(next, nextSize + 1);
+                        next[nextSize++] = neighbor;
+                    }
+                }
+            }
+            level = next;
+            levelSize = nextSize;
+        }
+        return nodes;
+    }
+
     private static final class EmptyGraphCache extends GraphCache
     {
         @Override
-        public CachedNode getNode(int ordinal) {
+        public NodesIterator getNeighborsIterator(int ordinal) {
             return null;
         }
 
+        @Override
+        public float[] getVector(int ordinal) {
+            return null;
+        }
+
+        @Override
+        public float similarity(float[] query, int ordinal, VectorSimilarityFunction vsf) {
+            return Float.NaN;
+        }
+
+        @Override
+        public boolean containsNode(int ordinal) {
+            return false;
+        }
+
         @Override
         public long ramBytesUsed()
         {
@@ -61,48 +132,121 @@ public abstract class GraphCache implements Accountable
         }
     }
 
-    private static final class CHMGraphCache extends GraphCache
+    /**
+     * Packs the cached vectors and adjacency lists into flat arrays indexed by "slot."
+     * A node's slot is its rank among the cached ordinals, which we compute from a bitset
+     * plus the number of cached ordinals preceding each 64-bit word of it.  So checking
+     * whether a node is cached costs one array read and a popcount, with no boxing or hashing.
+     */
+    private static final class ArrayGraphCache extends GraphCache
     {
-        private final ConcurrentHashMap<Integer, CachedNode> cache = new ConcurrentHashMap<>();
-        private long ramBytesUsed = 0;
+        private final long[] cachedBits;
+        private final int[] wordRanks;
+        private final int dimension;
+        private final float[] vectors;
+        // neighbors of the node in slot i are neighbors[neighborOffsets[i] .. neighborOffsets[i + 1])
+        private final int[] neighborOffsets;
+        private final int[] neighbors;
+
+        public ArrayGraphCache(GraphIndex<float[]> graph, FixedBitSet nodes) {
+            cachedBits = nodes.getBits();
+            wordRanks = new int[cachedBits.length];
+            int rank = 0;
+            for (int i = 0; i < cachedBits.length; i++) {
+                wordRanks[i] = rank;
+                rank += Long.bitCount(cachedBits[i]);
+            }
+            int count = rank;
 
-        public CHMGraphCache(GraphIndex<float[]> graph, int distance) {
             var view = graph.getView();
-            cacheNeighborsOf(view, view.entryNode(), distance);
+            neighborOffsets = new int[count + 1];
+            int[] packedNeighbors = new int[0];
+            float[] packedVectors = null;
+            int dimension = 0;
+            // visit the nodes in ordinal order, so that on-disk graphs are read sequentially
+            int slot = 0;
+            for (int node = count == 0 ? DocIdSetIterator.NO_MORE_DOCS : nodes.nextSetBit(0);
+                 node != DocIdSetIterator.NO_MORE_DOCS;
+                 node = node + 1 >= nodes.length() ? DocIdSetIterator.NO_MORE_DOCS : nodes.nextSetBit(node + 1))
+            {
+                float[] vector = view.getVector(node);
+                if (packedVectors == null) {
+                    dimension = vector.length;
+                    // every later slot * dimension is smaller than this
+                    packedVectors = new float[Math.multiplyExact(count, dimension)];
+                }
+                System.arraycopy(vector, 0, packedVectors, slot * dimension, dimension);
+
+                var it = view.getNeighborsIterator(node);
+                int offset = neighborOffsets[slot];
+                packedNeighbors = ArrayUtil.grow(packedNeighbors, offset + it.size());
+                while (it.hasNext()) {
+                    packedNeighbors[offset++] = it.nextInt();
+                }
+                neighborOffsets[++slot] = offset;
+            }
+            assert slot == count : String.format("visited %d nodes but %d are cached", slot, count);
+
+            this.dimension = dimension;
+            this.vectors = packedVectors == null ? new float[0] : packedVectors;
+            this.neighbors = Arrays.copyOf(packedNeighbors, neighborOffsets[count]);
         }
 
-        private void cacheNeighborsOf(GraphIndex.View<float[]> view, int ordinal, int distance) {
-            // cache this node
-            var it = view.getNeighborsIterator(ordinal);
-            int[] neighbors = new int[it.size()];
-            int i = 0;
-            while (it.hasNext()) {
-                neighbors[i++] = it.next();
+        /** @return the slot of the given node, or -1 if it is not cached */
+        private int slotOf(int ordinal) {
+            int word = ordinal >> 6;
+            if (ordinal < 0 || word >= cachedBits.length) {
+                return -1;
             }
-            var node = new CachedNode(view.getVector(ordinal), neighbors);
-            cache.put(ordinal, node);
-            ramBytesUsed += RamUsageEstimator.HASHTABLE_RAM_BYTES_PER_ENTRY + RamUsageEstimator.sizeOf(node.vector) + RamUsageEstimator.sizeOf(node.neighbors);
-
-            // call recursively on neighbors
-            if (distance > 0) {
-                for (var neighbor : neighbors) {
-                    if (!cache.containsKey(neighbor)) {
-                        cacheNeighborsOf(view, neighbor, distance - 1);
-                    }
-                }
+            long bits = cachedBits[word];
+            long mask = 1L << ordinal; // shifts are mod 64
+            if ((bits & mask) == 0) {
+                return -1;
             }
+            return wordRanks[word] + Long.bitCount(bits & (mask - 1));
         }
 
+        @Override
+        public NodesIterator getNeighborsIterator(int ordinal) {
+            int slot = slotOf(ordinal);
+            if (slot < 0) {
+                return null;
+            }
+            int start = neighborOffsets[slot];
+            return new NodesIterator.ArrayNodesIterator(neighbors, start, neighborOffsets[slot + 1] - start);
+        }
+
+        @Override
+        public float[] getVector(int ordinal) {
+            int slot = slotOf(ordinal);
+            if (slot < 0) {
+                return null;
+            }
+            return Arrays.copyOfRange(vectors, slot * dimension, (slot + 1) * dimension);
+        }
+
+        @Override
+        public float similarity(float[] query, int ordinal, VectorSimilarityFunction vsf) {
+            int slot = slotOf(ordinal);
+            if (slot < 0) {
+                return Float.NaN;
+            }
+            return vsf.compare(query, vectors, slot * dimension);
+        }
 
         @Override
-        public CachedNode getNode(int ordinal) {
-            return cache.get(ordinal);
+        public boolean containsNode(int ordinal) {
+            return slotOf(ordinal) >= 0;
         }
 
         @Override
         public long ramBytesUsed()
         {
-            return ramBytesUsed;
+            return RamUsageEstimator.sizeOf(cachedBits)
+                   + RamUsageEstimator.sizeOf(wordRanks)
+                   + RamUsageEstimator.sizeOf(vectors)
+                   + RamUsageEstimator.sizeOf(neighborOffsets)
+                   + RamUsageEstimator.sizeOf(neighbors);
         }
     }
 }
@@ -0,0 +1,331 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.disk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32C;
+
+/**
+ * A single file holding any number of named sections -- graphs, CompressedVectors, node lists
+ * such as hot-node profiles or ordinal maps -- so that callers don't have to track the offset
+ * of each structure, and many small indexes can share one file (and one file descriptor or
+ * mapping).
+ * <p>
+ * Sections are written one after another, each starting at an 8-byte-aligned offset, followed
+ * by a catalog of [name][offset][length] entries and a fixed-size trailer pointing at the
+ * catalog.  Opening a container reads only the catalog; each graph or CompressedVectors is
+ * opened the first time it is asked for, and then shared.
+ * <p>
+ * The catalog also holds a CRC32C checksum of each block of the sections, and one of the
+ * catalog itself.  Each block is verified the first time it is read, by the {@link BlockVerifier}
+ * of the supplier's readers, so opening a container stays cheap but corrupt data is reported as
+ * a {@link CorruptIndexException} instead of being served; {@link #verify} checks the remaining
+ * blocks in the background.  The structures in the container are covered by its checksums, so
+ * their own are not checked again.
+ */
+public class IndexContainer implements AutoCloseable
+{
+    private static final int MAGIC = 0x1DC0CA7A;
+    // version 2 added checksums; version 1 containers are no longer supported
+    private static final int VERSION = 2;
+    // catalog offset, version, magic
+    private static final int TRAILER_SIZE = Long.BYTES + 2 * Integer.BYTES;
+    private static final int ALIGNMENT = 8;
+
+    private final ReaderSupplier readerSupplier;
+    private final Map<String, Section> sections;
+    private final BlockVerifier verifier;
+    private final BlockChecksums checksums;
+    private final long checkedLength;
+    private final Map<String, Object> opened = new ConcurrentHashMap<>();
+
+    private IndexContainer(ReaderSupplier readerSupplier, Map<String, Section> sections, BlockVerifier verifier, BlockChecksums checksums, long checkedLength) {
+        this.readerSupplier = readerSupplier;
+        this.sections = sections;
+        this.verifier = verifier;
+        this.checksums = checksums;
+        this.checkedLength = checkedLength;
+    }
+
+    /**
+     * Reads the catalog of the container.  The container takes ownership of `readerSupplier`.
+     */
+    public static IndexContainer open(ReaderSupplier readerSupplier) throws IOException {
+        try (var reader = readerSupplier.get()) {
+            long length = reader.length();
+            if (length < TRAILER_SIZE) {
+                throw new IllegalArgumentException("File is too short to be an index container: " + length);
+            }
+            reader.seek(length - TRAILER_SIZE);
+            long catalogOffset = reader.readLong();
+            int version = reader.readInt();
+            int magic = reader.readInt();
+            if (magic != MAGIC) {
+                throw new IllegalArgumentException(String.format("Bad magic number %x", magic));
+            }
+            if (version != VERSION) {
+                throw new IllegalArgumentException(String.format("Unsupported version %d; only %d is supported", version, VERSION));
+            }
+
+            var catalogBytes = new byte[(int) (length - TRAILER_SIZE - catalogOffset)];
+            reader.seek(catalogOffset);
+            reader.readFully(catalogBytes);
+            var catalog = ByteBuffer.wrap(catalogBytes);
+            var crc = new CRC32C();
+            crc.update(catalogBytes, 0, catalogBytes.length - Integer.BYTES);
+            if ((int) crc.getValue() != catalog.getInt(catalogBytes.length - Integer.BYTES)) {
+                throw new CorruptIndexException("Checksum mismatch in catalog at " + catalogOffset);
+            }
+
+            int count = catalog.getInt();
+            var sections = new LinkedHashMap<String, Section>(count);
+            for (int i = 0; i < count; i++) {
+                var nameBytes = new byte[catalog.getInt()];
+                catalog.get(nameBytes);
+                var name = new String(nameBytes, StandardCharsets.UTF_8);
+                sections.put(name, new Section(catalog.getLong(), catalog.getLong()));
+            }
+
+            int blockSize = catalog.getInt();
+            var crcs = new int[catalog.getInt()];
+            catalog.asIntBuffer().get(crcs);
+            var verifiedSupplier = BlockVerifier.verifying(readerSupplier);
+            var verifier = BlockVerifier.of(verifiedSupplier);
+            var checksums = verifier.register(new BlockChecksums(0, blockSize, catalogOffset, crcs));
+            return new IndexContainer(verifiedSupplier, Collections.unmodifiableMap(sections), verifier, checksums, catalogOffset);
+        } catch (Exception e) {
+            readerSupplier.close();
+            throw new RuntimeException("Error opening index container", e);
+        }
+    }
+
+    /** @return the names of the sections, in the order they were written */
+    public Set<String> sections() {
+        return sections.keySet();
+    }
+
+    /**
+     * Verifies every block that has not already been read, in parallel tasks on `executor`.
+     * The future completes exceptionally with a {@link CorruptIndexException} (wrapped in an
+     * UncheckedIOException) if any of them is corrupt.
+     */
+    public CompletableFuture<Void> verify(Executor executor) {
+        return verifier.verifyAll(checksums, 0, checkedLength, executor);
+    }
+
+    /** @return a reader over the whole file that verifies the blocks it reads */
+    public RandomAccessReader reader() {
+        return readerSupplier.get();
+    }
+
+    public boolean contains(String name) {
+        return sections.containsKey(name);
+    }
+
+    /** @return the offset of the named section in the file, for structures opened by the caller */
+    public long offset(String name) {
+        return section(name).offset;
+    }
+
+    /** @return the length in bytes of the named section */
+    public long length(String name) {
+        return section(name).length;
+    }
+
+    private Section section(String name) {
+        var section = sections.get(name);
+        if (section == null) {
+            throw new IllegalArgumentException("No section named " + name);
+        }
+        return section;
+    }
+
+    /**
+     * @return the graph in the named section, opened on first use.  Its readers come from the
+     * container's ReaderSupplier, so closing the graph is unnecessary; close the container instead.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> OnDiskGraphIndex<T> graph(String name) {
+        var section = section(name);
+        // don't let the graph close the shared supplier
+        ReaderSupplier shared = this::reader;
+        return (OnDiskGraphIndex<T>) opened.computeIfAbsent(name, __ -> new OnDiskGraphIndex<T>(shared, section.offset));
+    }
+
+    /** @return the CompressedVectors in the named section, loaded on first use */
+    public CompressedVectors compressedVectors(String name) {
+        var section = section(name);
+        return (CompressedVectors) opened.computeIfAbsent(name, __ -> {
+            try (var reader = reader()) {
+                return CompressedVectors.load(reader, section.offset);
+            } catch (Exception e) {
+                throw new RuntimeException("Error loading compressed vectors " + name, e);
+            }
+        });
+    }
+
+    /**
+     * @return the ints in the named section, written with {@link Writer#writeInts} or
+     * {@link NodeAccessProfile#write}
+     */
+    public int[] ints(String name) {
+        var section = section(name);
+        try (var reader = reader()) {
+            return readInts(reader, section.offset);
+        } catch (Exception e) {
+            throw new RuntimeException("Error loading " + name, e);
+        }
+    }
+
+    /** Writes `values` as [count][values], the layout of the int sections */
+    static void writeInts(DataOutput out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int v : values) {
+            out.writeInt(v);
+        }
+    }
+
+    /** @return the ints written by {@link #writeInts(DataOutput, int[])} at `offset` */
+    static int[] readInts(RandomAccessReader in, long offset) throws IOException {
+        in.seek(offset);
+        int size = in.readInt();
+        if (size < 0) {
+            throw new CorruptIndexException(String.format("Negative int count %d at offset %d", size, offset));
+        }
+        int[] values = new int[size];
+        in.read(values, 0, size);
+        return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+        readerSupplier.close();
+    }
+
+    private static class Section {
+        final long offset;
+        final long length;
+
+        Section(long offset, long length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    @FunctionalInterface
+    public interface SectionWriter {
+        void write(DataOutput out) throws IOException;
+    }
+
+    /**
+     * Writes a container to a stream.  Sections are written immediately; the catalog is written
+     * by {@link #close}, which also closes the stream.
+     */
+    public static class Writer implements Closeable
+    {
+        private final BlockChecksums.ChecksummingOutputStream counter;
+        private final DataOutputStream out;
+        private final Map<String, Section> sections = new LinkedHashMap<>();
+
+        public Writer(OutputStream out) {
+            this(out, BlockChecksums.DEFAULT_BLOCK_SIZE);
+        }
+
+        /**
+         * @param checksumBlockSize the granularity of verification: smaller blocks make the first
+         *                          read of each one cheaper, at the cost of a larger catalog
+         */
+        public Writer(OutputStream out, int checksumBlockSize) {
+            this.counter = new BlockChecksums.ChecksummingOutputStream(out, checksumBlockSize);
+            this.out = new DataOutputStream(counter);
+        }
+
+        /**
+         * Writes a section, e.g.
+         * `writer.writeSection("graph", out -> OnDiskGraphIndex.write(graph, vectors, out))`
+         * or `writer.writeSection("pq", compressedVectors::write)`.
+         */
+        public void writeSection(String name, SectionWriter sectionWriter) throws IOException {
+            if (sections.containsKey(name)) {
+                throw new IllegalArgumentException("Duplicate section " + name);
+            }
+            align();
+            long start = counter.count;
+            sectionWriter.write(out);
+            out.flush();
+            sections.put(name, new Section(start, counter.count - start));
+        }
+
+        /** Writes an array of ints, such as an ordinal map, that can be read with {@link IndexContainer#ints} */
+        public void writeInts(String name, int[] values) throws IOException {
+            writeSection(name, out -> IndexContainer.writeInts(out, values));
+        }
+
+        private void align() throws IOException {
+            while (counter.count % ALIGNMENT != 0) {
+                out.writeByte(0);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            align();
+            out.flush();
+            long catalogOffset = counter.count;
+            var checksums = counter.finishChecksums();
+
+            var catalogBytes = new ByteArrayOutputStream();
+            var catalog = new DataOutputStream(catalogBytes);
+            catalog.writeInt(sections.size());
+            for (var e : sections.entrySet()) {
+                var nameBytes = e.getKey().getBytes(StandardCharsets.UTF_8);
+                catalog.writeInt(nameBytes.length);
+                catalog.write(nameBytes);
+                catalog.writeLong(e.getValue().offset);
+                catalog.writeLong(e.getValue().length);
+            }
+            catalog.writeInt(counter.blockSize);
+            catalog.writeInt(checksums.length);
+            for (int checksum : checksums) {
+                catalog.writeInt(checksum);
+            }
+            var crc = new CRC32C();
+            crc.update(catalogBytes.toByteArray());
+            catalog.writeInt((int) crc.getValue());
+
+            catalogBytes.writeTo(out);
+            out.writeLong(catalogOffset);
+            out.writeInt(VERSION);
+            out.writeInt(MAGIC);
+            out.close();
+        }
+    }
+}
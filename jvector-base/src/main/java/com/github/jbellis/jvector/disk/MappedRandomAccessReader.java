@@ -0,0 +1,286 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.disk;
+
+import com.github.jbellis.jvector.annotations.VisibleForTesting;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A RandomAccessReader over a memory-mapped file.  Files of any size are supported by mapping
+ * them as a series of segments; reads that straddle two segments are handled transparently.
+ * <p>
+ * A reader is not threadsafe, but {@link #duplicate()} is cheap and duplicates share the
+ * mappings of the original, so the usual pattern is to open one reader per file and
+ * pass `reader::duplicate` as the ReaderSupplier.
+ * <p>
+ * The default byte order is big-endian, matching what DataOutput writes.  Bulk reads go through
+ * typed buffer views, so they are copied in bulk either way, but files written in the native
+ * order can be opened with {@link ByteOrder#nativeOrder()} to avoid swapping bytes.
+ * <p>
+ * The reader and its duplicates share a {@link BlockVerifier}, so a file with checksums is
+ * verified one block at a time as it is read, including the bytes handed out by {@link #segmentFor}.
+ * <p>
+ * Java has no supported way to unmap a buffer while other references to it may still be in use,
+ * so the mappings are released when the reader and its duplicates are garbage collected.
+ */
+public class MappedRandomAccessReader implements RandomAccessReader {
+    private static final int DEFAULT_SEGMENT_SHIFT = 30; // 1GB
+
+    // shared with duplicates; never repositioned
+    private final MappedByteBuffer[] segments;
+    // this reader's views of the segments, created on first use
+    private final ByteBuffer[] views;
+    private final ByteOrder order;
+    private final int segmentShift;
+    private final long segmentMask;
+    private final long length;
+    // shared with duplicates
+    private final BlockVerifier verifier;
+
+    private long position;
+
+    public MappedRandomAccessReader(Path path) throws IOException {
+        this(path, ByteOrder.BIG_ENDIAN);
+    }
+
+    public MappedRandomAccessReader(Path path, ByteOrder order) throws IOException {
+        this(path, order, DEFAULT_SEGMENT_SHIFT);
+    }
+
+    @VisibleForTesting
+    MappedRandomAccessReader(Path path, ByteOrder order, int segmentShift) throws IOException {
+        this.order = order;
+        this.segmentShift = segmentShift;
+        this.segmentMask = (1L << segmentShift) - 1;
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            length = channel.size();
+            long segmentSize = 1L << segmentShift;
+            int segmentCount = (int) ((length + segmentSize - 1) >>> segmentShift);
+            segments = new MappedByteBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                long start = (long) i << segmentShift;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, length - start));
+            }
+        }
+        views = new ByteBuffer[segments.length];
+        verifier = new BlockVerifier(this::readUnverified);
+    }
+
+    private MappedRandomAccessReader(MappedRandomAccessReader parent) {
+        this.segments = parent.segments;
+        this.views = new ByteBuffer[segments.length];
+        this.order = parent.order;
+        this.segmentShift = parent.segmentShift;
+        this.segmentMask = parent.segmentMask;
+        this.length = parent.length;
+        this.verifier = parent.verifier;
+    }
+
+    /**
+     * @return a new reader, positioned at the start of the file, that shares this reader's mappings.
+     * Safe to call concurrently from multiple threads.
+     */
+    public MappedRandomAccessReader duplicate() {
+        return new MappedRandomAccessReader(this);
+    }
+
+    BlockVerifier verifier() {
+        return verifier;
+    }
+
+    /** Copies the bytes at `offset` straight from the mappings, for verification.  Threadsafe. */
+    private void readUnverified(long offset, byte[] dest) throws EOFException {
+        if (offset + dest.length > length) {
+            throw new EOFException(String.format("Read of %d bytes at %d is past the end of the file (%d)", dest.length, offset, length));
+        }
+        int read = 0;
+        while (read < dest.length) {
+            var segment = segments[(int) ((offset + read) >>> segmentShift)].duplicate();
+            int start = (int) ((offset + read) & segmentMask);
+            int n = Math.min(dest.length - read, segment.limit() - start);
+            segment.position(start);
+            segment.get(dest, read, n);
+            read += n;
+        }
+    }
+
+    /** @return the length of the mapped file */
+    @Override
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return this reader's view of the mapped segment containing the `bytes` bytes at `offset`,
+     * or null if they straddle two segments.  The bytes start at {@link #segmentOffset(long)} in
+     * the view.  Read it with absolute gets only: its position belongs to this reader.
+     */
+    public ByteBuffer segmentFor(long offset, int bytes) throws IOException {
+        if (offset + bytes > length) {
+            throw new EOFException(String.format("Read of %d bytes at %d is past the end of the file (%d)", bytes, offset, length));
+        }
+        verifier.ensureVerified(offset, bytes);
+        var view = view((int) (offset >>> segmentShift));
+        return segmentOffset(offset) + bytes > view.limit() ? null : view;
+    }
+
+    /** @return the offset within its segment of the given file offset */
+    public int segmentOffset(long offset) {
+        return (int) (offset & segmentMask);
+    }
+
+    private ByteBuffer view(int segment) {
+        var view = views[segment];
+        if (view == null) {
+            // duplicate() resets the byte order, so it must be set explicitly
+            view = segments[segment].duplicate().order(order);
+            views[segment] = view;
+        }
+        return view;
+    }
+
+    /**
+     * @return this reader's view of the segment containing the current position, positioned there,
+     * if the next `bytes` bytes are all in that segment; otherwise null
+     */
+    private ByteBuffer viewFor(int bytes) throws IOException {
+        if (position + bytes > length) {
+            throw new EOFException(String.format("Read of %d bytes at %d is past the end of the file (%d)", bytes, position, length));
+        }
+        verifier.ensureVerified(position, bytes);
+        int offset = (int) (position & segmentMask);
+        var view = view((int) (position >>> segmentShift));
+        if (offset + bytes > view.limit()) {
+            return null;
+        }
+        view.position(offset);
+        return view;
+    }
+
+    @Override
+    public void seek(long offset) {
+        position = offset;
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        var view = viewFor(Integer.BYTES);
+        int value;
+        if (view != null) {
+            value = view.getInt();
+            position += Integer.BYTES;
+        } else {
+            var bytes = new byte[Integer.BYTES];
+            readFully(bytes);
+            value = ByteBuffer.wrap(bytes).order(order).getInt();
+        }
+        return value;
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        var view = viewFor(Float.BYTES);
+        if (view == null) {
+            return Float.intBitsToFloat(readInt());
+        }
+        position += Float.BYTES;
+        return view.getFloat();
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        var view = viewFor(Long.BYTES);
+        if (view == null) {
+            var bytes = new byte[Long.BYTES];
+            readFully(bytes);
+            return ByteBuffer.wrap(bytes).order(order).getLong();
+        }
+        position += Long.BYTES;
+        return view.getLong();
+    }
+
+    @Override
+    public void read(int[] ints, int offset, int count) throws IOException {
+        var view = viewFor(count * Integer.BYTES);
+        if (view != null) {
+            view.asIntBuffer().get(ints, offset, count);
+            position += (long) count * Integer.BYTES;
+        } else {
+            for (int i = offset; i < offset + count; i++) {
+                ints[i] = readInt();
+            }
+        }
+    }
+
+    @Override
+    public void readFully(byte[] bytes) throws IOException {
+        if (position + bytes.length > length) {
+            throw new EOFException(String.format("Read of %d bytes at %d is past the end of the file (%d)", bytes.length, position, length));
+        }
+        verifier.ensureVerified(position, bytes.length);
+        int read = 0;
+        while (read < bytes.length) {
+            var view = view((int) (position >>> segmentShift));
+            int offset = (int) (position & segmentMask);
+            int n = Math.min(bytes.length - read, view.limit() - offset);
+            view.position(offset);
+            view.get(bytes, read, n);
+            read += n;
+            position += n;
+        }
+    }
+
+    @Override
+    public void readFully(float[] floats) throws IOException {
+        var view = viewFor(floats.length * Float.BYTES);
+        if (view != null) {
+            view.asFloatBuffer().get(floats);
+            position += (long) floats.length * Float.BYTES;
+        } else {
+            // straddles two segments, which can only happen once per segment
+            for (int i = 0; i < floats.length; i++) {
+                floats[i] = Float.intBitsToFloat(readInt());
+            }
+        }
+    }
+
+    @Override
+    public void readFully(short[] shorts) throws IOException {
+        var view = viewFor(shorts.length * Short.BYTES);
+        if (view != null) {
+            view.asShortBuffer().get(shorts);
+            position += (long) shorts.length * Short.BYTES;
+        } else {
+            var bytes = new byte[shorts.length * Short.BYTES];
+            readFully(bytes);
+            ByteBuffer.wrap(bytes).order(order).asShortBuffer().get(shorts);
+        }
+    }
+
+    @Override
+    public void close() {
+        // nothing to do; see class javadoc
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.disk;
+
+import com.github.jbellis.jvector.util.Accountable;
+import com.github.jbellis.jvector.util.LongHeap;
+import com.github.jbellis.jvector.util.RamUsageEstimator;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Counts how often searches expand each node of a graph, so that the hottest nodes can be
+ * saved next to the index and preloaded into a {@link CachingGraphIndex} when it is reopened,
+ * instead of waiting for organic traffic to warm it up.
+ * <p>
+ * Counts are updated without synchronization, so concurrent searches will occasionally lose
+ * an increment.  That is fine for the purpose of finding the hot nodes.
+ */
+public class NodeAccessProfile implements Accountable
+{
+    private final int[] counts;
+
+    public NodeAccessProfile(int size) {
+        this.counts = new int[size];
+    }
+
+    public void record(int ordinal) {
+        if (counts[ordinal] < Integer.MAX_VALUE) {
+            counts[ordinal]++;
+        }
+    }
+
+    /**
+     * @return up to `n` of the most frequently accessed nodes, in ordinal order so that
+     * loading them reads the index sequentially.  Nodes that were never accessed are not included.
+     */
+    public int[] hottest(int n) {
+        if (n <= 0) {
+            return new int[0];
+        }
+
+        // min-heap of (count, ordinal) so the coldest of the current top n is the one replaced
+        var heap = new LongHeap(n);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                heap.insertWithReplacement(((long) counts[i] << 32) | i);
+            }
+        }
+
+        int[] nodes = new int[heap.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = (int) heap.pop();
+        }
+        Arrays.sort(nodes);
+        return nodes;
+    }
+
+    /**
+     * Writes the `n` hottest nodes in a form that can be read back with {@link #load}, or with
+     * {@link IndexContainer#ints} from a container section.
+     */
+    public void write(DataOutput out, int n) throws IOException {
+        IndexContainer.writeInts(out, hottest(n));
+    }
+
+    /**
+     * @return the hot node ordinals saved by {@link #write}, suitable for passing to
+     * {@link CachingGraphIndex#CachingGraphIndex(OnDiskGraphIndex, int[], NodeAccessProfile)}
+     */
+    public static int[] load(RandomAccessReader in, long offset) throws IOException {
+        return IndexContainer.readInts(in, offset);
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        return RamUsageEstimator.sizeOf(counts);
+    }
+}
@@ -17,36 +17,185 @@
 package com.github.jbellis.jvector.disk;
 
 import com.github.jbellis.jvector.graph.GraphIndex;
+import com.github.jbellis.jvector.graph.NeighborSimilarity;
 import com.github.jbellis.jvector.graph.NodesIterator;
 import com.github.jbellis.jvector.graph.RandomAccessVectorValues;
+import com.github.jbellis.jvector.pq.ProductQuantization;
 import com.github.jbellis.jvector.util.Accountable;
+import com.github.jbellis.jvector.vector.Float16;
+import com.github.jbellis.jvector.vector.VectorEncoding;
+import com.github.jbellis.jvector.vector.VectorSimilarityFunction;
 
+import java.io.BufferedOutputStream;
 import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+/**
+ * A graph index that is read from disk (or from a memory-mapped file) on demand.
+ * <p>
+ * The file starts with a header, followed by one fixed-size record per node:
+ * [ordinal][vector][neighbor count][neighbor ordinals, padded with -1 to M].
+ * Vectors are stored in the encoding of the vectors the index was written from, so BYTE
+ * vectors take a quarter of the space of FLOAT32 ones, and getVector returns the same type.
+ * Float vectors may also be stored as FLOAT16, which halves the size of the index; getVector
+ * then returns the float[] they decode to, and {@link OnDiskView#similarity} scores them
+ * without decoding.
+ * <p>
+ * Optionally, the index may also carry product-quantized codes inline.  The header is then
+ * followed by the ProductQuantization codebooks, and each record ends with the node's own code
+ * and the codes of its neighbors, so that the adjacency list and everything needed to score the
+ * neighbors approximately can be read together, without keeping CompressedVectors in memory.
+ * See {@link OnDiskView#approximateScoreFunctionFor}.
+ * <p>
+ * Since version 3 the records are followed by a table of CRC32C checksums of each block of the
+ * index, from the header on.  Blocks are verified the first time they are read (see
+ * {@link BlockVerifier}), so corruption is reported as a {@link CorruptIndexException} instead
+ * of a wrong answer, without reading the whole file at startup; {@link #verify} checks the rest
+ * in the background.
+ * <p>
+ * Files written before the header was versioned (which start directly with the size) can
+ * still be read, as can files from before checksums were added, unverified.
+ */
 public class OnDiskGraphIndex<T> implements GraphIndex<T>, AutoCloseable, Accountable
 {
+    private static final Logger LOG = Logger.getLogger(OnDiskGraphIndex.class.getName());
+    // negative, so it can't be mistaken for the size that unversioned files start with
+    private static final int MAGIC = 0xFFFF0D61;
+    // version 1 added inline PQ codes; version 2 added the vector encoding; version 3 added checksums
+    private static final int VERSION = 3;
+    // how much the record scanner reads at a time
+    private static final int SCAN_CHUNK_BYTES = 1 << 20;
+
     private final ReaderSupplier readerSupplier;
-    private final long neighborsOffset;
+    private final long recordsOffset;
     private final int size;
     private final int entryNode;
     private final int M;
     private final int dimension;
+    private final VectorEncoding encoding;
+    // bytes per inline PQ code, or 0 if there are none
+    private final int codeSize;
+    private final ProductQuantization pq;
+    private final long recordSize;
+    private final Executor prefetchExecutor;
+    // null for files written before checksums were added
+    private final BlockVerifier verifier;
+    private final BlockChecksums checksums;
+    private final long offset;
 
     public OnDiskGraphIndex(ReaderSupplier readerSupplier, long offset)
     {
-        this.readerSupplier = readerSupplier;
-        this.neighborsOffset = offset + 4 * Integer.BYTES;
+        this(readerSupplier, offset, null);
+    }
+
+    /**
+     * @param prefetchExecutor if not null, views read the neighbor lists passed to
+     *                         {@link OnDiskView#prefetch} concurrently on this executor, each with
+     *                         its own reader, so that searches with a
+     *                         {@link com.github.jbellis.jvector.graph.GraphSearcher.Builder#withBeamWidth beam}
+     *                         or {@link com.github.jbellis.jvector.graph.GraphSearcher.Builder#withPrefetch lookahead}
+     *                         load them in one round trip and overlap I/O with scoring.
+     *                         The executor is owned by the caller.
+     */
+    public OnDiskGraphIndex(ReaderSupplier readerSupplier, long offset, Executor prefetchExecutor)
+    {
+        this.prefetchExecutor = prefetchExecutor;
+        this.offset = offset;
+        BlockChecksums fileChecksums = null;
         try (var reader = readerSupplier.get()) {
             reader.seek(offset);
-            size = reader.readInt();
-            dimension = reader.readInt();
-            entryNode = reader.readInt();
-            M = reader.readInt();
+            int first = reader.readInt();
+            if (first >= 0) {
+                // unversioned
+                size = first;
+                dimension = reader.readInt();
+                entryNode = reader.readInt();
+                M = reader.readInt();
+                encoding = VectorEncoding.FLOAT32;
+                codeSize = 0;
+                pq = null;
+                recordsOffset = offset + 4 * Integer.BYTES;
+            } else {
+                if (first != MAGIC) {
+                    throw new IllegalArgumentException(String.format("Bad magic number %x", first));
+                }
+                int version = reader.readInt();
+                if (version > VERSION) {
+                    throw new IllegalArgumentException(String.format("Unsupported version %d; max supported is %d", version, VERSION));
+                }
+                size = reader.readInt();
+                dimension = reader.readInt();
+                encoding = version >= 2 ? encodingOf(reader.readInt()) : VectorEncoding.FLOAT32;
+                entryNode = reader.readInt();
+                M = reader.readInt();
+                codeSize = reader.readInt();
+                pq = codeSize > 0 ? ProductQuantization.load(reader) : null;
+                int headerSize = (version >= 2 ? 8 : 7) * Integer.BYTES;
+                recordsOffset = offset + headerSize + (pq == null ? 0 : pq.serializedSize());
+                if (version >= 3) {
+                    long end = recordsOffset + size * recordSize(dimension, encoding, M, codeSize);
+                    reader.seek(end);
+                    fileChecksums = BlockChecksums.read(reader, offset, end - offset);
+                }
+            }
+
+            if (fileChecksums == null) {
+                this.readerSupplier = readerSupplier;
+                this.verifier = null;
+                this.checksums = null;
+            } else {
+                this.readerSupplier = BlockVerifier.verifying(readerSupplier);
+                this.verifier = BlockVerifier.of(this.readerSupplier);
+                this.checksums = verifier.register(fileChecksums);
+                // the header was read before the checksums were
+                verifier.ensureVerified(offset, recordsOffset - offset);
+            }
         } catch (Exception e) {
             throw new RuntimeException("Error initializing OnDiskGraph at offset " + offset, e);
         }
+        recordSize = recordSize(dimension, encoding, M, codeSize);
+    }
+
+    private static VectorEncoding encodingOf(int ordinal) throws CorruptIndexException {
+        var encodings = VectorEncoding.values();
+        if (ordinal < 0 || ordinal >= encodings.length) {
+            throw new CorruptIndexException(String.format("Unknown vector encoding %d; expected 0 to %d", ordinal, encodings.length - 1));
+        }
+        return encodings[ordinal];
+    }
+
+    private static long recordSize(int dimension, VectorEncoding encoding, int M, int codeSize) {
+        long size = Integer.BYTES // ordinal
+                    + vectorSize(dimension, encoding)
+                    + (long) Integer.BYTES * (M + 1); // neighbor count and ordinals
+        if (codeSize > 0) {
+            // own code and neighbor codes, padded to keep the records int-aligned
+            size += alignedCodesSize(M, codeSize);
+        }
+        return size;
+    }
+
+    /** the size of a vector on disk, padded to keep the records int-aligned */
+    private static int vectorSize(int dimension, VectorEncoding encoding) {
+        return (dimension * encoding.byteSize + Integer.BYTES - 1) & -Integer.BYTES;
+    }
+
+    private static int alignedCodesSize(int M, int codeSize) {
+        int size = (M + 1) * codeSize;
+        return (size + Integer.BYTES - 1) & -Integer.BYTES;
     }
 
     @Override
@@ -59,30 +208,207 @@ public class OnDiskGraphIndex<T> implements GraphIndex<T>, AutoCloseable, Accoun
         return M;
     }
 
+    public int getDimension() {
+        return dimension;
+    }
+
+    public VectorEncoding getVectorEncoding() {
+        return encoding;
+    }
+
+    int entryNode() {
+        return entryNode;
+    }
+
+    /**
+     * @return the quantization used for the inline codes, or null if the index does not have them
+     */
+    public ProductQuantization getInlineQuantization() {
+        return pq;
+    }
+
+    private long recordOffset(int node) {
+        return recordsOffset + node * recordSize;
+    }
+
+    private long vectorOffset(int node) {
+        return recordOffset(node) + Integer.BYTES; // skip the ID
+    }
+
+    private long neighborsOffset(int node) {
+        return vectorOffset(node) + vectorSize(dimension, encoding);
+    }
+
+    private long codesOffset(int node) {
+        return neighborsOffset(node) + neighborsSize();
+    }
+
+    /** the size of the neighbor count and ordinals */
+    private int neighborsSize() {
+        return Integer.BYTES * (M + 1);
+    }
+
+    /** the size of the neighbors and, if there are inline codes, of the codes that follow them */
+    private int adjacencySize() {
+        return neighborsSize() + (M + 1) * codeSize;
+    }
+
+    /**
+     * Reads the neighbors of one node, with their codes if there are any, on the prefetch
+     * executor with its own reader, so that a view can have the lists of a whole beam in flight
+     * at once and read them back with {@link #await}.  Each view keeps a few of these, and reuses
+     * them with their buffers and readers from batch to batch.
+     */
+    private class RecordLoad implements Runnable
+    {
+        // the neighbor count followed by the ordinals and any inline codes
+        private final byte[] buffer = new byte[adjacencySize()];
+        // only touched by the view's thread
+        private int node = -1;
+        private long batch;
+        // opened on the executor by the first load
+        private RandomAccessReader reader;
+        // guarded by this
+        private boolean running;
+        private boolean loaded;
+        private boolean closed;
+
+        void start(int node, long batch) {
+            this.node = node;
+            this.batch = batch;
+            synchronized (this) {
+                running = true;
+                loaded = false;
+            }
+            try {
+                prefetchExecutor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // the executor is shutting down; the search will just read synchronously
+                finish(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            boolean ok = false;
+            try {
+                if (reader == null) {
+                    reader = readerSupplier.get();
+                }
+                reader.seek(neighborsOffset(node));
+                reader.readFully(buffer);
+                ok = true;
+            } catch (Exception e) {
+                // the search will read the record itself, and report the error if it recurs
+                LOG.log(Level.FINE, "Failed to prefetch record " + node, e);
+            } finally {
+                finish(ok);
+            }
+        }
+
+        private synchronized void finish(boolean ok) {
+            running = false;
+            loaded = ok;
+            notifyAll();
+            if (closed) {
+                closeReader();
+            }
+        }
+
+        synchronized boolean isIdle() {
+            return !running;
+        }
+
+        /** @return true once the adjacency block is in `buffer`, or false if it could not be loaded */
+        synchronized boolean await() throws IOException {
+            while (running) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for record " + node);
+                }
+            }
+            return loaded;
+        }
+
+        /** closes the reader now, or when the load in progress finishes */
+        synchronized void close() {
+            closed = true;
+            if (!running) {
+                closeReader();
+            }
+        }
+
+        private void closeReader() {
+            if (reader == null) {
+                return;
+            }
+            try {
+                reader.close();
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Failed to close prefetch reader", e);
+            }
+            reader = null;
+        }
+    }
+
     /** return a Graph that can be safely queried concurrently */
     public OnDiskGraphIndex<T>.OnDiskView getView()
     {
         return new OnDiskView(readerSupplier.get());
     }
 
-    // TODO: This is fake generic until the reading functionality uses T
     public class OnDiskView implements GraphIndex.View<T>, AutoCloseable
     {
         private final RandomAccessReader reader;
+        // for scoring vectors that cannot be read in place; allocated on first use
+        private float[] scratchVector;
+        private byte[] scratchBytes;
+        private short[] scratchHalves;
+        private final int[] neighbors;
+        // the node whose adjacency list is in `neighbors`, and how many of them there are
+        private int neighborsNode = -1;
+        private int neighborCount;
+        // the index in `neighbors` of the node most recently returned by its iterator, or -1
+        private int neighborIndex = -1;
+        // the adjacency block of `neighborsNode`, ending with its own code and its neighbors'
+        private final byte[] adjacency;
+        private final byte[] scratchCode;
+        // neighbor lists loaded, or loading, on the prefetch executor
+        private final List<RecordLoad> loads = new ArrayList<>();
+        // the number of prefetch batches, and the latest one counted as an I/O round
+        private long batch;
+        private long countedBatch;
+        private long ioRounds;
 
         public OnDiskView(RandomAccessReader reader)
         {
             super();
             this.reader = reader;
+            this.neighbors = new int[M];
+            this.adjacency = new byte[adjacencySize()];
+            this.scratchCode = new byte[codeSize];
         }
 
         public T getVector(int node) {
             try {
-                long offset = neighborsOffset +
-                        node * (Integer.BYTES + (long) dimension * Float.BYTES + (long) Integer.BYTES * (M + 1)) // earlier entries
-                        + Integer.BYTES; // skip the ID
+                reader.seek(vectorOffset(node));
+                if (encoding == VectorEncoding.BYTE) {
+                    byte[] vector = new byte[dimension];
+                    reader.readFully(vector);
+                    return (T) vector;
+                }
+                if (encoding == VectorEncoding.FLOAT16) {
+                    if (scratchHalves == null) {
+                        scratchHalves = new short[dimension];
+                    }
+                    reader.readFully(scratchHalves);
+                    float[] vector = new float[dimension];
+                    Float16.toFloats(scratchHalves, 0, vector);
+                    return (T) vector;
+                }
                 float[] vector = new float[dimension];
-                reader.seek(offset);
                 reader.readFully(vector);
                 return (T) vector;
             }
@@ -91,41 +417,203 @@ public class OnDiskGraphIndex<T> implements GraphIndex<T>, AutoCloseable, Accoun
             }
         }
 
-        public NodesIterator getNeighborsIterator(int node) {
+        /**
+         * Compares `query` with the vector of `node`.  If the index is memory-mapped with a
+         * {@link MappedRandomAccessReader}, the vector is scored in place instead of being copied
+         * out of the file; otherwise it is read into a scratch array that is reused across calls.
+         */
+        public float similarity(T query, int node, VectorSimilarityFunction vsf) {
             try {
-                reader.seek(neighborsOffset +
-                        (node + 1) * (Integer.BYTES + (long) dimension * Float.BYTES) +
-                        (node * (long) Integer.BYTES * (M + 1)));
-                int neighborCount = reader.readInt();
-                assert neighborCount <= M : String.format("neighborCount %d > M %d", neighborCount, M);
-                return new NodesIterator(neighborCount)
-                {
-                    int currentNeighborsRead = 0;
-
-                    @Override
-                    public int nextInt() {
-                        currentNeighborsRead++;
-                        try {
-                            int ordinal = reader.readInt();
-                            assert ordinal <= OnDiskGraphIndex.this.size : String.format("ordinal %d > size %d", ordinal, size);
-                            return ordinal;
-                        }
-                        catch (IOException e) {
-                            throw new UncheckedIOException(e);
-                        }
+                long offset = vectorOffset(node);
+                if (encoding == VectorEncoding.BYTE) {
+                    if (scratchBytes == null) {
+                        scratchBytes = new byte[dimension];
                     }
+                    reader.seek(offset);
+                    reader.readFully(scratchBytes);
+                    return vsf.compare((byte[]) query, scratchBytes);
+                }
+
+                var floatQuery = (float[]) query;
+                if (encoding == VectorEncoding.FLOAT16) {
+                    if (scratchHalves == null) {
+                        scratchHalves = new short[dimension];
+                    }
+                    reader.seek(offset);
+                    reader.readFully(scratchHalves);
+                    return vsf.compare(floatQuery, scratchHalves, 0);
+                }
+                if (reader instanceof MappedRandomAccessReader) {
+                    var mapped = (MappedRandomAccessReader) reader;
+                    var segment = mapped.segmentFor(offset, dimension * Float.BYTES);
+                    if (segment != null) {
+                        return vsf.compare(floatQuery, segment, mapped.segmentOffset(offset));
+                    }
+                }
+
+                if (scratchVector == null) {
+                    scratchVector = new float[dimension];
+                }
+                reader.seek(offset);
+                reader.readFully(scratchVector);
+                return vsf.compare(floatQuery, scratchVector);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * @return a ReRanker that scores nodes against `query` with {@link #similarity}, so that
+         * searches do not need to materialize the vectors of the nodes they visit
+         */
+        public NeighborSimilarity.DirectReRanker<T> rerankerFor(T query, VectorSimilarityFunction vsf) {
+            return node -> similarity(query, node, vsf);
+        }
+
+        /**
+         * @return an approximate score function for `query` that uses the PQ codes stored inline
+         * in the index, scored with tables computed once for the query.  The neighbor most
+         * recently returned by the iterator from getNeighborsIterator is scored from the codes
+         * that were read along with the adjacency list; any other node is scored from the code in
+         * its own record.
+         * @throws IllegalStateException if the index was written without inline codes
+         */
+        public NeighborSimilarity.ApproximateScoreFunction approximateScoreFunctionFor(float[] query, VectorSimilarityFunction vsf) {
+            if (pq == null) {
+                throw new IllegalStateException("This index was not written with inline PQ codes");
+            }
+            var scoreFunction = CompressedVectors.codeScoreFunctionFor(pq, query, vsf);
+            return node -> {
+                // searches score each neighbor as the iterator returns it, so its code is at
+                // that position in the expanded node's adjacency block
+                int i = neighborIndex;
+                if (i >= 0 && neighbors[i] == node) {
+                    return scoreFunction.similarityTo(adjacency, neighborsSize() + (i + 1) * codeSize);
+                }
+                if (node == neighborsNode) {
+                    return scoreFunction.similarityTo(adjacency, neighborsSize());
+                }
+                try {
+                    reader.seek(codesOffset(node));
+                    reader.readFully(scratchCode);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return scoreFunction.similarityTo(scratchCode, 0);
+            };
+        }
+
+        /**
+         * Starts reading the neighbor lists of `nodes` concurrently on the prefetch executor, if
+         * there is one.  getNeighborsIterator then waits for the list it needs instead of
+         * reading it again, so a whole beam costs one I/O round trip.
+         */
+        @Override
+        public void prefetch(int[] nodes, int count) {
+            if (prefetchExecutor == null) {
+                return;
+            }
+            batch++;
+            for (int i = 0; i < count; i++) {
+                if (loadOf(nodes[i]) == null) {
+                    freeLoad(nodes, count).start(nodes[i], batch);
+                }
+            }
+        }
+
+        private RecordLoad loadOf(int node) {
+            for (var load : loads) {
+                if (load.node == node) {
+                    return load;
+                }
+            }
+            return null;
+        }
 
-                    @Override
-                    public boolean hasNext() {
-                        return currentNeighborsRead < neighborCount;
+        /** @return a load that is neither running nor holding one of `nodes`, adding one if there is none */
+        private RecordLoad freeLoad(int[] nodes, int count) {
+            for (var load : loads) {
+                if (load.batch != batch && load.isIdle() && !contains(nodes, count, load.node)) {
+                    return load;
+                }
+            }
+            var load = new RecordLoad();
+            loads.add(load);
+            return load;
+        }
+
+        private boolean contains(int[] nodes, int count, int node) {
+            for (int i = 0; i < count; i++) {
+                if (nodes[i] == node) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public long getIoRounds() {
+            return ioRounds;
+        }
+
+        public NodesIterator getNeighborsIterator(int node) {
+            try {
+                var load = loadOf(node);
+                if (load != null && load.await()) {
+                    // a batch is one round trip, counted when the first of its lists is used;
+                    // batches started before one that was counted had at least as long to finish
+                    if (load.batch > countedBatch) {
+                        ioRounds++;
+                        countedBatch = load.batch;
                     }
-                };
+                    System.arraycopy(load.buffer, 0, adjacency, 0, adjacency.length);
+                } else {
+                    ioRounds++;
+                    // the neighbors and their codes in one read
+                    reader.seek(neighborsOffset(node));
+                    reader.readFully(adjacency);
+                }
+                // only the most recent iterator has to remain valid, so the arrays can be reused
+                var block = ByteBuffer.wrap(adjacency);
+                neighborCount = block.getInt();
+                assert neighborCount <= M : String.format("neighborCount %d > M %d", neighborCount, M);
+                for (int i = 0; i < neighborCount; i++) {
+                    neighbors[i] = block.getInt();
+                }
+                neighborsNode = node;
+                neighborIndex = -1;
+                return new NeighborsIterator(neighborCount);
             }
             catch (IOException e) {
                 throw new UncheckedIOException(e);
             }
         }
 
+        /** Iterates over `neighbors`, keeping track of its position in neighborIndex for codeOf */
+        private class NeighborsIterator extends NodesIterator {
+            private int cur;
+
+            NeighborsIterator(int size) {
+                super(size);
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                neighborIndex = cur;
+                return neighbors[cur++];
+            }
+
+            @Override
+            public boolean hasNext() {
+                return cur < size;
+            }
+        }
+
         @Override
         public int size() {
             return OnDiskGraphIndex.this.size();
@@ -139,19 +627,201 @@ public class OnDiskGraphIndex<T> implements GraphIndex<T>, AutoCloseable, Accoun
         @Override
         public void close() throws Exception
         {
+            for (var load : loads) {
+                load.close();
+            }
             reader.close();
         }
     }
 
+    /** @return the ordinals of the nodes, which are always 0 through size - 1 */
     @Override
     public NodesIterator getNodes()
     {
-        throw new UnsupportedOperationException();
+        return new NodesIterator(size) {
+            private int next;
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return next++;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+        };
+    }
+
+    /**
+     * @return a scanner that reads every record in ordinal order, in large sequential chunks
+     * instead of seeking to each node, for tools that rebuild, merge, validate or convert
+     * the whole index
+     */
+    public RecordScanner scan()
+    {
+        return scan(SCAN_CHUNK_BYTES);
+    }
+
+    /**
+     * @return a scanner that reads about `chunkBytes` at a time (but always at least one record)
+     */
+    public RecordScanner scan(int chunkBytes)
+    {
+        return new RecordScanner(readerSupplier.get(), chunkBytes);
+    }
+
+    /**
+     * Iterates over the records of the index.  Call {@link #next} to advance to each node in turn,
+     * then read its contents with the other methods.  Not threadsafe.
+     */
+    public class RecordScanner implements AutoCloseable
+    {
+        private final RandomAccessReader reader;
+        private final ByteBuffer chunk;
+        private final int recordsPerChunk;
+        // the first node in the chunk, and how many are loaded
+        private int chunkStart;
+        private int chunkCount;
+        private int node = -1;
+        private int recordStart;
+        private final int[] neighbors;
+        private int neighborCount;
+
+        private RecordScanner(RandomAccessReader reader, int chunkBytes)
+        {
+            this.reader = reader;
+            this.recordsPerChunk = (int) Math.max(1, Math.min(size, chunkBytes / recordSize));
+            this.chunk = ByteBuffer.wrap(new byte[(int) (recordsPerChunk * recordSize)]);
+            this.neighbors = new int[M];
+        }
+
+        /** @return false if there are no more records */
+        public boolean next()
+        {
+            if (node + 1 >= size) {
+                return false;
+            }
+            node++;
+            if (node == chunkStart + chunkCount) {
+                loadChunk();
+            }
+
+            recordStart = (int) ((node - chunkStart) * recordSize);
+            int ordinal = chunk.getInt(recordStart);
+            if (ordinal != node) {
+                throw new IllegalStateException(String.format("Expected record %d at offset %d, found %d", node, recordOffset(node), ordinal));
+            }
+            int neighborsStart = recordStart + Integer.BYTES + vectorSize(dimension, encoding);
+            neighborCount = chunk.getInt(neighborsStart);
+            for (int i = 0; i < neighborCount; i++) {
+                neighbors[i] = chunk.getInt(neighborsStart + Integer.BYTES * (i + 1));
+            }
+            return true;
+        }
+
+        private void loadChunk()
+        {
+            chunkStart = node;
+            chunkCount = Math.min(recordsPerChunk, size - node);
+            try {
+                reader.seek(recordOffset(node));
+                if (chunkCount == recordsPerChunk) {
+                    reader.readFully(chunk.array());
+                } else {
+                    var last = new byte[(int) (chunkCount * recordSize)];
+                    reader.readFully(last);
+                    System.arraycopy(last, 0, chunk.array(), 0, last.length);
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /** @return the ordinal of the current record */
+        public int node() {
+            return node;
+        }
+
+        /** @return a new array holding the vector of the current record, as getVector would return */
+        public T vector()
+        {
+            int start = recordStart + Integer.BYTES;
+            if (encoding == VectorEncoding.BYTE) {
+                var vector = new byte[dimension];
+                System.arraycopy(chunk.array(), start, vector, 0, dimension);
+                return (T) vector;
+            }
+            var vector = new float[dimension];
+            for (int i = 0; i < dimension; i++) {
+                vector[i] = encoding == VectorEncoding.FLOAT16
+                            ? Float16.toFloat(chunk.getShort(start + Short.BYTES * i))
+                            : chunk.getFloat(start + Float.BYTES * i);
+            }
+            return (T) vector;
+        }
+
+        /**
+         * Copies the half-precision bits of the current record's vector into `dest` at `offset`,
+         * without decoding them
+         * @throws IllegalStateException if the vectors are not stored as FLOAT16
+         */
+        public void copyHalves(short[] dest, int offset)
+        {
+            if (encoding != VectorEncoding.FLOAT16) {
+                throw new IllegalStateException("This index stores " + encoding + " vectors, not FLOAT16");
+            }
+            int start = recordStart + Integer.BYTES;
+            for (int i = 0; i < dimension; i++) {
+                dest[offset + i] = chunk.getShort(start + Short.BYTES * i);
+            }
+        }
+
+        /** @return the neighbors of the current record; valid until the next call to {@link #next} */
+        public NodesIterator neighbors() {
+            return new NodesIterator.ArrayNodesIterator(neighbors, 0, neighborCount);
+        }
+
+        /**
+         * @return a new array holding the inline PQ code of the current record
+         * @throws IllegalStateException if the index was written without inline codes
+         */
+        public byte[] code()
+        {
+            if (pq == null) {
+                throw new IllegalStateException("This index was not written with inline PQ codes");
+            }
+            int start = recordStart + Integer.BYTES + vectorSize(dimension, encoding) + Integer.BYTES * (M + 1);
+            return Arrays.copyOfRange(chunk.array(), start, start + codeSize);
+        }
+
+        @Override
+        public void close() throws Exception
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Verifies every block of the index that has not already been read, in parallel tasks on
+     * `executor`.  The future completes exceptionally with a {@link CorruptIndexException}
+     * (wrapped in an UncheckedIOException) if any of them is corrupt, and immediately if the
+     * index was written before checksums were added.
+     */
+    public CompletableFuture<Void> verify(Executor executor) {
+        if (checksums == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return verifier.verifyAll(checksums, offset, recordsOffset + size * recordSize - offset, executor);
     }
 
     @Override
     public long ramBytesUsed() {
-        return Long.BYTES + 4 * Integer.BYTES;
+        return 2 * Long.BYTES + 4 * Integer.BYTES + (pq == null ? 0 : pq.ramBytesUsed()) + (checksums == null ? 0 : checksums.ramBytesUsed());
     }
 
     public void close() {
@@ -166,26 +836,81 @@ public class OnDiskGraphIndex<T> implements GraphIndex<T>, AutoCloseable, Accoun
     // to OnHeapGraphIndex just for this method.  Maybe that will end up the best solution,
     // but I'm not sure yet.
     public static <T> void write(GraphIndex<T> graph, RandomAccessVectorValues<T> vectors, DataOutput out) throws IOException {
+        write(graph, vectors, null, out);
+    }
+
+    /**
+     * Writes the graph with the codes from `inlineCodes` stored inline in the adjacency records,
+     * or without inline codes if it is null.
+     */
+    public static <T> void write(GraphIndex<T> graph, RandomAccessVectorValues<T> vectors, CompressedVectors inlineCodes, DataOutput out) throws IOException {
+        // byte[] and float[] are the only vector types the graph supports
+        var encoding = vectors.size() > 0 && vectors.vectorValue(0) instanceof byte[] ? VectorEncoding.BYTE : VectorEncoding.FLOAT32;
+        write(graph, vectors, encoding, inlineCodes, out);
+    }
+
+    /**
+     * Writes the graph with its vectors stored in the given encoding: BYTE for byte[] vectors,
+     * or FLOAT32 or FLOAT16 for float[] vectors.
+     */
+    public static <T> void write(GraphIndex<T> graph, RandomAccessVectorValues<T> vectors, VectorEncoding encoding, CompressedVectors inlineCodes, DataOutput out) throws IOException {
         assert graph.size() == vectors.size() : String.format("graph size %d != vectors size %d", graph.size(), vectors.size());
+        if (inlineCodes != null && inlineCodes.size() != graph.size()) {
+            throw new IllegalArgumentException(String.format("%d compressed vectors for a graph of size %d", inlineCodes.size(), graph.size()));
+        }
+        if (vectors.size() > 0 && (vectors.vectorValue(0) instanceof byte[]) != (encoding == VectorEncoding.BYTE)) {
+            throw new IllegalArgumentException("Encoding " + encoding + " does not match vectors of type " + vectors.vectorValue(0).getClass().getSimpleName());
+        }
 
         var view = graph.getView();
+        int codeSize = inlineCodes == null ? 0 : inlineCodes.getProductQuantization().getSubspaceCount();
+        // everything up to the checksums goes through `checksummed`
+        var checksummed = new BlockChecksums.ChecksummingOutputStream(BlockChecksums.asOutputStream(out), BlockChecksums.DEFAULT_BLOCK_SIZE);
+        var indexOut = new DataOutputStream(new BufferedOutputStream(checksummed, BlockChecksums.DEFAULT_BLOCK_SIZE));
+        writeIndex(graph, view, vectors, encoding, inlineCodes, codeSize, indexOut);
+        indexOut.flush();
+        BlockChecksums.write(out, checksummed.blockSize, checksummed.finishChecksums());
+    }
+
+    private static <T> void writeIndex(GraphIndex<T> graph, GraphIndex.View<T> view, RandomAccessVectorValues<T> vectors, VectorEncoding encoding, CompressedVectors inlineCodes, int codeSize, DataOutput out) throws IOException {
 
         // graph-level properties
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
         out.writeInt(graph.size());
         out.writeInt(vectors.dimension());
+        out.writeInt(encoding.ordinal());
         out.writeInt(view.entryNode());
         out.writeInt(graph.maxEdgesPerNode());
+        out.writeInt(codeSize);
+        if (inlineCodes != null) {
+            inlineCodes.getProductQuantization().write(out);
+        }
 
         // for each graph node, write the associated vector and its neighbors
+        var padding = new byte[codeSize == 0 ? 0 : alignedCodesSize(graph.maxEdgesPerNode(), codeSize) - (graph.maxEdgesPerNode() + 1) * codeSize];
+        var emptyCode = new byte[codeSize];
+        var vectorPadding = new byte[vectorSize(vectors.dimension(), encoding) - vectors.dimension() * encoding.byteSize];
         for (int node = 0; node < graph.size(); node++) {
             out.writeInt(node); // unnecessary, but a reasonable sanity check
-            Io.writeFloats(out, (float[]) vectors.vectorValue(node));
+            if (encoding == VectorEncoding.BYTE) {
+                out.write((byte[]) vectors.vectorValue(node));
+            } else if (encoding == VectorEncoding.FLOAT16) {
+                for (float f : (float[]) vectors.vectorValue(node)) {
+                    out.writeShort(Float16.fromFloat(f));
+                }
+            } else {
+                Io.writeFloats(out, (float[]) vectors.vectorValue(node));
+            }
+            out.write(vectorPadding);
 
             var neighbors = view.getNeighborsIterator(node);
+            int[] ordinals = new int[neighbors.size()];
             out.writeInt(neighbors.size());
             int n = 0;
             for ( ; n < neighbors.size(); n++) {
-                out.writeInt(neighbors.nextInt());
+                ordinals[n] = neighbors.nextInt();
+                out.writeInt(ordinals[n]);
             }
             assert !neighbors.hasNext();
 
@@ -193,6 +918,17 @@ public class OnDiskGraphIndex<T> implements GraphIndex<T>, AutoCloseable, Accoun
             for ( ; n < graph.maxEdgesPerNode(); n++) {
                 out.writeInt(-1);
             }
+
+            if (inlineCodes != null) {
+                out.write(inlineCodes.get(node));
+                for (int ordinal : ordinals) {
+                    out.write(inlineCodes.get(ordinal));
+                }
+                for (n = ordinals.length; n < graph.maxEdgesPerNode(); n++) {
+                    out.write(emptyCode);
+                }
+                out.write(padding);
+            }
         }
     }
 }
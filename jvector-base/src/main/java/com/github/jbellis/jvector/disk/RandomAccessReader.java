@@ -19,15 +19,58 @@ package com.github.jbellis.jvector.disk;
 import java.io.IOException;
 
 /**
- * This is a subset of DataInput, plus seek and readFully(float[]), which allows implementations
- * to use a more efficient option like FloatBuffer.
+ * This is a subset of DataInput, plus seek and bulk reads of primitive arrays, which allow
+ * implementations to use a more efficient option like FloatBuffer or IntBuffer.
+ * <p>
+ * The default implementations of the newer methods are built on readInt, so that existing
+ * readers keep working; implementations should override them with bulk versions.
  */
 public interface RandomAccessReader extends AutoCloseable {
     public void seek(long offset) throws IOException;
 
     public int readInt() throws IOException;
 
+    /**
+     * @return the length of the underlying file, so that structures such as {@link IndexContainer}
+     * can read a trailer from its end
+     */
+    public long length() throws IOException;
+
+    public default float readFloat() throws IOException {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    public default long readLong() throws IOException {
+        long high = readInt();
+        return (high << 32) | (readInt() & 0xFFFFFFFFL);
+    }
+
     public void readFully(byte[] bytes) throws IOException;
 
     public void readFully(float[] floats) throws IOException;
+
+    /**
+     * Reads shorts written big-endian, as by DataOutput.  Implementations that support other
+     * byte orders should override this.
+     */
+    public default void readFully(short[] shorts) throws IOException {
+        var bytes = new byte[shorts.length * Short.BYTES];
+        readFully(bytes);
+        for (int i = 0; i < shorts.length; i++) {
+            shorts[i] = (short) ((bytes[2 * i] << 8) | (bytes[2 * i + 1] & 0xff));
+        }
+    }
+
+    /**
+     * Reads `count` ints into `ints`, starting at index `offset` of the array.
+     */
+    public default void read(int[] ints, int offset, int count) throws IOException {
+        for (int i = offset; i < offset + count; i++) {
+            ints[i] = readInt();
+        }
+    }
+
+    public default void readFully(int[] ints) throws IOException {
+        read(ints, 0, ints.length);
+    }
 }
@@ -118,8 +118,10 @@ public class Bench {
                 SearchResult sr;
                 if (cv != null) {
                     var view = index.getView();
-                    NeighborSimilarity.ApproximateScoreFunction sf = (other) -> cv.decodedSimilarity(other, queryVector, ds.similarityFunction);
-                    NeighborSimilarity.ReRanker<float[]> rr = (j, vectors) -> ds.similarityFunction.compare(queryVector, vectors.get(j));
+                    var sf = cv.approximateScoreFunctionFor(queryVector, ds.similarityFunction);
+                    NeighborSimilarity.ReRanker<float[]> rr = view instanceof CachingGraphIndex.CachedView
+                            ? ((CachingGraphIndex.CachedView) view).rerankerFor(queryVector, ds.similarityFunction)
+                            : (j, vectors) -> ds.similarityFunction.compare(queryVector, vectors.get(j));
                     sr = new GraphSearcher.Builder(view)
                             .build()
                             .search(sf, rr, efSearch, null);
@@ -167,7 +169,8 @@ public class Bench {
     private static void gridSearch(DataSet ds, List<Integer> mGrid, List<Integer> efConstructionGrid, List<Boolean> diskOptions, List<Integer> efSearchFactor) throws IOException {
         var start = System.nanoTime();
         var pqDims = ds.baseVectors.get(0).length / 2;
-        ProductQuantization pq = new ProductQuantization(ds.baseVectors, pqDims, ds.similarityFunction == VectorSimilarityFunction.EUCLIDEAN);
+        var ravv = new ListRandomAccessVectorValues(ds.baseVectors, ds.baseVectors.get(0).length);
+        ProductQuantization pq = new ProductQuantization(ravv, pqDims, ds.similarityFunction == VectorSimilarityFunction.EUCLIDEAN);
         System.out.format("PQ@%s build %.2fs,%n", pqDims, (System.nanoTime() - start) / 1_000_000_000.0);
 
         start = System.nanoTime();
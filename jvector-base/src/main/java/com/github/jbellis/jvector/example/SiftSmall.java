@@ -18,8 +18,8 @@ package com.github.jbellis.jvector.example;
 
 import com.github.jbellis.jvector.disk.CachingGraphIndex;
 import com.github.jbellis.jvector.disk.CompressedVectors;
+import com.github.jbellis.jvector.disk.MappedRandomAccessReader;
 import com.github.jbellis.jvector.disk.OnDiskGraphIndex;
-import com.github.jbellis.jvector.example.util.SimpleMappedReader;
 import com.github.jbellis.jvector.example.util.SiftLoader;
 import com.github.jbellis.jvector.graph.*;
 import com.github.jbellis.jvector.pq.ProductQuantization;
@@ -46,7 +46,7 @@ public class SiftSmall {
 
         var start = System.nanoTime();
         var pqDims = baseVectors.get(0).length / 2;
-        ProductQuantization pq = new ProductQuantization(baseVectors, pqDims, false);
+        ProductQuantization pq = new ProductQuantization(ravv, pqDims, false);
         System.out.format("  PQ@%s build %.2fs,%n", pqDims, (System.nanoTime() - start) / 1_000_000_000.0);
 
         start = System.nanoTime();
@@ -65,7 +65,7 @@ public class SiftSmall {
             DataOutputStream outputFile = new DataOutputStream(new FileOutputStream(graphPath.toFile()));
             OnDiskGraphIndex.write(onHeapGraph, ravv, outputFile);
 
-            var marr = new SimpleMappedReader(graphPath.toAbsolutePath().toString());
+            var marr = new MappedRandomAccessReader(graphPath);
 
             var onDiskGraph = new CachingGraphIndex(new OnDiskGraphIndex<>(marr::duplicate, 0));
 
@@ -91,8 +91,10 @@ public class SiftSmall {
                 nn = searcher.search(sf, null, 100, null).getNodes();
             }
             else {
-                NeighborSimilarity.ApproximateScoreFunction sf = (j) -> compressedVectors.decodedSimilarity(j, queryVector, VectorSimilarityFunction.EUCLIDEAN);
-                NeighborSimilarity.ReRanker<float[]> rr = (j, vectors) -> VectorSimilarityFunction.EUCLIDEAN.compare(queryVector, vectors.get(j));
+                var sf = compressedVectors.approximateScoreFunctionFor(queryVector, VectorSimilarityFunction.EUCLIDEAN);
+                NeighborSimilarity.ReRanker<float[]> rr = view instanceof CachingGraphIndex.CachedView
+                        ? ((CachingGraphIndex.CachedView) view).rerankerFor(queryVector, VectorSimilarityFunction.EUCLIDEAN)
+                        : (j, vectors) -> VectorSimilarityFunction.EUCLIDEAN.compare(queryVector, vectors.get(j));
                 nn = searcher.search(sf, rr, 100, null).getNodes();
             }
 
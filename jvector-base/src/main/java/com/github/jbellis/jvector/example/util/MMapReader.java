@@ -23,6 +23,11 @@ public class MMapReader implements RandomAccessReader {
         position = offset;
     }
 
+    @Override
+    public long length() {
+        return buffer.memory().length();
+    }
+
     public int readInt() {
         try {
             return buffer.memory().getInt(position);
@@ -31,6 +36,33 @@ public class MMapReader implements RandomAccessReader {
         }
     }
 
+    @Override
+    public float readFloat() {
+        try {
+            return buffer.memory().getFloat(position);
+        } finally {
+            position += Float.BYTES;
+        }
+    }
+
+    @Override
+    public long readLong() {
+        try {
+            return buffer.memory().getLong(position);
+        } finally {
+            position += Long.BYTES;
+        }
+    }
+
+    @Override
+    public void read(int[] ints, int offset, int count) {
+        var memory = buffer.memory();
+        for (int i = 0; i < count; i++) {
+            ints[offset + i] = memory.getInt(position + (long) i * Integer.BYTES);
+        }
+        position += (long) count * Integer.BYTES;
+    }
+
     public void readFully(byte[] bytes) {
         try {
             buffer.memory().getBytes(position, bytes);
@@ -1,9 +1,9 @@
 package com.github.jbellis.jvector.example.util;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 
+import com.github.jbellis.jvector.disk.MappedRandomAccessReader;
 import com.github.jbellis.jvector.disk.RandomAccessReader;
 import com.github.jbellis.jvector.disk.ReaderSupplier;
 
@@ -12,21 +12,17 @@ public class ReaderSupplierFactory {
         try {
             return new MMapReaderSupplier(path);
         } catch (UnsatisfiedLinkError e) {
-            if (Files.size(path) > Integer.MAX_VALUE) {
-                throw new RuntimeException("File sizes greater than 2GB are not supported on Windows--contributions welcome");
-            }
-
+            // native mmap library is not available (e.g. on Windows), use the pure Java mapped reader
+            var reader = new MappedRandomAccessReader(path);
             return new ReaderSupplier() {
-                private final SimpleMappedReader smr = new SimpleMappedReader(path);
-
                 @Override
                 public RandomAccessReader get() {
-                    return smr.duplicate();
+                    return reader.duplicate();
                 }
 
                 @Override
                 public void close() {
-                    smr.close();
+                    reader.close();
                 }
             };
         }
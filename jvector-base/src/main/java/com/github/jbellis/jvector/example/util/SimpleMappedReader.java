@@ -74,9 +74,20 @@ public class SimpleMappedReader implements RandomAccessReader {
 
     @Override
     public void readFully(float[] buffer) {
-        for (int i = 0; i < buffer.length; i++) {
-            buffer[i] = mbb.getFloat();
-        }
+        mbb.asFloatBuffer().get(buffer);
+        mbb.position(mbb.position() + buffer.length * Float.BYTES);
+    }
+
+    @Override
+    public void readFully(short[] shorts) {
+        mbb.asShortBuffer().get(shorts);
+        mbb.position(mbb.position() + shorts.length * Short.BYTES);
+    }
+
+    @Override
+    public void read(int[] ints, int offset, int count) {
+        mbb.asIntBuffer().get(ints, offset, count);
+        mbb.position(mbb.position() + count * Integer.BYTES);
     }
 
     @Override
@@ -84,11 +95,26 @@ public class SimpleMappedReader implements RandomAccessReader {
         mbb.get(b);
     }
 
+    @Override
+    public long length() {
+        return mbb.limit();
+    }
+
     @Override
     public int readInt() {
         return mbb.getInt();
     }
 
+    @Override
+    public float readFloat() {
+        return mbb.getFloat();
+    }
+
+    @Override
+    public long readLong() {
+        return mbb.getLong();
+    }
+
     @Override
     public void close() {
         if (unsafe != null) {
@@ -0,0 +1,93 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.graph;
+
+import com.github.jbellis.jvector.annotations.Unshared;
+import com.github.jbellis.jvector.util.Accountable;
+import com.github.jbellis.jvector.util.RamUsageEstimator;
+import com.github.jbellis.jvector.vector.Float16;
+import com.github.jbellis.jvector.vector.VectorSimilarityFunction;
+
+import java.util.List;
+
+/**
+ * A {@link RandomAccessVectorValues} that stores float vectors in half precision, packed into a
+ * single array, for half the memory of {@link ListRandomAccessVectorValues}.
+ * <p>
+ * vectorValue decodes into a new array; searches should prefer {@link #similarity}, which
+ * scores the half-precision values directly.
+ * <p>
+ * This is immutable, and therefore threadsafe.
+ */
+public class Float16RandomAccessVectorValues implements RandomAccessVectorValues<float[]>, Accountable {
+    private final short[] data;
+    private final int size;
+    private final int dimension;
+
+    /**
+     * Encodes the given vectors, which must all have the given dimension.
+     */
+    public Float16RandomAccessVectorValues(List<float[]> vectors, int dimension) {
+        this.size = vectors.size();
+        this.dimension = dimension;
+        this.data = new short[size * dimension];
+        for (int i = 0; i < size; i++) {
+            var v = vectors.get(i);
+            if (v.length != dimension) {
+                throw new IllegalArgumentException(String.format("Vector %d has dimension %d, expected %d", i, v.length, dimension));
+            }
+            for (int j = 0; j < dimension; j++) {
+                data[i * dimension + j] = Float16.fromFloat(v[j]);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    @Unshared
+    public float[] vectorValue(int targetOrd) {
+        var v = new float[dimension];
+        Float16.toFloats(data, targetOrd * dimension, v);
+        return v;
+    }
+
+    /**
+     * @return the similarity of `query` to the vector at `targetOrd`, computed without decoding it
+     */
+    public float similarity(float[] query, int targetOrd, VectorSimilarityFunction similarityFunction) {
+        return similarityFunction.compare(query, data, targetOrd * dimension);
+    }
+
+    @Override
+    public Float16RandomAccessVectorValues copy() {
+        return this;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        return RamUsageEstimator.sizeOf(data) + Integer.BYTES * 2;
+    }
+}
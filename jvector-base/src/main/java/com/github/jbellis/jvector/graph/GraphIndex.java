@@ -78,6 +78,24 @@ public interface GraphIndex<T> {
      */
     T getVector(int node);
 
+    /**
+     * Hints that the neighbors of the given nodes are likely to be requested soon, so that an
+     * implementation backed by slow storage can start loading them together, in the background,
+     * and serve the getNeighborsIterator calls that follow from what it loaded.
+     * Implementations must not modify or hold on to `nodes`, since the caller reuses it.
+     */
+    default void prefetch(int[] nodes, int count) {
+    }
+
+    /**
+     * @return the number of dependent round trips to storage this view has made so far to load
+     * neighbor lists, where a batch of concurrent reads counts as one.  Always 0 for views that
+     * are entirely in memory.
+     */
+    default long getIoRounds() {
+      return 0;
+    }
+
     // for compatibility with Cassandra's ExtendedHnswGraph.  Not sure if we still need it
     default int[] getSortedNodes() {
       int[] sortedNodes = new int[size()];
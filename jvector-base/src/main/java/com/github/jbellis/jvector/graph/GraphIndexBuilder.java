@@ -258,6 +258,7 @@ public class GraphIndexBuilder<T> {
       case BYTE:
         return similarityFunction.compare((byte[]) v1, (byte[]) v2);
       case FLOAT32:
+      case FLOAT16: // presented as float[]
         return similarityFunction.compare((float[]) v1, (float[]) v2);
       default:
         throw new IllegalArgumentException();
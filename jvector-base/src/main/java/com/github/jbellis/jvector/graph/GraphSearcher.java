@@ -47,6 +47,14 @@ public class GraphSearcher<T> {
 
   private BitSet visited;
 
+  // how many candidates to expand per round, and space to hold them
+  private final int beamWidth;
+  private final int[] beam;
+  // how many of the best remaining candidates to prefetch each round, and space to hold them
+  // along with the beam
+  private final int prefetchCount;
+  private final int[] prefetchNodes;
+
   /**
    * Creates a new graph searcher.
    *
@@ -55,9 +63,26 @@ public class GraphSearcher<T> {
   GraphSearcher(
       GraphIndex.View<T> view,
       BitSet visited) {
+    this(view, visited, 1, 0);
+  }
+
+  /**
+   * @param beamWidth the number of candidates to expand in each round
+   * @param prefetchCount the number of top remaining candidates to pass to {@link GraphIndex.View#prefetch}
+   *                      each round
+   */
+  GraphSearcher(
+      GraphIndex.View<T> view,
+      BitSet visited,
+      int beamWidth,
+      int prefetchCount) {
     this.view = view;
     this.candidates = new NeighborQueue(100, true);
     this.visited = visited;
+    this.beamWidth = beamWidth;
+    this.beam = new int[beamWidth];
+    this.prefetchCount = prefetchCount;
+    this.prefetchNodes = new int[prefetchCount + beamWidth];
   }
 
   /**
@@ -71,6 +96,7 @@ public class GraphSearcher<T> {
         case BYTE:
           return similarityFunction.compare((byte[]) targetVector, (byte[]) vectors.vectorValue(i));
         case FLOAT32:
+        case FLOAT16: // presented as float[]
           return similarityFunction.compare((float[]) targetVector, (float[]) vectors.vectorValue(i));
         default:
           throw new RuntimeException("Unsupported vector encoding: " + vectorEncoding);
@@ -83,6 +109,8 @@ public class GraphSearcher<T> {
   public static class Builder<T> {
     private final GraphIndex.View<T> graph;
     private boolean concurrent;
+    private int beamWidth = 1;
+    private int prefetchCount;
 
     public Builder(GraphIndex.View<T> graph) {
       this.graph = graph;
@@ -93,9 +121,39 @@ public class GraphSearcher<T> {
       return this;
     }
 
+    /**
+     * Expand the `width` best candidates in each round instead of just the best one, as in
+     * DiskANN's beam search.  The view is asked to {@link GraphIndex.View#prefetch prefetch} the
+     * whole beam at once, so a view that can load neighbor lists concurrently (an OnDiskGraphIndex
+     * with a prefetch executor) reads the W lists in one I/O round trip instead of W.  Wider beams
+     * visit somewhat more nodes in exchange for fewer rounds; see {@link SearchResult#getIoRounds}.
+     * Other views still read the W lists one after another, so for them a wider beam just visits
+     * more nodes.
+     */
+    public Builder<T> withBeamWidth(int width) {
+      if (width < 1) {
+        throw new IllegalArgumentException("Beam width must be positive: " + width);
+      }
+      this.beamWidth = width;
+      return this;
+    }
+
+    /**
+     * While expanding each node, ask the view to prefetch the `count` best remaining candidates,
+     * so that a disk-backed view can load them while the current node's neighbors are scored.
+     * Only useful with views that implement {@link GraphIndex.View#prefetch}.
+     */
+    public Builder<T> withPrefetch(int count) {
+      if (count < 0) {
+        throw new IllegalArgumentException("Prefetch count must be non-negative: " + count);
+      }
+      this.prefetchCount = count;
+      return this;
+    }
+
     public GraphSearcher<T> build() {
       BitSet bits = concurrent ? new GrowableBitSet(graph.size()) : new SparseFixedBitSet(graph.size());
-      return new GraphSearcher<>(graph, bits);
+      return new GraphSearcher<>(graph, bits, beamWidth, prefetchCount);
     }
   }
 
@@ -128,12 +186,14 @@ public class GraphSearcher<T> {
     }
 
     if (ep < 0) {
-      return new SearchResult(new SearchResult.NodeScore[0], 0);
+      return new SearchResult(new SearchResult.NodeScore[0], 0, 0);
     }
 
     prepareScratchState(view.size());
     var resultsQueue = new NeighborQueue(topK, false);
-    Map<Integer, T> vectorsEncountered = !scoreFunction.isExact() ? new java.util.HashMap<>() : null;
+    Map<Integer, T> vectorsEncountered = scoreFunction.isExact() || reRanker instanceof NeighborSimilarity.DirectReRanker
+                                         ? null
+                                         : new java.util.HashMap<>();
     int numVisited = 0;
 
     float score = scoreFunction.similarityTo(ep);
@@ -150,32 +210,46 @@ public class GraphSearcher<T> {
     if (resultsQueue.size() >= topK) {
       minAcceptedSimilarity = resultsQueue.topScore();
     }
+    long ioRoundsBefore = view.getIoRounds();
     while (candidates.size() > 0 && !resultsQueue.incomplete()) {
-      // get the best candidate (closest or best scoring)
-      float topCandidateSimilarity = candidates.topScore();
-      if (topCandidateSimilarity < minAcceptedSimilarity) {
+      // get the best candidates (closest or best scoring)
+      int beamSize = 0;
+      while (beamSize < beamWidth && candidates.size() > 0 && candidates.topScore() >= minAcceptedSimilarity) {
+        beam[beamSize++] = candidates.pop();
+      }
+      if (beamSize == 0) {
         break;
       }
 
-      // TODO should we merge getVector and getNeighborsIterator into a single method to
-      // be more aligned with how it works under the hood?
-      int topCandidateNode = candidates.pop();
-      if (!scoreFunction.isExact()) {
-        vectorsEncountered.put(topCandidateNode, view.getVector(topCandidateNode));
+      // ask for the beam and the lookahead in one batch, so that a disk-backed view can read
+      // them concurrently, and the lookahead while we score the beam's neighbors
+      if (beamSize > 1 || prefetchCount > 0) {
+        int toPrefetch = candidates.topNodes(prefetchNodes, prefetchCount);
+        System.arraycopy(beam, 0, prefetchNodes, toPrefetch, beamSize);
+        view.prefetch(prefetchNodes, toPrefetch + beamSize);
       }
-      for (var it = view.getNeighborsIterator(topCandidateNode); it.hasNext(); ) {
-        int friendOrd = it.nextInt();
-        if (visited.getAndSet(friendOrd)) {
-          continue;
+
+      for (int b = 0; b < beamSize; b++) {
+        int topCandidateNode = beam[b];
+        // TODO should we merge getVector and getNeighborsIterator into a single method to
+        // be more aligned with how it works under the hood?
+        if (vectorsEncountered != null) {
+          vectorsEncountered.put(topCandidateNode, view.getVector(topCandidateNode));
         }
-        numVisited++;
-
-        float friendSimilarity = scoreFunction.similarityTo(friendOrd);
-        if (friendSimilarity >= minAcceptedSimilarity) {
-          candidates.add(friendOrd, friendSimilarity);
-          if (acceptOrds == null || acceptOrds.get(friendOrd)) {
-            if (resultsQueue.insertWithReplacement(friendOrd, friendSimilarity) && resultsQueue.size() >= topK) {
-              minAcceptedSimilarity = resultsQueue.topScore();
+        for (var it = view.getNeighborsIterator(topCandidateNode); it.hasNext(); ) {
+          int friendOrd = it.nextInt();
+          if (visited.getAndSet(friendOrd)) {
+            continue;
+          }
+          numVisited++;
+
+          float friendSimilarity = scoreFunction.similarityTo(friendOrd);
+          if (friendSimilarity >= minAcceptedSimilarity) {
+            candidates.add(friendOrd, friendSimilarity);
+            if (acceptOrds == null || acceptOrds.get(friendOrd)) {
+              if (resultsQueue.insertWithReplacement(friendOrd, friendSimilarity) && resultsQueue.size() >= topK) {
+                minAcceptedSimilarity = resultsQueue.topScore();
+              }
             }
           }
         }
@@ -196,7 +270,7 @@ public class GraphSearcher<T> {
       Arrays.sort(nodes, 0, resultsQueue.size(), Comparator.comparingDouble((SearchResult.NodeScore nodeScore) -> nodeScore.score).reversed());
     }
 
-    return new SearchResult(nodes, numVisited);
+    return new SearchResult(nodes, numVisited, (int) (view.getIoRounds() - ioRoundsBefore));
   }
 
   private void prepareScratchState(int capacity) {
@@ -61,6 +61,9 @@ public class NeighborQueue {
   // Whether the search stopped early because it reached the visited nodes limit
   private boolean incomplete;
 
+  // heap slots that may hold the next-best element, used by topNodes
+  private int[] frontier = new int[0];
+
   public NeighborQueue(int initialSize, boolean maxHeap) {
     this.heap = new LongHeap(initialSize);
     this.order = maxHeap ? Order.MAX_HEAP : Order.MIN_HEAP;
@@ -155,6 +158,40 @@ public class NeighborQueue {
     return ns;
   }
 
+  /**
+   * Copies the ids of the (up to) `n` top elements into `dest`, best first, without removing them.
+   *
+   * @return the number of ids copied
+   */
+  public int topNodes(int[] dest, int n) {
+    n = Math.min(n, size());
+    if (n == 0) {
+      return 0;
+    }
+    // the next-best element is always a child of one already copied, so walk the heap
+    // best-first from the root; the frontier never holds more than n + 1 slots
+    if (frontier.length < n + 1) {
+      frontier = new int[n + 1];
+    }
+    frontier[0] = 1;
+    int frontierSize = 1;
+    for (int copied = 0; copied < n; copied++) {
+      int best = 0;
+      for (int i = 1; i < frontierSize; i++) {
+        if (heap.get(frontier[i]) < heap.get(frontier[best])) {
+          best = i;
+        }
+      }
+      int slot = frontier[best];
+      dest[copied] = decodeNodeId(heap.get(slot));
+      frontier[best] = frontier[--frontierSize];
+      for (int child = 2 * slot; child <= 2 * slot + 1 && child <= size(); child++) {
+        frontier[frontierSize++] = child;
+      }
+    }
+    return n;
+  }
+
   /** Returns the top element's node id. */
   public int topNode() {
     return decodeNodeId(heap.top());
@@ -64,4 +64,18 @@ public interface NeighborSimilarity {
   interface ReRanker<T>  {
     float similarityTo(int node2, Map<Integer, T> vectors);
   }
+
+  /**
+   * A ReRanker that reads the exact vectors itself, typically in place from a memory-mapped
+   * index.  GraphSearcher does not collect the vectors of expanded nodes for a DirectReRanker,
+   * so only the vectors of the final results are ever touched.
+   */
+  interface DirectReRanker<T> extends ReRanker<T> {
+    float similarityTo(int node2);
+
+    @Override
+    default float similarityTo(int node2, Map<Integer, T> vectors) {
+      return similarityTo(node2);
+    }
+  }
 }
@@ -22,10 +22,16 @@ package com.github.jbellis.jvector.graph;
 public final class SearchResult {
     private final NodeScore[] nodes;
     private final int visitedCount;
+    private final int ioRounds;
 
     public SearchResult(NodeScore[] nodes, int visitedCount) {
+        this(nodes, visitedCount, 0);
+    }
+
+    public SearchResult(NodeScore[] nodes, int visitedCount, int ioRounds) {
         this.nodes = nodes;
         this.visitedCount = visitedCount;
+        this.ioRounds = ioRounds;
     }
 
     /**
@@ -42,6 +48,15 @@ public final class SearchResult {
         return visitedCount;
     }
 
+    /**
+     * @return the number of dependent I/O round trips the search made to load neighbor lists, as
+     * counted by the view: each synchronous read is one, and each batch the view loaded
+     * concurrently is one.  0 for graphs that are entirely in memory.
+     */
+    public int getIoRounds() {
+        return ioRounds;
+    }
+
     public static final class NodeScore {
         public final int node;
         public final float score;
@@ -0,0 +1,104 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.pq;
+
+import com.github.jbellis.jvector.disk.RandomAccessReader;
+import com.github.jbellis.jvector.graph.NeighborSimilarity;
+import com.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import com.github.jbellis.jvector.vector.VectorUtil;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The codes of a set of vectors encoded with {@link BinaryQuantization}, scored by Hamming distance.
+ */
+public class BinaryCompressedVectors
+{
+    private final BinaryQuantization bq;
+    private final List<long[]> compressedVectors;
+
+    public BinaryCompressedVectors(BinaryQuantization bq, List<long[]> compressedVectors)
+    {
+        this.bq = bq;
+        this.compressedVectors = compressedVectors;
+    }
+
+    public void write(DataOutput out) throws IOException
+    {
+        bq.write(out);
+
+        out.writeInt(compressedVectors.size());
+        out.writeInt(bq.getCodeSize());
+        for (var v : compressedVectors) {
+            for (long bits : v) {
+                out.writeLong(bits);
+            }
+        }
+    }
+
+    public static BinaryCompressedVectors load(RandomAccessReader in, long offset) throws IOException
+    {
+        in.seek(offset);
+
+        var bq = BinaryQuantization.load(in);
+
+        int size = in.readInt();
+        var compressedVectors = new ArrayList<long[]>(size);
+        int codeSize = in.readInt();
+        for (int i = 0; i < size; i++)
+        {
+            long[] vector = new long[codeSize];
+            for (int j = 0; j < codeSize; j++) {
+                vector[j] = in.readLong();
+            }
+            compressedVectors.add(vector);
+        }
+
+        return new BinaryCompressedVectors(bq, compressedVectors);
+    }
+
+    /**
+     * @return a score function for `query` that estimates the similarity from the Hamming distance
+     * between the codes; see {@link BinaryQuantization#similarities} for how rough the estimate is.
+     * Searches with it should re-rank their results with the full vectors.
+     */
+    public NeighborSimilarity.ApproximateScoreFunction approximateScoreFunctionFor(float[] query, VectorSimilarityFunction similarityFunction)
+    {
+        var encoded = bq.encode(query);
+        var similarities = bq.similarities(similarityFunction);
+        return node -> similarities[VectorUtil.hammingDistance(encoded, compressedVectors.get(node))];
+    }
+
+    public BinaryQuantization getBinaryQuantization()
+    {
+        return bq;
+    }
+
+    /** return the compressed vector of the given ordinal */
+    public long[] get(int ordinal)
+    {
+        return compressedVectors.get(ordinal);
+    }
+
+    public int size()
+    {
+        return compressedVectors.size();
+    }
+}
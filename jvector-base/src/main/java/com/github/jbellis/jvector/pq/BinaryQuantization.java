@@ -0,0 +1,159 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.pq;
+
+import com.github.jbellis.jvector.disk.Io;
+import com.github.jbellis.jvector.disk.RandomAccessReader;
+import com.github.jbellis.jvector.graph.RandomAccessVectorValues;
+import com.github.jbellis.jvector.vector.VectorSimilarityFunction;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Quantizes each dimension of a vector to one bit, its sign (after optional global centering),
+ * packed 64 to a long.  The fraction of bits where two codes differ estimates the angle between
+ * the vectors, so the Hamming distance between codes is a very cheap first-stage similarity for
+ * high-dimensional, roughly normalized vectors, whose candidates are then re-ranked with the
+ * full vectors.
+ */
+public class BinaryQuantization {
+    private final int dimension;
+    private final float[] globalCentroid;
+
+    /**
+     * @param vectors the points to quantize, used only to compute the centroid
+     * @param globallyCenter whether to center the vectors globally before quantization
+     */
+    public BinaryQuantization(List<float[]> vectors, boolean globallyCenter) {
+        this(vectors.get(0).length, globallyCenter ? KMeansPlusPlusClusterer.centroidOf(vectors) : null);
+    }
+
+    /**
+     * Computes the centroid, if `globallyCenter`, from a random sample of
+     * {@link ProductQuantization#DEFAULT_TRAINING_SAMPLE_SIZE} vectors from `ravv`.
+     */
+    public BinaryQuantization(RandomAccessVectorValues<float[]> ravv, boolean globallyCenter) {
+        this(ravv.dimension(),
+             globallyCenter ? KMeansPlusPlusClusterer.centroidOf(ProductQuantization.sampleVectors(ravv, ProductQuantization.DEFAULT_TRAINING_SAMPLE_SIZE)) : null);
+    }
+
+    /**
+     * @param globalCentroid the centroid to subtract before quantization, or null
+     */
+    public BinaryQuantization(int dimension, float[] globalCentroid) {
+        if (globalCentroid != null && globalCentroid.length != dimension) {
+            throw new IllegalArgumentException(String.format("Centroid dimension %d does not match %d", globalCentroid.length, dimension));
+        }
+        this.dimension = dimension;
+        this.globalCentroid = globalCentroid;
+    }
+
+    /**
+     * Encodes the given vectors in parallel.
+     */
+    public List<long[]> encodeAll(List<float[]> vectors) {
+        return vectors.stream().parallel().map(this::encode).collect(Collectors.toList());
+    }
+
+    /**
+     * @return the sign bits of `vector`, dimension i in bit i % 64 of long i / 64; a set bit
+     * means the (centered) component is positive
+     */
+    public long[] encode(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException(String.format("Vector dimension %d does not match %d", vector.length, dimension));
+        }
+        var encoded = new long[getCodeSize()];
+        for (int i = 0; i < dimension; i++) {
+            float x = globalCentroid == null ? vector[i] : vector[i] - globalCentroid[i];
+            if (x > 0) {
+                encoded[i >> 6] |= 1L << i;
+            }
+        }
+        return encoded;
+    }
+
+    /**
+     * @return the approximate similarity of two vectors whose codes differ in `hammingDistance`
+     * bits, for each distance from 0 to the dimension.  The angle between the vectors is estimated
+     * as pi * hammingDistance / dimension, and the vectors are assumed to be normalized, so this
+     * is only a ranking, not an accurate similarity, for DOT_PRODUCT and EUCLIDEAN.
+     */
+    public float[] similarities(VectorSimilarityFunction similarityFunction) {
+        var similarities = new float[dimension + 1];
+        for (int distance = 0; distance <= dimension; distance++) {
+            float cosine = (float) Math.cos(Math.PI * distance / dimension);
+            similarities[distance] = similarityFunction == VectorSimilarityFunction.EUCLIDEAN
+                                     ? 1 / (1 + 2 * (1 - cosine))
+                                     : (1 + cosine) / 2;
+        }
+        return similarities;
+    }
+
+    /**
+     * @return The dimension of the vectors being quantized.
+     */
+    public int getOriginalDimension() {
+        return dimension;
+    }
+
+    /**
+     * @return how many longs each vector is compressed to
+     */
+    public int getCodeSize() {
+        return (dimension + 63) / 64;
+    }
+
+    public void write(DataOutput out) throws IOException
+    {
+        if (globalCentroid == null) {
+            out.writeInt(0);
+        } else {
+            out.writeInt(globalCentroid.length);
+            Io.writeFloats(out, globalCentroid);
+        }
+        out.writeInt(dimension);
+    }
+
+    public static BinaryQuantization load(RandomAccessReader in) throws IOException {
+        int globalCentroidLength = in.readInt();
+        float[] globalCentroid = null;
+        if (globalCentroidLength > 0) {
+            globalCentroid = new float[globalCentroidLength];
+            in.readFully(globalCentroid);
+        }
+        int dimension = in.readInt();
+        return new BinaryQuantization(dimension, globalCentroid);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BinaryQuantization that = (BinaryQuantization) o;
+        return dimension == that.dimension && Arrays.equals(globalCentroid, that.globalCentroid);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * dimension + Arrays.hashCode(globalCentroid);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.pq;
+
+import com.github.jbellis.jvector.disk.RandomAccessReader;
+import com.github.jbellis.jvector.graph.NeighborSimilarity;
+import com.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import com.github.jbellis.jvector.vector.VectorUtil;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The codes of a set of vectors encoded with {@link FastScanProductQuantization}, stored
+ * transposed in blocks of 16 vectors: for each pair of subspaces, the 16 vectors' bytes are
+ * contiguous, so one 128-bit load fetches a pair of codes for the whole block.
+ * (This is the layout used by FAISS's fast-scan.)
+ */
+public class FastScanCodes
+{
+    static final int BLOCK_SIZE = 16;
+
+    private final FastScanProductQuantization pq;
+    private final int size;
+    private final int pairs;
+    private final byte[] blocks;
+
+    /**
+     * @param encoded the codes from {@link FastScanProductQuantization#encode}, in ordinal order
+     */
+    public FastScanCodes(FastScanProductQuantization pq, List<byte[]> encoded)
+    {
+        this(pq, encoded.size(), new byte[blockCount(encoded.size()) * BLOCK_SIZE * pq.getCodeSize()]);
+        for (int i = 0; i < size; i++) {
+            var code = encoded.get(i);
+            for (int p = 0; p < pairs; p++) {
+                blocks[offsetOf(i, p)] = code[p];
+            }
+        }
+    }
+
+    private FastScanCodes(FastScanProductQuantization pq, int size, byte[] blocks)
+    {
+        this.pq = pq;
+        this.size = size;
+        this.pairs = pq.getCodeSize();
+        this.blocks = blocks;
+    }
+
+    private static int blockCount(int size) {
+        return (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    private int offsetOf(int ordinal, int pair) {
+        return (ordinal / BLOCK_SIZE) * BLOCK_SIZE * pairs + pair * BLOCK_SIZE + ordinal % BLOCK_SIZE;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public FastScanProductQuantization getProductQuantization() {
+        return pq;
+    }
+
+    /**
+     * Computes the approximate similarity of every vector to the query of `table`, 16 at a time.
+     * @param scores receives the similarity of each ordinal; must have room for {@link #size()} of them
+     */
+    public void scoreAll(FastScanProductQuantization.LookupTable table, float[] scores)
+    {
+        if (scores.length < size) {
+            throw new IllegalArgumentException(String.format("Need room for %d scores, found %d", size, scores.length));
+        }
+        var sums = new int[BLOCK_SIZE];
+        for (int block = 0; block < blockCount(size); block++) {
+            VectorUtil.fastScanBlock(blocks, block * BLOCK_SIZE * pairs, table.table, pairs, sums);
+            int start = block * BLOCK_SIZE;
+            int n = Math.min(BLOCK_SIZE, size - start);
+            for (int j = 0; j < n; j++) {
+                scores[start + j] = table.similarity(sums[j]);
+            }
+        }
+    }
+
+    /**
+     * @return a score function for graph searches, which score one node at a time with scalar
+     * lookups; use {@link #scoreAll} when scoring many candidates
+     */
+    public NeighborSimilarity.ApproximateScoreFunction approximateScoreFunctionFor(float[] query, VectorSimilarityFunction similarityFunction)
+    {
+        var table = pq.lookupTable(query, similarityFunction);
+        var code = new byte[pairs];
+        return node -> {
+            for (int p = 0; p < pairs; p++) {
+                code[p] = blocks[offsetOf(node, p)];
+            }
+            return table.similarity(code);
+        };
+    }
+
+    /** @return the packed codes of the given ordinal */
+    public byte[] get(int ordinal)
+    {
+        var code = new byte[pairs];
+        for (int p = 0; p < pairs; p++) {
+            code[p] = blocks[offsetOf(ordinal, p)];
+        }
+        return code;
+    }
+
+    public void write(DataOutput out) throws IOException
+    {
+        pq.write(out);
+        out.writeInt(size);
+        out.write(blocks);
+    }
+
+    public static FastScanCodes load(RandomAccessReader in, long offset) throws IOException
+    {
+        in.seek(offset);
+        var pq = FastScanProductQuantization.load(in);
+        int size = in.readInt();
+        var blocks = new byte[blockCount(size) * BLOCK_SIZE * pq.getCodeSize()];
+        in.readFully(blocks);
+        return new FastScanCodes(pq, size, blocks);
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.pq;
+
+import com.github.jbellis.jvector.disk.Io;
+import com.github.jbellis.jvector.disk.RandomAccessReader;
+import com.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import com.github.jbellis.jvector.vector.VectorUtil;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * A 4-bit variant of {@link ProductQuantization}: 16 centroids per subspace, with the codes of
+ * two subspaces packed into each byte (the even subspace in the low nibble).  Codes are half the
+ * size of ProductQuantization's for the same number of subspaces, and are much less accurate,
+ * but a 16-entry lookup table fits in a SIMD register, so {@link FastScanCodes} can score
+ * 16 vectors at a time with byte shuffles.  This makes it suitable as a cheap first pass
+ * whose candidates are then re-ranked.
+ */
+public class FastScanProductQuantization {
+    static final int CLUSTERS = 16;
+    private static final int K_MEANS_ITERATIONS = 15;
+    // lookups are summed in 16 bits, 255 at most per subspace
+    private static final int MAX_SUBSPACES = 256;
+
+    private final float[][][] codebooks;
+    private final int M;
+    private final int originalDimension;
+    private final float[] globalCentroid;
+    private final int[][] subvectorSizesAndOffsets;
+
+    /**
+     * @param vectors the points to quantize
+     * @param M number of subspaces, at most 256
+     * @param globallyCenter whether to center the vectors globally before quantization
+     */
+    public FastScanProductQuantization(List<float[]> vectors, int M, boolean globallyCenter) {
+        if (M < 1 || M > MAX_SUBSPACES) {
+            throw new IllegalArgumentException("Subspace count must be between 1 and " + MAX_SUBSPACES + ": " + M);
+        }
+        this.M = M;
+        originalDimension = vectors.get(0).length;
+        subvectorSizesAndOffsets = ProductQuantization.getSubvectorSizesAndOffsets(originalDimension, M);
+        if (globallyCenter) {
+            globalCentroid = KMeansPlusPlusClusterer.centroidOf(vectors);
+            vectors = vectors.stream().parallel().map(v -> VectorUtil.sub(v, globalCentroid)).collect(Collectors.toList());
+        } else {
+            globalCentroid = null;
+        }
+        codebooks = ProductQuantization.createCodebooks(vectors, M, subvectorSizesAndOffsets, CLUSTERS);
+    }
+
+    public FastScanProductQuantization(float[][][] codebooks, float[] globalCentroid) {
+        if (codebooks.length > MAX_SUBSPACES) {
+            throw new IllegalArgumentException("Subspace count must be at most " + MAX_SUBSPACES + ": " + codebooks.length);
+        }
+        this.codebooks = codebooks;
+        this.globalCentroid = globalCentroid;
+        this.M = codebooks.length;
+        this.subvectorSizesAndOffsets = new int[M][];
+        int offset = 0;
+        for (int i = 0; i < M; i++) {
+            int size = codebooks[i][0].length;
+            this.subvectorSizesAndOffsets[i] = new int[]{size, offset};
+            offset += size;
+        }
+        this.originalDimension = offset;
+    }
+
+    /**
+     * Encodes the given vectors in parallel.
+     */
+    public List<byte[]> encodeAll(List<float[]> vectors) {
+        return vectors.stream().parallel().map(this::encode).collect(Collectors.toList());
+    }
+
+    /**
+     * @return the packed codes of `vector`: {@link #getCodeSize()} bytes, two subspaces per byte
+     */
+    public byte[] encode(float[] vector) {
+        if (globalCentroid != null) {
+            vector = VectorUtil.sub(vector, globalCentroid);
+        }
+
+        byte[] encoded = new byte[getCodeSize()];
+        for (int m = 0; m < M; m++) {
+            int code = ProductQuantization.closetCentroidIndex(ProductQuantization.getSubVector(vector, m, subvectorSizesAndOffsets), codebooks[m]);
+            encoded[m / 2] |= (byte) (m % 2 == 0 ? code : code << 4);
+        }
+        return encoded;
+    }
+
+    /** @return the centroid index of subspace `m` in the packed codes */
+    static int codeOf(byte[] encoded, int m) {
+        int packed = encoded[m / 2];
+        return m % 2 == 0 ? packed & 0x0f : (packed >> 4) & 0x0f;
+    }
+
+    /**
+     * Decodes the packed codes to their approximate original vector.
+     */
+    public void decode(byte[] encoded, float[] target) {
+        for (int m = 0; m < M; m++) {
+            float[] centroidSubvector = codebooks[m][codeOf(encoded, m)];
+            System.arraycopy(centroidSubvector, 0, target, subvectorSizesAndOffsets[m][1], subvectorSizesAndOffsets[m][0]);
+        }
+
+        if (globalCentroid != null) {
+            VectorUtil.addInPlace(target, globalCentroid);
+        }
+    }
+
+    /**
+     * @return a table of the contribution of each centroid to the similarity of `query` and a
+     * quantized vector, quantized to unsigned bytes
+     * @throws IllegalArgumentException for COSINE, which does not decompose by subspace;
+     * normalize the vectors and use DOT_PRODUCT instead
+     */
+    public LookupTable lookupTable(float[] query, VectorSimilarityFunction similarityFunction) {
+        if (similarityFunction == VectorSimilarityFunction.COSINE) {
+            throw new IllegalArgumentException("COSINE is not supported; normalize the vectors and use DOT_PRODUCT");
+        }
+        boolean dot = similarityFunction == VectorSimilarityFunction.DOT_PRODUCT;
+
+        // the part of the score that does not depend on the code
+        float bias = 0;
+        if (globalCentroid != null) {
+            if (dot) {
+                bias = VectorUtil.dotProduct(query, globalCentroid);
+            } else {
+                query = VectorUtil.sub(query, globalCentroid);
+            }
+        }
+
+        // exact partial scores, and the range of each subspace's
+        float[][] partials = new float[M][CLUSTERS];
+        float[] mins = new float[M];
+        float maxRange = 0;
+        for (int m = 0; m < M; m++) {
+            var subquery = ProductQuantization.getSubVector(query, m, subvectorSizesAndOffsets);
+            float min = Float.MAX_VALUE;
+            float max = -Float.MAX_VALUE;
+            for (int c = 0; c < CLUSTERS; c++) {
+                float partial = dot ? VectorUtil.dotProduct(subquery, codebooks[m][c]) : VectorUtil.squareDistance(subquery, codebooks[m][c]);
+                partials[m][c] = partial;
+                min = Math.min(min, partial);
+                max = Math.max(max, partial);
+            }
+            mins[m] = min;
+            bias += min;
+            maxRange = Math.max(maxRange, max - min);
+        }
+
+        // one scale for all subspaces, so that the quantized partials can simply be added up
+        float scale = maxRange > 0 ? 255 / maxRange : 1;
+        var table = new byte[32 * ((M + 1) / 2)];
+        for (int m = 0; m < M; m++) {
+            for (int c = 0; c < CLUSTERS; c++) {
+                table[CLUSTERS * m + c] = (byte) Math.min(255, Math.round((partials[m][c] - mins[m]) * scale));
+            }
+        }
+        return new LookupTable(table, (M + 1) / 2, bias, 1 / scale, similarityFunction);
+    }
+
+    /**
+     * A query's quantized lookup table, laid out for {@link VectorUtil#fastScanBlock}: 16
+     * unsigned bytes per subspace, padded with zeros to a whole number of subspace pairs.
+     */
+    public static class LookupTable {
+        final byte[] table;
+        final int pairs;
+        private final float bias;
+        private final float unit;
+        private final VectorSimilarityFunction similarityFunction;
+
+        LookupTable(byte[] table, int pairs, float bias, float unit, VectorSimilarityFunction similarityFunction) {
+            this.table = table;
+            this.pairs = pairs;
+            this.bias = bias;
+            this.unit = unit;
+            this.similarityFunction = similarityFunction;
+        }
+
+        /** @return the approximate similarity for the given sum of quantized lookups */
+        public float similarity(int quantizedSum) {
+            float value = bias + quantizedSum * unit;
+            return similarityFunction == VectorSimilarityFunction.DOT_PRODUCT
+                   ? (1 + value) / 2
+                   : 1 / (1 + value);
+        }
+
+        /** @return the approximate similarity of the vector with the given packed codes, one lookup at a time */
+        public float similarity(byte[] encoded) {
+            int sum = 0;
+            for (int p = 0; p < pairs; p++) {
+                sum += Byte.toUnsignedInt(table[32 * p + (encoded[p] & 0x0f)]);
+                sum += Byte.toUnsignedInt(table[32 * p + 16 + ((encoded[p] >> 4) & 0x0f)]);
+            }
+            return similarity(sum);
+        }
+    }
+
+    /**
+     * @return The dimension of the vectors being quantized.
+     */
+    public int getOriginalDimension() {
+        return originalDimension;
+    }
+
+    public int getSubspaceCount() {
+        return M;
+    }
+
+    /**
+     * @return how many bytes each vector is compressed to
+     */
+    public int getCodeSize() {
+        return (M + 1) / 2;
+    }
+
+    public void write(DataOutput out) throws IOException
+    {
+        if (globalCentroid == null) {
+            out.writeInt(0);
+        } else {
+            out.writeInt(globalCentroid.length);
+            Io.writeFloats(out, globalCentroid);
+        }
+
+        out.writeInt(M);
+        for (var a : subvectorSizesAndOffsets) {
+            out.writeInt(a[0]);
+        }
+        for (var codebook : codebooks) {
+            for (var centroid : codebook) {
+                Io.writeFloats(out, centroid);
+            }
+        }
+    }
+
+    public static FastScanProductQuantization load(RandomAccessReader in) throws IOException {
+        int globalCentroidLength = in.readInt();
+        float[] globalCentroid = null;
+        if (globalCentroidLength > 0) {
+            globalCentroid = new float[globalCentroidLength];
+            in.readFully(globalCentroid);
+        }
+
+        int M = in.readInt();
+        int[] sizes = new int[M];
+        for (int i = 0; i < M; i++) {
+            sizes[i] = in.readInt();
+        }
+
+        float[][][] codebooks = new float[M][CLUSTERS][];
+        for (int m = 0; m < M; m++) {
+            for (int i = 0; i < CLUSTERS; i++) {
+                codebooks[m][i] = new float[sizes[m]];
+                in.readFully(codebooks[m][i]);
+            }
+        }
+        return new FastScanProductQuantization(codebooks, globalCentroid);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FastScanProductQuantization that = (FastScanProductQuantization) o;
+        return M == that.M
+               && originalDimension == that.originalDimension
+               && Arrays.deepEquals(codebooks, that.codebooks)
+               && Arrays.equals(globalCentroid, that.globalCentroid);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Objects.hash(M, originalDimension);
+        result = 31 * result + Arrays.deepHashCode(codebooks);
+        result = 31 * result + Arrays.hashCode(globalCentroid);
+        return result;
+    }
+}
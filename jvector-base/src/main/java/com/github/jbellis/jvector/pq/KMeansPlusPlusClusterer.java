@@ -22,53 +22,190 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
- * A KMeans++ implementation for float vectors.  Optimizes to use SIMD vector
- * instructions, and to use the triangle inequality to skip distance calculations.
- * Roughly 3x faster than using the apache commons math implementation (with
- * conversions to double[]).
+ * A KMeans++ implementation for float vectors, using squared Euclidean distance.
+ * <p>
+ * Points and centroids are stored contiguously, row by row, in flat float arrays.  A transposed
+ * copy of the centroids lets the distances from a point to every centroid be computed in one
+ * SIMD pass ({@link VectorUtil#squareDistances}), which matters for the short subvectors of PQ.
+ * Assigning points to clusters and accumulating the new centroids run in parallel chunks of
+ * points, without allocating per point.
  */
 public class KMeansPlusPlusClusterer {
+    // points per parallel task
+    private static final int CHUNK_SIZE = 1024;
+    // k-means|| sampling rounds, and the expected number of candidates sampled per round per cluster
+    // (the defaults of Spark's MLlib, which are enough for initializations as good as k-means++)
+    private static final int PARALLEL_INIT_ROUNDS = 2;
+    private static final int OVERSAMPLING_FACTOR = 2;
+    // the initial centroids are chosen from a random sample of this many points per cluster, which
+    // is plenty to spread them out, instead of from every point
+    private static final int SEEDING_SAMPLE_PER_CLUSTER = 64;
+
+    /**
+     * How the initial centroids are chosen
+     */
+    public enum Initialization {
+        /**
+         * k-means++: each centroid is chosen with probability proportional to the squared distance to the
+         * nearest centroid already chosen, which takes k passes over the points.
+         */
+        KMEANS_PLUS_PLUS,
+        /**
+         * k-means|| (Bahmani et al., "Scalable K-Means++"): a few passes each sample many candidates
+         * independently, in parallel, and the candidates, weighted by the number of points closest to
+         * each, are then reduced to k centroids with k-means++.
+         */
+        KMEANS_PARALLEL
+    }
+
     private final int k;
-    private final BiFunction<float[], float[], Float> distanceFunction;
+    private final int dimension;
+    private final int n;
     private final Random random;
-    private final List<float[]>[] clusterPoints;
-    private final float[][] centroidDistances;
-    private final float[][] points;
+    private final float[] points; // n x dimension
+    private final float[] centroids; // k x dimension
+    private final float[] centroidColumns; // dimension x k, the transpose of centroids
     private final int[] assignments;
-    private final float[][] centroids;
-
+    // whether `assignments` are those of the current centroids; computed when clustering needs them
+    private boolean assigned;
+    // for updateCentroids, the sums of the points assigned to each centroid followed by their
+    // counts, accumulated by each worker over a fixed range of chunks (so that the result does
+    // not depend on scheduling) and then in total; allocated by the first iteration and reused
+    private double[][] workerSums;
+    private double[] totalSums;
 
     /**
      * Constructs a KMeansPlusPlusFloatClusterer with the specified number of clusters,
-     * maximum iterations, and distance function.
+     * choosing the initial centroids with KMeans++.
      *
+     * @param points the points to cluster; they are copied.
      * @param k number of clusters.
-     * @param distanceFunction a function to compute the distance between two points.
      */
+    public KMeansPlusPlusClusterer(float[][] points, int k) {
+        this(flatten(points), points[0].length, k);
+    }
+
+    /**
+     * @param distanceFunction ignored; clustering always uses squared Euclidean distance, with
+     *                         {@link VectorUtil#squareDistances}
+     * @deprecated use {@link #KMeansPlusPlusClusterer(float[][], int)}
+     */
+    @Deprecated
     public KMeansPlusPlusClusterer(float[][] points, int k, BiFunction<float[], float[], Float> distanceFunction) {
+        this(points, k);
+    }
+
+    /**
+     * Constructs a KMeansPlusPlusFloatClusterer with the specified number of clusters,
+     * choosing the initial centroids with KMeans++.
+     *
+     * @param points the points to cluster, one after another; the array is not copied or modified.
+     * @param dimension the dimension of each point.
+     * @param k number of clusters.
+     */
+    public KMeansPlusPlusClusterer(float[] points, int dimension, int k) {
+        this(points, dimension, k, Initialization.KMEANS_PLUS_PLUS, new Random());
+    }
+
+    /**
+     * Constructs a KMeansPlusPlusFloatClusterer with the specified number of clusters.
+     *
+     * @param points the points to cluster, one after another; the array is not copied or modified.
+     * @param dimension the dimension of each point.
+     * @param k number of clusters.
+     * @param initialization how to choose the initial centroids.
+     * @param random the source of all randomness, so that a seeded Random gives reproducible clusters.
+     */
+    public KMeansPlusPlusClusterer(float[] points, int dimension, int k, Initialization initialization, Random random) {
+        this(points, dimension, k, null, initialization, random);
+    }
+
+    /**
+     * Constructs a KMeansPlusPlusFloatClusterer that starts from the given centroids instead of
+     * choosing them with KMeans++, e.g. to refine a previous clustering of points that have moved.
+     *
+     * @param points the points to cluster; they are copied.
+     * @param centroids the initial centroids; they are copied.
+     */
+    public KMeansPlusPlusClusterer(float[][] points, float[][] centroids) {
+        this(flatten(points), points[0].length, flatten(centroids));
+    }
+
+    /**
+     * @param distanceFunction ignored; clustering always uses squared Euclidean distance, with
+     *                         {@link VectorUtil#squareDistances}
+     * @deprecated use {@link #KMeansPlusPlusClusterer(float[][], float[][])}
+     */
+    @Deprecated
+    public KMeansPlusPlusClusterer(float[][] points, float[][] centroids, BiFunction<float[], float[], Float> distanceFunction) {
+        this(points, centroids);
+    }
+
+    /**
+     * Constructs a KMeansPlusPlusFloatClusterer that starts from the given centroids instead of
+     * choosing them with KMeans++.
+     *
+     * @param points the points to cluster, one after another; the array is not copied or modified.
+     * @param dimension the dimension of each point.
+     * @param centroids the initial centroids, one after another; the array is copied.
+     */
+    public KMeansPlusPlusClusterer(float[] points, int dimension, float[] centroids) {
+        this(points, dimension, centroids, new Random());
+    }
+
+    /**
+     * Constructs a KMeansPlusPlusFloatClusterer that starts from the given centroids instead of
+     * choosing them with KMeans++.
+     *
+     * @param points the points to cluster, one after another; the array is not copied or modified.
+     * @param dimension the dimension of each point.
+     * @param centroids the initial centroids, one after another; the array is copied.
+     * @param random the source of the points that replace empty clusters.
+     */
+    public KMeansPlusPlusClusterer(float[] points, int dimension, float[] centroids, Random random) {
+        this(points, dimension, centroids.length / dimension, centroids, null, random);
+    }
+
+    private KMeansPlusPlusClusterer(float[] points, int dimension, int k, float[] initialCentroids, Initialization initialization, Random random) {
+        if (dimension <= 0 || points.length % dimension != 0) {
+            throw new IllegalArgumentException(String.format("%d floats are not a whole number of %d-dimensional points", points.length, dimension));
+        }
         if (k <= 0) {
             throw new IllegalArgumentException("Number of clusters must be positive.");
         }
-        if (k > points.length) {
-            throw new IllegalArgumentException(String.format("Number of clusters %d cannot exceed number of points %d", k, points.length));
+        if (initialCentroids != null && initialCentroids.length != k * dimension) {
+            throw new IllegalArgumentException(String.format("%d floats are not a whole number of %d-dimensional centroids", initialCentroids.length, dimension));
+        }
+        this.n = points.length / dimension;
+        if (initialCentroids == null && k > n) {
+            throw new IllegalArgumentException(String.format("Number of clusters %d cannot exceed number of points %d", k, n));
         }
 
         this.points = points;
+        this.dimension = dimension;
         this.k = k;
-        this.distanceFunction = distanceFunction;
-        this.random = new Random();
-        this.clusterPoints = new List[k];
-        for (int i = 0; i < k; i++) {
-            this.clusterPoints[i] = new ArrayList<>();
+        this.random = random;
+        if (initialCentroids == null) {
+            centroids = new float[k * dimension];
+            var sample = seedingSample();
+            if (initialization == Initialization.KMEANS_PARALLEL) {
+                chooseInitialCentroidsInParallel(sample);
+            } else {
+                chooseInitialCentroids(sample);
+            }
+        } else {
+            centroids = initialCentroids.clone();
         }
-        centroidDistances = new float[k][k];
-        centroids = chooseInitialCentroids(points);
-        updateCentroidDistances();
-        assignments = new int[points.length];
-        assignPointsToClusters();
+        centroidColumns = new float[dimension * k];
+        updateCentroidColumns();
+        assignments = new int[n];
     }
 
     /**
@@ -79,38 +216,101 @@ public class KMeansPlusPlusClusterer {
     public float[][] cluster(int maxIterations) {
         for (int i = 0; i < maxIterations; i++) {
             int changedCount = clusterOnce();
-            if (changedCount <= 0.01 * points.length) {
+            if (changedCount <= 0.01 * n) {
                 break;
             }
         }
-        return centroids;
+        return getCentroids();
+    }
+
+    /**
+     * Performs mini-batch k-means (Sculley, "Web-Scale K-Means Clustering"), starting from the
+     * current centroids.  Each iteration assigns a random batch of points to their nearest
+     * centroids, then moves each centroid toward its points with a learning rate that decays as
+     * the centroid absorbs more of them.  Each iteration costs O(batchSize) instead of O(points),
+     * so this converges much faster than {@link #cluster} on large sets of points, to somewhat
+     * worse centroids.
+     *
+     * @return a list of cluster centroids.
+     */
+    public float[][] clusterMiniBatch(int iterations, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+
+        var counts = new int[k];
+        var batch = new int[batchSize];
+        var nearest = new int[batchSize];
+        var distances = new float[k];
+        for (int i = 0; i < iterations; i++) {
+            for (int b = 0; b < batchSize; b++) {
+                batch[b] = random.nextInt(n);
+                nearest[b] = nearestCentroid(batch[b], distances);
+            }
+            for (int b = 0; b < batchSize; b++) {
+                int j = nearest[b];
+                float eta = 1.0f / ++counts[j];
+                int centroid = j * dimension;
+                int point = batch[b] * dimension;
+                for (int d = 0; d < dimension; d++) {
+                    centroids[centroid + d] += eta * (points[point + d] - centroids[centroid + d]);
+                }
+            }
+            updateCentroidColumns();
+        }
+        // the full assignment is only needed if full iterations follow, which will compute it
+        assigned = false;
+
+        return getCentroids();
     }
 
     // This is broken out as a separate public method to allow implementing OPQ efficiently
     public int clusterOnce() {
+        if (!assigned) {
+            assignPointsToClusters();
+        }
+        updateCentroids();
+        return assignPointsToClusters();
+    }
+
+    /**
+     * @return a copy of the current centroids
+     */
+    public float[][] getCentroids() {
+        var result = new float[k][];
         for (int j = 0; j < k; j++) {
-            if (clusterPoints[j].isEmpty()) {
-                // Handle empty cluster by choosing a random point
-                // (Choosing the highest-variance point is much slower and no better after a couple iterations)
-                centroids[j] = points[random.nextInt(points.length)];
-            } else {
-                centroids[j] = centroidOf(clusterPoints[j]);
-            }
+            result[j] = Arrays.copyOfRange(centroids, j * dimension, (j + 1) * dimension);
         }
-        int changedCount = assignPointsToClusters();
-        updateCentroidDistances();
+        return result;
+    }
 
-        return changedCount;
+    private int chunks() {
+        return chunks(n);
     }
 
-    private void updateCentroidDistances() {
-        for (int m = 0; m < k; m++) {
-            for (int n = m + 1; n < k; n++) {
-                float distance = distanceFunction.apply(centroids[m], centroids[n]);
-                centroidDistances[m][n] = distance;
-                centroidDistances[n][m] = distance; // Distance matrix is symmetric
-            }
+    private static int chunks(int count) {
+        return (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    /**
+     * @return the points to choose the initial centroids from: all of them, or a random sample
+     * of SEEDING_SAMPLE_PER_CLUSTER * k of them if there are more
+     */
+    private float[] seedingSample() {
+        long size = (long) SEEDING_SAMPLE_PER_CLUSTER * k;
+        if (size >= n) {
+            return points;
+        }
+        // the first `size` entries of a partial Fisher-Yates shuffle
+        var order = IntStream.range(0, n).toArray();
+        var sample = new float[(int) size * dimension];
+        for (int i = 0; i < size; i++) {
+            int j = i + random.nextInt(n - i);
+            int p = order[j];
+            order[j] = order[i];
+            System.arraycopy(points, p * dimension, sample, i * dimension, dimension);
         }
+        return sample;
     }
 
     /**
@@ -121,107 +321,301 @@ public class KMeansPlusPlusClusterer {
      * to the nearest existing centroid. This ensures that the centroids are spread out
      * across the data and not initialized too closely to each other, leading to better
      * convergence and potentially improved final clusterings.
-     * *
-     * @param points a list of points from which centroids are chosen.
-     * @return a list of initial centroids.
+     *
+     * @param points the points to choose from, one after another
      */
-    private float[][] chooseInitialCentroids(float[][] points) {
-        float[][] centroids = new float[k][];
-        float[] distances = new float[points.length];
+    private void chooseInitialCentroids(float[] points) {
+        int n = points.length / dimension;
+        float[] distances = new float[n];
         Arrays.fill(distances, Float.MAX_VALUE);
 
-        // Choose the first centroid randomly
-        float[] firstCentroid = points[random.nextInt(points.length)];
-        centroids[0] = firstCentroid;
-        for (int i = 0; i < points.length; i++) {
-            float distance1 = distanceFunction.apply(points[i], firstCentroid);
-            distances[i] = Math.min(distances[i], distance1);
-        }
-
-        // For each subsequent centroid
-        for (int i = 1; i < k; i++) {
-            float totalDistance = 0;
-            for (float distance : distances) {
-                totalDistance += distance;
+        int selected = random.nextInt(n);
+        for (int i = 0; i < k; i++) {
+            System.arraycopy(points, selected * dimension, centroids, i * dimension, dimension);
+            if (i == k - 1) {
+                break;
             }
 
-            float r = random.nextFloat() * totalDistance;
-            int selectedIdx = -1;
-            for (int j = 0; j < distances.length; j++) {
-                r -= distances[j];
-                if (r < 1e-6) {
-                    selectedIdx = j;
+            // update distances, but only if the new centroid provides a closer distance
+            int centroid = i * dimension;
+            double totalDistance = IntStream.range(0, chunks(n)).parallel().mapToDouble(chunk -> {
+                double chunkTotal = 0;
+                for (int p = chunk * CHUNK_SIZE; p < Math.min(n, (chunk + 1) * CHUNK_SIZE); p++) {
+                    float distance = VectorUtil.squareDistance(points, p * dimension, centroids, centroid, dimension);
+                    distances[p] = Math.min(distances[p], distance);
+                    chunkTotal += distances[p];
+                }
+                return chunkTotal;
+            }).sum();
+
+            // choose the next centroid with probability proportional to its distance
+            double r = random.nextDouble() * totalDistance;
+            selected = -1;
+            for (int p = 0; p < n; p++) {
+                r -= distances[p];
+                if (r <= 0 && distances[p] > 0) {
+                    selected = p;
                     break;
                 }
             }
+            if (selected == -1) {
+                selected = random.nextInt(n);
+            }
+        }
+    }
+
+    /**
+     * Chooses the initial centroids with k-means||.  Every round computes the distance from each
+     * point to the candidates added in the previous round, all at once, then samples each point as
+     * a new candidate with probability proportional to its distance to the nearest candidate.
+     * Finally, the candidates are weighted by how many points they are nearest to, and reduced
+     * to k centroids by weighted k-means++.
+     *
+     * @param points the points to choose from, one after another
+     */
+    private void chooseInitialCentroidsInParallel(float[] points) {
+        int n = points.length / dimension;
+        var distances = new float[n];
+        Arrays.fill(distances, Float.MAX_VALUE);
+        var nearest = new int[n];
+
+        var candidates = new ArrayList<Integer>();
+        List<Integer> added = List.of(random.nextInt(n));
+        double oversampling = OVERSAMPLING_FACTOR * k;
+        for (int round = 0; ; round++) {
+            int offset = candidates.size();
+            candidates.addAll(added);
+            double total = updateNearestCandidates(points, added, offset, distances, nearest);
+            if (round == PARALLEL_INIT_ROUNDS || total == 0) {
+                break;
+            }
 
-            if (selectedIdx == -1) {
-                selectedIdx = random.nextInt(points.length);
+            // each chunk samples with its own generator, so that the result does not depend on scheduling
+            long seed = random.nextLong();
+            added = IntStream.range(0, chunks(n)).parallel().mapToObj(chunk -> {
+                var chunkRandom = new SplittableRandom(seed + chunk);
+                var sampled = new ArrayList<Integer>();
+                for (int p = chunk * CHUNK_SIZE; p < Math.min(n, (chunk + 1) * CHUNK_SIZE); p++) {
+                    if (distances[p] > 0 && chunkRandom.nextDouble() * total < oversampling * distances[p]) {
+                        sampled.add(p);
+                    }
+                }
+                return sampled;
+            }).flatMap(List::stream).collect(Collectors.toList());
+        }
+
+        int m = candidates.size();
+        if (m <= k) {
+            // too few distinct points to choose from; duplicates will be reseeded as empty clusters
+            for (int j = 0; j < k; j++) {
+                int point = j < m ? candidates.get(j) : random.nextInt(n);
+                System.arraycopy(points, point * dimension, centroids, j * dimension, dimension);
             }
+            return;
+        }
 
-            float[] nextCentroid = points[selectedIdx];
-            centroids[i] = nextCentroid;
+        var weights = new double[m];
+        for (int p = 0; p < n; p++) {
+            weights[nearest[p]]++;
+        }
+        var candidatePoints = new float[m * dimension];
+        for (int c = 0; c < m; c++) {
+            System.arraycopy(points, candidates.get(c) * dimension, candidatePoints, c * dimension, dimension);
+        }
+        chooseWeightedCentroids(candidatePoints, weights);
+    }
 
-            // Update distances, but only if the new centroid provides a closer distance
-            for (int j = 0; j < points.length; j++) {
-                float newDistance = distanceFunction.apply(points[j], nextCentroid);
-                distances[j] = Math.min(distances[j], newDistance);
+    /**
+     * Updates the distance from each point to its nearest candidate, and the index of that candidate,
+     * with the newly added candidates, whose indexes start at `offset`.
+     *
+     * @return the sum of the distances
+     */
+    private double updateNearestCandidates(float[] points, List<Integer> added, int offset, float[] distances, int[] nearest) {
+        int n = points.length / dimension;
+        int a = added.size();
+        var columns = new float[dimension * a];
+        for (int c = 0; c < a; c++) {
+            int point = added.get(c) * dimension;
+            for (int d = 0; d < dimension; d++) {
+                columns[d * a + c] = points[point + d];
             }
         }
 
-        return centroids;
+        return IntStream.range(0, chunks(n)).parallel().mapToDouble(chunk -> {
+            var scratch = new float[a];
+            double chunkTotal = 0;
+            for (int p = chunk * CHUNK_SIZE; p < Math.min(n, (chunk + 1) * CHUNK_SIZE); p++) {
+                VectorUtil.squareDistances(points, p * dimension, dimension, columns, 0, a, scratch);
+                for (int c = 0; c < a; c++) {
+                    if (scratch[c] < distances[p]) {
+                        distances[p] = scratch[c];
+                        nearest[p] = offset + c;
+                    }
+                }
+                chunkTotal += distances[p];
+            }
+            return chunkTotal;
+        }).sum();
     }
 
     /**
-     * Assigns points to the nearest cluster.  The results are stored as ordinals in `assignments`
+     * Chooses k of the m weighted candidates as the centroids with k-means++, where the probability
+     * of choosing a candidate is proportional to its weight times its squared distance to the
+     * nearest candidate already chosen.
      */
-    private int assignPointsToClusters() {
-        int changedCount = 0;
+    private void chooseWeightedCentroids(float[] candidates, double[] weights) {
+        int m = weights.length;
+        var distances = new float[m];
+        Arrays.fill(distances, Float.MAX_VALUE);
+        var chosen = new boolean[m];
 
-        for (List<float[]> cluster : clusterPoints) {
-            cluster.clear();
+        int selected = choose(weights, null, chosen);
+        for (int i = 0; i < k; i++) {
+            chosen[selected] = true;
+            System.arraycopy(candidates, selected * dimension, centroids, i * dimension, dimension);
+            if (i == k - 1) {
+                break;
+            }
+            for (int c = 0; c < m; c++) {
+                distances[c] = Math.min(distances[c], VectorUtil.squareDistance(candidates, c * dimension, candidates, selected * dimension, dimension));
+            }
+            selected = choose(weights, distances, chosen);
         }
+    }
 
-        for (int i = 0; i < points.length; i++) {
-            float[] point = points[i];
-            int clusterIndex = getNearestCluster(point, centroids);
+    /**
+     * @return a random index that has not been chosen yet, with probability proportional to its
+     * weight times its distance (if any), or uniformly if all of those are zero
+     */
+    private int choose(double[] weights, float[] distances, boolean[] chosen) {
+        double total = 0;
+        for (int c = 0; c < weights.length; c++) {
+            if (!chosen[c]) {
+                total += weights[c] * (distances == null ? 1 : distances[c]);
+            }
+        }
+        if (total > 0) {
+            double r = random.nextDouble() * total;
+            for (int c = 0; c < weights.length; c++) {
+                double p = chosen[c] ? 0 : weights[c] * (distances == null ? 1 : distances[c]);
+                r -= p;
+                if (r <= 0 && p > 0) {
+                    return c;
+                }
+            }
+        }
+        // everything left is a duplicate of a chosen candidate, or rounding left r just above zero
+        for (int c = weights.length - 1; c >= 0; c--) {
+            if (!chosen[c]) {
+                return c;
+            }
+        }
+        throw new AssertionError();
+    }
 
-            // Check if assignment has changed
-            if (assignments[i] != clusterIndex) {
-                changedCount++;
+    /**
+     * Recomputes each centroid as the mean of the points assigned to it, summing in parallel over
+     * fixed ranges of chunks.
+     */
+    private void updateCentroids() {
+        int chunks = chunks();
+        if (workerSums == null) {
+            workerSums = new double[Math.min(chunks, ForkJoinPool.getCommonPoolParallelism() + 1)][k * dimension + k];
+            totalSums = new double[k * dimension + k];
+        }
+        int workers = workerSums.length;
+        IntStream.range(0, workers).parallel().forEach(worker -> {
+            var sums = workerSums[worker];
+            Arrays.fill(sums, 0);
+            int end = Math.min(n, (int) ((long) chunks * (worker + 1) / workers) * CHUNK_SIZE);
+            for (int p = (int) ((long) chunks * worker / workers) * CHUNK_SIZE; p < end; p++) {
+                int j = assignments[p];
+                int point = p * dimension;
+                int sum = j * dimension;
+                for (int d = 0; d < dimension; d++) {
+                    sums[sum + d] += points[point + d];
+                }
+                sums[k * dimension + j]++;
+            }
+        });
+        var total = totalSums;
+        Arrays.fill(total, 0);
+        for (var sums : workerSums) {
+            for (int i = 0; i < total.length; i++) {
+                total[i] += sums[i];
             }
+        }
 
-            clusterPoints[clusterIndex].add(point);
-            assignments[i] = clusterIndex;
+        for (int j = 0; j < k; j++) {
+            double count = total[k * dimension + j];
+            if (count == 0) {
+                // Handle empty cluster by choosing a random point
+                // (Choosing the highest-variance point is much slower and no better after a couple iterations)
+                System.arraycopy(points, random.nextInt(n) * dimension, centroids, j * dimension, dimension);
+            } else {
+                for (int d = 0; d < dimension; d++) {
+                    centroids[j * dimension + d] = (float) (total[j * dimension + d] / count);
+                }
+            }
         }
+        updateCentroidColumns();
+    }
 
-        return changedCount;
+    private void updateCentroidColumns() {
+        for (int j = 0; j < k; j++) {
+            for (int d = 0; d < dimension; d++) {
+                centroidColumns[d * k + j] = centroids[j * dimension + d];
+            }
+        }
     }
 
     /**
-     * Return the index of the closest centroid to the given point
+     * Assigns points to the nearest cluster, in parallel chunks.  The results are stored as ordinals in `assignments`
+     *
+     * @return the number of points whose assignment changed
      */
-    private int getNearestCluster(float[] point, float[][] centroids) {
-        float minDistance = Float.MAX_VALUE;
-        int nearestCluster = 0;
-
-        for (int i = 0; i < k; i++) {
-            if (i != nearestCluster) {
-                // Using triangle inequality to potentially skip the computation
-                float potentialMinDistance = Math.abs(minDistance - centroidDistances[nearestCluster][i]);
-                if (potentialMinDistance >= minDistance) {
-                    continue;
+    private int assignPointsToClusters() {
+        assigned = true;
+        return IntStream.range(0, chunks()).parallel().map(chunk -> {
+            var distances = new float[k];
+            int changedCount = 0;
+            for (int p = chunk * CHUNK_SIZE; p < Math.min(n, (chunk + 1) * CHUNK_SIZE); p++) {
+                int nearest = nearestCentroid(p, distances);
+                if (assignments[p] != nearest) {
+                    changedCount++;
                 }
+                assignments[p] = nearest;
             }
+            return changedCount;
+        }).sum();
+    }
 
-            float distance = distanceFunction.apply(point, centroids[i]);
-            if (distance < minDistance) {
-                minDistance = distance;
-                nearestCluster = i;
+    /**
+     * @return the index of the closest centroid to the given point
+     * @param distances scratch space for the distance to each centroid
+     */
+    private int nearestCentroid(int point, float[] distances) {
+        VectorUtil.squareDistances(points, point * dimension, dimension, centroidColumns, 0, k, distances);
+        int nearest = 0;
+        for (int j = 1; j < k; j++) {
+            if (distances[j] < distances[nearest]) {
+                nearest = j;
             }
         }
+        return nearest;
+    }
 
-        return nearestCluster;
+    /**
+     * @return the given vectors, one after another in a single array
+     */
+    static float[] flatten(float[][] vectors) {
+        int dimension = vectors[0].length;
+        var flat = new float[vectors.length * dimension];
+        for (int i = 0; i < vectors.length; i++) {
+            System.arraycopy(vectors[i], 0, flat, i * dimension, dimension);
+        }
+        return flat;
     }
 
     /**
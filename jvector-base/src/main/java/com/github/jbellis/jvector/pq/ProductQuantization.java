@@ -20,27 +20,69 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Random;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import com.github.jbellis.jvector.disk.Io;
 import com.github.jbellis.jvector.disk.RandomAccessReader;
+import com.github.jbellis.jvector.graph.RandomAccessVectorValues;
+import com.github.jbellis.jvector.util.Accountable;
+import com.github.jbellis.jvector.util.RamUsageEstimator;
+import com.github.jbellis.jvector.vector.VectorSimilarityFunction;
 import com.github.jbellis.jvector.vector.VectorUtil;
 
 /**
  * A Product Quantization implementation for float vectors.
+ * <p>
+ * Optionally (OPQ), the vectors are rotated before they are split into subspaces, by an
+ * orthogonal matrix that is trained together with the codebooks to minimize the
+ * quantization error.  This helps when the variance of the vectors is unevenly spread
+ * across dimensions, or when dimensions are correlated across subspaces.
  */
-public class ProductQuantization {
+public class ProductQuantization implements Accountable {
     private static final int CLUSTERS = 256; // number of clusters per subspace = one byte's worth
     private static final int K_MEANS_ITERATIONS = 15; // VSTODO try 20 as well
+    private static final int MINI_BATCH_ITERATIONS = 100;
+    // k-means iterations to refine the codebooks after each update of the OPQ rotation
+    private static final int OPQ_K_MEANS_ITERATIONS = 2;
+    // the number of vectors used to solve for each update of the OPQ rotation, which costs O(n * dimension^2)
+    private static final int OPQ_SAMPLE_SIZE = 16384;
+    // written in place of the global centroid length when the PQ has a rotation
+    private static final int ROTATION_MARKER = -1;
 
-    private final float[][][] codebooks;
+    /**
+     * The number of vectors to train on by default, when training from a RandomAccessVectorValues.
+     * More than this improves the codebooks very little.
+     */
+    public static final int DEFAULT_TRAINING_SAMPLE_SIZE = 128_000;
+
+    // centroid i of subspace m starts at clusters * offset_m + i * size_m, which is also the order they are written in
+    private final float[] codebooks;
+    // the same codebooks with each subspace's transposed, at the same offsets, for VectorUtil.squareDistances
+    private final float[] codebookColumns;
+    private final int clusters;
     private final int M;
     private final int originalDimension;
     private final float[] globalCentroid;
     private final int[][] subvectorSizesAndOffsets;
+    private final float[][] rotation; // null unless OPQ
+    // computed on first use by partialSquaredNorms
+    private volatile float[] partialSquaredNorms;
+    // per-thread work arrays for encoding and decoding, so that they allocate nothing per vector
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    private final class Scratch {
+        final float[] distances = new float[clusters];
+        // the centered and the rotated vector being encoded, or the decoded vector before it is un-rotated
+        final float[] centered = new float[originalDimension];
+        final float[] rotated = new float[originalDimension];
+        // a decoded vector, for decodedDotProduct
+        final float[] decoded = new float[originalDimension];
+    }
 
     /**
      * Initializes the codebooks by clustering the input data using Product Quantization.
@@ -51,6 +93,94 @@ public class ProductQuantization {
      *                       (not recommended when using the quantization for dot product)
      */
     public ProductQuantization(List<float[]> vectors, int M, boolean globallyCenter) {
+        this(vectors, M, globallyCenter, 0);
+    }
+
+    /**
+     * Initializes the codebooks by clustering the input data using Optimized Product Quantization,
+     * which alternates between solving for the rotation that best aligns the vectors with their
+     * quantized approximations, and refining the codebooks for the rotated vectors.
+     *
+     * @param vectors the points to quantize
+     * @param M number of subspaces
+     * @param globallyCenter whether to center the vectors globally before quantization
+     *                       (not recommended when using the quantization for dot product)
+     * @param rotationIterations how many times to update the rotation; 0 for plain PQ, without rotation
+     */
+    public ProductQuantization(List<float[]> vectors, int M, boolean globallyCenter, int rotationIterations) {
+        this(vectors, M, globallyCenter, rotationIterations, KMeansPlusPlusClusterer.Initialization.KMEANS_PLUS_PLUS, new Random());
+    }
+
+    /**
+     * Initializes the codebooks by clustering the input data using (Optimized) Product Quantization.
+     *
+     * @param vectors the points to quantize
+     * @param M number of subspaces
+     * @param globallyCenter whether to center the vectors globally before quantization
+     *                       (not recommended when using the quantization for dot product)
+     * @param rotationIterations how many times to update the OPQ rotation; 0 for plain PQ, without rotation
+     * @param initialization how to choose the initial centroids of each subspace; the other
+     *                       constructors use KMEANS_PLUS_PLUS, and KMEANS_PARALLEL is faster on
+     *                       large training sets
+     * @param random the source of all randomness, so that a seeded Random gives reproducible codebooks
+     */
+    public ProductQuantization(List<float[]> vectors, int M, boolean globallyCenter, int rotationIterations,
+                               KMeansPlusPlusClusterer.Initialization initialization, Random random) {
+        this(vectors, M, globallyCenter, rotationIterations, 0, initialization, random);
+    }
+
+    /**
+     * Initializes the codebooks by clustering a random sample of {@link #DEFAULT_TRAINING_SAMPLE_SIZE}
+     * vectors from `ravv`.
+     *
+     * @param ravv the points to quantize
+     * @param M number of subspaces
+     * @param globallyCenter whether to center the vectors globally before quantization
+     *                       (not recommended when using the quantization for dot product)
+     */
+    public ProductQuantization(RandomAccessVectorValues<float[]> ravv, int M, boolean globallyCenter) {
+        this(ravv, M, globallyCenter, 0, DEFAULT_TRAINING_SAMPLE_SIZE, 0);
+    }
+
+    /**
+     * Initializes the codebooks by clustering a random sample of the vectors in `ravv`.  Only the
+     * sampled vectors are read, so the time and memory needed for training depend on the sample
+     * size rather than on the size of `ravv`.
+     *
+     * @param ravv the points to quantize
+     * @param M number of subspaces
+     * @param globallyCenter whether to center the vectors globally before quantization
+     *                       (not recommended when using the quantization for dot product)
+     * @param rotationIterations how many times to update the OPQ rotation; 0 for plain PQ, without rotation
+     * @param sampleSize how many vectors to train on
+     * @param miniBatchSize if positive, cluster with mini-batch k-means on batches of this many
+     *                      vectors, which is much faster than full k-means on large samples but
+     *                      gives somewhat worse codebooks; if 0, use full k-means
+     */
+    public ProductQuantization(RandomAccessVectorValues<float[]> ravv, int M, boolean globallyCenter, int rotationIterations, int sampleSize, int miniBatchSize) {
+        this(ravv, M, globallyCenter, rotationIterations, sampleSize, miniBatchSize, KMeansPlusPlusClusterer.Initialization.KMEANS_PLUS_PLUS, new Random());
+    }
+
+    /**
+     * Initializes the codebooks by clustering a random sample of the vectors in `ravv`, as above.
+     *
+     * @param initialization how to choose the initial centroids of each subspace
+     * @param random the source of all randomness, including the sample, so that a seeded Random
+     *               gives reproducible codebooks
+     */
+    public ProductQuantization(RandomAccessVectorValues<float[]> ravv, int M, boolean globallyCenter, int rotationIterations, int sampleSize, int miniBatchSize,
+                               KMeansPlusPlusClusterer.Initialization initialization, Random random) {
+        this(sampleVectors(ravv, sampleSize, random), M, globallyCenter, rotationIterations, miniBatchSize, initialization, random);
+    }
+
+    private ProductQuantization(List<float[]> vectors, int M, boolean globallyCenter, int rotationIterations, int miniBatchSize,
+                                KMeansPlusPlusClusterer.Initialization initialization, Random random) {
+        if (miniBatchSize < 0) {
+            throw new IllegalArgumentException("Mini-batch size must not be negative: " + miniBatchSize);
+        }
+        if (rotationIterations < 0) {
+            throw new IllegalArgumentException("Rotation iterations must not be negative: " + rotationIterations);
+        }
         this.M = M;
         originalDimension = vectors.get(0).length;
         subvectorSizesAndOffsets = getSubvectorSizesAndOffsets(originalDimension, M);
@@ -61,22 +191,67 @@ public class ProductQuantization {
         } else {
             globalCentroid = null;
         }
-        codebooks = createCodebooks(vectors, M, subvectorSizesAndOffsets);
+        float[][][] books;
+        if (rotationIterations == 0) {
+            books = createCodebooks(vectors, M, subvectorSizesAndOffsets, CLUSTERS, miniBatchSize, initialization, random);
+            rotation = null;
+        } else {
+            // start from a random rotation, which spreads the variance evenly across subspaces
+            // (alternating minimization from the identity tends to stay close to it)
+            var points = vectors.toArray(new float[0][]);
+            var r = Rotation.random(originalDimension, random);
+            var R0 = r;
+            var rotated = Arrays.stream(points).parallel().map(v -> Rotation.apply(R0, v)).toArray(float[][]::new);
+            books = createCodebooks(Arrays.asList(rotated), M, subvectorSizesAndOffsets, CLUSTERS, miniBatchSize, initialization, random);
+            for (int i = 0; i < rotationIterations; i++) {
+                r = Rotation.procrustes(crossCovariance(points, rotated, books, subvectorSizesAndOffsets));
+                var R = r;
+                rotated = Arrays.stream(points).parallel().map(v -> Rotation.apply(R, v)).toArray(float[][]::new);
+                // the last refinement is the one we keep, so run it to convergence
+                int iterations = i == rotationIterations - 1 ? K_MEANS_ITERATIONS : OPQ_K_MEANS_ITERATIONS;
+                books = refineCodebooks(rotated, books, subvectorSizesAndOffsets, iterations, random);
+            }
+            rotation = r;
+        }
+        clusters = CLUSTERS;
+        codebooks = flattenCodebooks(books);
+        codebookColumns = transposeCodebooks(codebooks, clusters, subvectorSizesAndOffsets);
     }
 
     public ProductQuantization(float[][][] codebooks, float[] globalCentroid)
+    {
+        this(codebooks, globalCentroid, null);
+    }
+
+    /**
+     * @param rotation the OPQ rotation, an orthogonal matrix applied to centered vectors before
+     *                 they are split into subspaces; null for plain PQ
+     */
+    public ProductQuantization(float[][][] codebooks, float[] globalCentroid, float[][] rotation)
+    {
+        this(flattenCodebooks(codebooks),
+             codebooks[0].length,
+             getSubvectorSizesAndOffsets(Arrays.stream(codebooks).mapToInt(codebook -> codebook[0].length).toArray()),
+             globalCentroid,
+             rotation);
+    }
+
+    /**
+     * @param codebooks the centroids of each subspace in turn, one after another in a single array
+     */
+    private ProductQuantization(float[] codebooks, int clusters, int[][] subvectorSizesAndOffsets, float[] globalCentroid, float[][] rotation)
     {
         this.codebooks = codebooks;
+        this.clusters = clusters;
         this.globalCentroid = globalCentroid;
-        this.M = codebooks.length;
-        this.subvectorSizesAndOffsets = new int[M][];
-        int offset = 0;
-        for (int i = 0; i < M; i++) {
-            int size = codebooks[i][0].length;
-            this.subvectorSizesAndOffsets[i] = new int[]{size, offset};
-            offset += size;
-        }
+        this.rotation = rotation;
+        this.M = subvectorSizesAndOffsets.length;
+        this.subvectorSizesAndOffsets = subvectorSizesAndOffsets;
         this.originalDimension = Arrays.stream(subvectorSizesAndOffsets).mapToInt(m -> m[0]).sum();
+        this.codebookColumns = transposeCodebooks(codebooks, clusters, subvectorSizesAndOffsets);
+        if (rotation != null && (rotation.length != originalDimension || rotation[0].length != originalDimension)) {
+            throw new IllegalArgumentException(String.format("Rotation must be %dx%d", originalDimension, originalDimension));
+        }
     }
 
     /**
@@ -92,39 +267,67 @@ public class ProductQuantization {
      * @return one byte per subspace
      */
     public byte[] encode(float[] vector) {
+        byte[] encoded = new byte[M];
+        encodeTo(vector, encoded, 0);
+        return encoded;
+    }
+
+    /**
+     * Encodes the input vector into the M bytes of `target` starting at `targetOffset`.
+     *
+     * @return the square distance between the vector and its decoded approximation
+     */
+    public float encodeTo(float[] vector, byte[] target, int targetOffset) {
+        var scratch = this.scratch.get();
         if (globalCentroid != null) {
-            vector = VectorUtil.sub(vector, globalCentroid);
+            System.arraycopy(vector, 0, scratch.centered, 0, originalDimension);
+            VectorUtil.subInPlace(scratch.centered, globalCentroid);
+            vector = scratch.centered;
+        }
+        if (rotation != null) {
+            Rotation.apply(rotation, vector, scratch.rotated);
+            vector = scratch.rotated;
         }
 
-        float[] finalVector = vector;
-        byte[] encoded = new byte[M];
+        // the rotation is orthogonal, so the error is the sum of the distances to the chosen centroids
+        float error = 0;
+        var distances = scratch.distances;
         for (int m = 0; m < M; m++) {
-            encoded[m] = (byte) closetCentroidIndex(getSubVector(finalVector, m, subvectorSizesAndOffsets), codebooks[m]);
+            int size = subvectorSizesAndOffsets[m][0];
+            int offset = subvectorSizesAndOffsets[m][1];
+            VectorUtil.squareDistances(vector, offset, size, codebookColumns, clusters * offset, clusters, distances);
+            int nearest = 0;
+            for (int i = 1; i < clusters; i++) {
+                if (distances[i] < distances[nearest]) {
+                    nearest = i;
+                }
+            }
+            target[targetOffset + m] = (byte) nearest;
+            error += distances[nearest];
         }
-        return encoded;
+        return error;
     }
 
     /**
      * Computes the dot product of the (approximate) original decoded vector with
      * another vector.
      *
-     * If the PQ does not require centering, this method can compute the dot
+     * If the PQ does not require centering or rotation, this method can compute the dot
      * product without materializing the decoded vector as a new float[], and will be
      * roughly 2x as fast as decode() + dot().
      */
     public float decodedDotProduct(byte[] encoded, float[] other) {
-        if (globalCentroid != null) {
-            float[] target = new float[originalDimension];
+        if (globalCentroid != null || rotation != null) {
+            var target = scratch.get().decoded;
             decode(encoded, target);
             return VectorUtil.dotProduct(target, other);
         }
 
         float sum = 0.0f;
         for (int m = 0; m < M; ++m) {
+            int size = subvectorSizesAndOffsets[m][0];
             int offset = subvectorSizesAndOffsets[m][1];
-            int centroidIndex = Byte.toUnsignedInt(encoded[m]);
-            float[] centroidSubvector = codebooks[m][centroidIndex];
-            sum += VectorUtil.dotProduct(centroidSubvector, 0, other, offset, centroidSubvector.length);
+            sum += VectorUtil.dotProduct(codebooks, centroidOffset(m, encoded[m]), other, offset, size);
         }
 
         return sum;
@@ -134,18 +337,192 @@ public class ProductQuantization {
      * Decodes the quantized representation (byte array) to its approximate original vector.
      */
     public void decode(byte[] encoded, float[] target) {
-        for (int m = 0; m < M; m++) {
-            int centroidIndex = Byte.toUnsignedInt(encoded[m]);
-            float[] centroidSubvector = codebooks[m][centroidIndex];
-            System.arraycopy(centroidSubvector, 0, target, subvectorSizesAndOffsets[m][1], subvectorSizesAndOffsets[m][0]);
+        if (rotation == null) {
+            decodeSubspaces(encoded, target);
+        } else {
+            // Undo the rotation; its inverse is its transpose
+            var rotated = scratch.get().rotated;
+            decodeSubspaces(encoded, rotated);
+            Rotation.applyTranspose(rotation, rotated, target);
         }
-
         if (globalCentroid != null) {
             // Add back the global centroid to get the approximate original vector.
             VectorUtil.addInPlace(target, globalCentroid);
         }
     }
 
+    /** Copies the centroid of each code into its subspace of `target`, which is the decoded vector before un-rotating it */
+    private void decodeSubspaces(byte[] encoded, float[] target) {
+        for (int m = 0; m < M; m++) {
+            System.arraycopy(codebooks, centroidOffset(m, encoded[m]), target, subvectorSizesAndOffsets[m][1], subvectorSizesAndOffsets[m][0]);
+        }
+    }
+
+    /**
+     * Computes the contribution of each centroid to the similarity of `query` and an encoded vector, so
+     * that the dot product or square distance between `query` and a decoded vector is the sum of the
+     * entries for its codes.  The query is centered and rotated once, here, instead of decoding
+     * (and un-rotating) each vector it is compared with.
+     *
+     * @return the partial scores, indexed by [subspace * clusters + centroid index]
+     * @throws IllegalArgumentException for COSINE, which does not decompose by subspace
+     */
+    public float[] partialScores(float[] query, VectorSimilarityFunction similarityFunction) {
+        if (similarityFunction == VectorSimilarityFunction.COSINE) {
+            throw new IllegalArgumentException("COSINE does not decompose by subspace");
+        }
+        boolean dot = similarityFunction == VectorSimilarityFunction.DOT_PRODUCT;
+
+        // the part of the score that does not depend on the codes, which we add to the first subspace
+        float bias = 0;
+        if (globalCentroid != null) {
+            if (dot) {
+                bias = VectorUtil.dotProduct(query, globalCentroid);
+            } else {
+                query = VectorUtil.sub(query, globalCentroid);
+            }
+        }
+        if (rotation != null) {
+            query = Rotation.apply(rotation, query);
+        }
+
+        var partials = new float[M * clusters];
+        var distances = dot ? null : new float[clusters];
+        for (int m = 0; m < M; m++) {
+            int size = subvectorSizesAndOffsets[m][0];
+            int offset = subvectorSizesAndOffsets[m][1];
+            if (dot) {
+                for (int i = 0; i < clusters; i++) {
+                    partials[m * clusters + i] = VectorUtil.dotProduct(query, offset, codebooks, clusters * offset + i * size, size);
+                }
+            } else {
+                VectorUtil.squareDistances(query, offset, size, codebookColumns, clusters * offset, clusters, distances);
+                System.arraycopy(distances, 0, partials, m * clusters, clusters);
+            }
+        }
+        for (int i = 0; i < clusters; i++) {
+            partials[i] += bias;
+        }
+        return partials;
+    }
+
+    /**
+     * Computes the contribution of each centroid to the square norm of a decoded vector, so that
+     * the square norm of a decoded vector is the sum of the entries for its codes.  Together with
+     * the DOT_PRODUCT {@link #partialScores}, this lets COSINE be scored without decoding.
+     * The table does not depend on a query, so it is computed once and kept.
+     *
+     * @return the partial square norms, indexed by [subspace * clusters + centroid index]
+     */
+    public float[] partialSquaredNorms() {
+        var norms = partialSquaredNorms;
+        if (norms == null) {
+            norms = computePartialSquaredNorms();
+            partialSquaredNorms = norms;
+        }
+        return norms;
+    }
+
+    private float[] computePartialSquaredNorms() {
+        // a decoded vector is rotation^T * x + globalCentroid, and the rotation preserves norms, so
+        // its square norm is |x|^2 + 2 (rotation * globalCentroid) . x + |globalCentroid|^2
+        float[] center = null;
+        if (globalCentroid != null) {
+            center = rotation == null ? globalCentroid : Rotation.apply(rotation, globalCentroid);
+        }
+        var norms = new float[M * clusters];
+        for (int m = 0; m < M; m++) {
+            int size = subvectorSizesAndOffsets[m][0];
+            int offset = subvectorSizesAndOffsets[m][1];
+            for (int i = 0; i < clusters; i++) {
+                int start = clusters * offset + i * size;
+                float norm = VectorUtil.dotProduct(codebooks, start, codebooks, start, size);
+                if (center != null) {
+                    norm += 2 * VectorUtil.dotProduct(center, offset, codebooks, start, size);
+                }
+                norms[m * clusters + i] = norm;
+            }
+        }
+        if (globalCentroid != null) {
+            float bias = VectorUtil.dotProduct(globalCentroid, globalCentroid);
+            for (int i = 0; i < clusters; i++) {
+                norms[i] += bias;
+            }
+        }
+        return norms;
+    }
+
+    /**
+     * Computes the contribution of each pair of centroids to the similarity of two encoded vectors,
+     * so that the dot product or square distance between two decoded vectors is the sum of the
+     * entries for their pairs of codes.  This lets compressed vectors be compared with each other
+     * without decoding them, e.g. to prune a graph's neighbors without the full vectors.
+     * The tables take M * clusters^2 floats, 256KB per subspace.
+     *
+     * @return the symmetric partial scores, indexed by [(subspace * clusters + code1) * clusters + code2]
+     * @throws IllegalArgumentException for COSINE, which does not decompose by subspace
+     */
+    public float[] symmetricScores(VectorSimilarityFunction similarityFunction) {
+        if (similarityFunction == VectorSimilarityFunction.COSINE) {
+            throw new IllegalArgumentException("COSINE does not decompose by subspace");
+        }
+        boolean dot = similarityFunction == VectorSimilarityFunction.DOT_PRODUCT;
+
+        // the dot product of centered vectors x = c + R^T y is c.c + (Rc).y1 + (Rc).y2 + y1.y2,
+        // so each centroid gets a bias, and the constant goes in the first subspace
+        // (centering and rotation do not change square distances)
+        float[] shift = null;
+        float constant = 0;
+        if (dot && globalCentroid != null) {
+            shift = rotation == null ? globalCentroid : Rotation.apply(rotation, globalCentroid);
+            constant = VectorUtil.dotProduct(globalCentroid, globalCentroid);
+        }
+        var centroidShift = shift;
+        float centroidConstant = constant;
+
+        var tables = new float[M * clusters * clusters];
+        IntStream.range(0, M).parallel().forEach(m -> {
+            int size = subvectorSizesAndOffsets[m][0];
+            int offset = subvectorSizesAndOffsets[m][1];
+            int base = clusters * offset;
+            int table = m * clusters * clusters;
+            if (!dot) {
+                // one row at a time against the transposed codebook
+                var distances = new float[clusters];
+                for (int i = 0; i < clusters; i++) {
+                    VectorUtil.squareDistances(codebooks, base + i * size, size, codebookColumns, base, clusters, distances);
+                    System.arraycopy(distances, 0, tables, table + i * clusters, clusters);
+                }
+                return;
+            }
+
+            var bias = new float[clusters];
+            if (centroidShift != null) {
+                for (int i = 0; i < clusters; i++) {
+                    bias[i] = VectorUtil.dotProduct(centroidShift, offset, codebooks, base + i * size, size);
+                }
+            }
+            float c = m == 0 ? centroidConstant : 0;
+            for (int i = 0; i < clusters; i++) {
+                for (int j = i; j < clusters; j++) {
+                    float score = VectorUtil.dotProduct(codebooks, base + i * size, codebooks, base + j * size, size) + bias[i] + bias[j] + c;
+                    tables[table + i * clusters + j] = score;
+                    tables[table + j * clusters + i] = score;
+                }
+            }
+        });
+        return tables;
+    }
+
+    /**
+     * @return the offset in `codebooks` of the centroid with the given code in subspace m
+     */
+    private int centroidOffset(int m, byte code) {
+        int size = subvectorSizesAndOffsets[m][0];
+        int offset = subvectorSizesAndOffsets[m][1];
+        return clusters * offset + Byte.toUnsignedInt(code) * size;
+    }
+
     /**
      * @return The dimension of the vectors being quantized.
      */
@@ -160,6 +537,20 @@ public class ProductQuantization {
         return M;
     }
 
+    /**
+     * @return the number of centroids in each subspace's codebook
+     */
+    public int getClusterCount() {
+        return clusters;
+    }
+
+    /**
+     * @return the OPQ rotation, or null
+     */
+    float[][] getRotation() {
+        return rotation;
+    }
+
     // for testing
     static void printCodebooks(List<List<float[]>> codebooks) {
         List<List<String>> strings = codebooks.stream()
@@ -183,16 +574,124 @@ public class ProductQuantization {
     }
 
     static float[][][] createCodebooks(List<float[]> vectors, int M, int[][] subvectorSizeAndOffset) {
+        return createCodebooks(vectors, M, subvectorSizeAndOffset, CLUSTERS);
+    }
+
+    static float[][][] createCodebooks(List<float[]> vectors, int M, int[][] subvectorSizeAndOffset, int clusters) {
+        return createCodebooks(vectors, M, subvectorSizeAndOffset, clusters, 0, KMeansPlusPlusClusterer.Initialization.KMEANS_PLUS_PLUS, new Random());
+    }
+
+    /**
+     * @param miniBatchSize the batch size for mini-batch k-means, or 0 for full k-means
+     * @param random the source of the seeds of each subspace's clustering, which are drawn up
+     *               front so that the result does not depend on the order the subspaces run in
+     */
+    static float[][][] createCodebooks(List<float[]> vectors, int M, int[][] subvectorSizeAndOffset, int clusters, int miniBatchSize,
+                                       KMeansPlusPlusClusterer.Initialization initialization, Random random) {
+        var seeds = random.longs(M).toArray();
         return IntStream.range(0, M).parallel()
                 .mapToObj(m -> {
-                    float[][] subvectors = vectors.stream().parallel()
-                            .map(vector -> getSubVector(vector, m, subvectorSizeAndOffset))
-                            .toArray(s -> new float[s][]);
-                    var clusterer = new KMeansPlusPlusClusterer(subvectors, CLUSTERS, VectorUtil::squareDistance);
-                    return clusterer.cluster(K_MEANS_ITERATIONS);
+                    var subvectors = getSubVectors(vectors, m, subvectorSizeAndOffset);
+                    var clusterer = new KMeansPlusPlusClusterer(subvectors, subvectorSizeAndOffset[m][0], clusters,
+                                                                initialization, new Random(seeds[m]));
+                    return miniBatchSize > 0
+                           ? clusterer.clusterMiniBatch(MINI_BATCH_ITERATIONS, miniBatchSize)
+                           : clusterer.cluster(K_MEANS_ITERATIONS);
                 })
                 .toArray(s -> new float[s][][]);
     }
+
+    /**
+     * @return copies of `sampleSize` distinct vectors chosen at random from `ravv`, in ordinal
+     * order, or of all of them if there are no more than that
+     */
+    static List<float[]> sampleVectors(RandomAccessVectorValues<float[]> ravv, int sampleSize) {
+        return sampleVectors(ravv, sampleSize, new Random());
+    }
+
+    static List<float[]> sampleVectors(RandomAccessVectorValues<float[]> ravv, int sampleSize, Random random) {
+        if (sampleSize <= 0) {
+            throw new IllegalArgumentException("Sample size must be positive: " + sampleSize);
+        }
+        int size = ravv.size();
+        int[] ordinals;
+        if (sampleSize >= size) {
+            ordinals = IntStream.range(0, size).toArray();
+        } else {
+            // Floyd's algorithm, which chooses distinct ordinals without materializing all of them
+            var chosen = new HashSet<Integer>(2 * sampleSize);
+            for (int j = size - sampleSize; j < size; j++) {
+                int t = random.nextInt(j + 1);
+                chosen.add(chosen.contains(t) ? j : t);
+            }
+            // sorted, so that a disk-backed ravv is read sequentially
+            ordinals = chosen.stream().mapToInt(Integer::intValue).sorted().toArray();
+        }
+
+        // vectorValue may reuse its array, so copy each one as we read it
+        var sample = new ArrayList<float[]>(ordinals.length);
+        for (int ordinal : ordinals) {
+            sample.add(ravv.vectorValue(ordinal).clone());
+        }
+        return sample;
+    }
+
+    /**
+     * Runs k-means on each subspace starting from the existing codebooks.
+     */
+    static float[][][] refineCodebooks(float[][] vectors, float[][][] codebooks, int[][] subvectorSizeAndOffset, int iterations, Random random) {
+        var seeds = random.longs(codebooks.length).toArray();
+        return IntStream.range(0, codebooks.length).parallel()
+                .mapToObj(m -> {
+                    var subvectors = getSubVectors(Arrays.asList(vectors), m, subvectorSizeAndOffset);
+                    var centroids = KMeansPlusPlusClusterer.flatten(codebooks[m]);
+                    var clusterer = new KMeansPlusPlusClusterer(subvectors, subvectorSizeAndOffset[m][0], centroids, new Random(seeds[m]));
+                    return clusterer.cluster(iterations);
+                })
+                .toArray(s -> new float[s][][]);
+    }
+
+    /**
+     * @return the sum over (a sample of) the points of y x^T, where x is the point and y is
+     * the quantization of its rotation, which is the input to the Procrustes problem for the
+     * rotation that best maps the points to their quantized approximations
+     */
+    private static double[][] crossCovariance(float[][] points, float[][] rotated, float[][][] codebooks, int[][] subvectorSizeAndOffset) {
+        int dimension = points[0].length;
+        int step = Math.max(1, points.length / OPQ_SAMPLE_SIZE);
+        int samples = (points.length + step - 1) / step;
+        int chunks = Math.min(samples, Runtime.getRuntime().availableProcessors());
+        return IntStream.range(0, chunks).parallel()
+                .mapToObj(chunk -> {
+                    var a = new double[dimension][dimension];
+                    var y = new float[dimension];
+                    for (int s = chunk; s < samples; s += chunks) {
+                        var x = points[s * step];
+                        var v = rotated[s * step];
+                        for (int m = 0; m < codebooks.length; m++) {
+                            var centroid = codebooks[m][closetCentroidIndex(getSubVector(v, m, subvectorSizeAndOffset), codebooks[m])];
+                            System.arraycopy(centroid, 0, y, subvectorSizeAndOffset[m][1], centroid.length);
+                        }
+                        for (int r = 0; r < dimension; r++) {
+                            double yr = y[r];
+                            var row = a[r];
+                            for (int c = 0; c < dimension; c++) {
+                                row[c] += yr * x[c];
+                            }
+                        }
+                    }
+                    return a;
+                })
+                .reduce((a, b) -> {
+                    for (int r = 0; r < dimension; r++) {
+                        for (int c = 0; c < dimension; c++) {
+                            a[r][c] += b[r][c];
+                        }
+                    }
+                    return a;
+                })
+                .orElseThrow();
+    }
     
     static int closetCentroidIndex(float[] subvector, float[][] codebook) {
         int index = 0;
@@ -216,6 +715,51 @@ public class ProductQuantization {
         return subvector;
     }
 
+    /**
+     * Extracts the m-th subvector from each vector, one after another in a single array.
+     */
+    static float[] getSubVectors(List<float[]> vectors, int m, int[][] subvectorSizeAndOffset) {
+        int size = subvectorSizeAndOffset[m][0];
+        int offset = subvectorSizeAndOffset[m][1];
+        var subvectors = new float[vectors.size() * size];
+        IntStream.range(0, vectors.size()).parallel().forEach(i -> System.arraycopy(vectors.get(i), offset, subvectors, i * size, size));
+        return subvectors;
+    }
+
+    /**
+     * @return the codebooks of each subspace in turn, one after another in a single array
+     */
+    static float[] flattenCodebooks(float[][][] codebooks) {
+        int clusters = codebooks[0].length;
+        int dimension = Arrays.stream(codebooks).mapToInt(codebook -> codebook[0].length).sum();
+        var flat = new float[clusters * dimension];
+        int offset = 0;
+        for (var codebook : codebooks) {
+            var centroids = KMeansPlusPlusClusterer.flatten(codebook);
+            System.arraycopy(centroids, 0, flat, offset, centroids.length);
+            offset += centroids.length;
+        }
+        return flat;
+    }
+
+    /**
+     * @return the flattened codebooks with each subspace's centroids transposed in place, so that
+     * dimension d of centroid i of subspace m is at clusters * (offset_m + d) + i
+     */
+    private static float[] transposeCodebooks(float[] codebooks, int clusters, int[][] subvectorSizeAndOffset) {
+        var columns = new float[codebooks.length];
+        for (var sizeAndOffset : subvectorSizeAndOffset) {
+            int size = sizeAndOffset[0];
+            int base = clusters * sizeAndOffset[1];
+            for (int i = 0; i < clusters; i++) {
+                for (int d = 0; d < size; d++) {
+                    columns[base + d * clusters + i] = codebooks[base + i * size + d];
+                }
+            }
+        }
+        return columns;
+    }
+
     /**
      * Splits the vector dimension into M subvectors of roughly equal size.
      */
@@ -233,8 +777,29 @@ public class ProductQuantization {
         return sizes;
     }
 
+    /**
+     * @return the sizes and offsets of consecutive subvectors with the given sizes
+     */
+    static int[][] getSubvectorSizesAndOffsets(int[] sizes) {
+        int[][] sizesAndOffsets = new int[sizes.length][];
+        int offset = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            sizesAndOffsets[i] = new int[]{sizes[i], offset};
+            offset += sizes[i];
+        }
+        return sizesAndOffsets;
+    }
+
     public void write(DataOutput out) throws IOException
     {
+        if (rotation != null) {
+            out.writeInt(ROTATION_MARKER);
+            out.writeInt(rotation.length);
+            for (var row : rotation) {
+                Io.writeFloats(out, row);
+            }
+        }
+
         if (globalCentroid == null) {
             out.writeInt(0);
         } else {
@@ -249,18 +814,38 @@ public class ProductQuantization {
             out.writeInt(a[0]);
         }
 
-        assert codebooks.length == M;
-        assert codebooks[0].length == CLUSTERS;
-        out.writeInt(codebooks[0].length);
-        for (var codebook : codebooks) {
-            for (var centroid : codebook) {
-                Io.writeFloats(out, centroid);
-            }
+        assert clusters == CLUSTERS;
+        out.writeInt(clusters);
+        Io.writeFloats(out, codebooks);
+    }
+
+    /**
+     * @return the number of bytes written by {@link #write}
+     */
+    public int serializedSize() {
+        int size = Integer.BYTES; // global centroid length
+        if (rotation != null) {
+            size += 2 * Integer.BYTES + rotation.length * rotation.length * Float.BYTES; // marker, dimension, and matrix
         }
+        if (globalCentroid != null) {
+            size += globalCentroid.length * Float.BYTES;
+        }
+        size += Integer.BYTES + M * Integer.BYTES; // M and the subvector sizes
+        size += Integer.BYTES + clusters * originalDimension * Float.BYTES; // clusters and the codebooks
+        return size;
     }
 
     public static ProductQuantization load(RandomAccessReader in) throws IOException {
         int globalCentroidLength = in.readInt();
+        float[][] rotation = null;
+        if (globalCentroidLength == ROTATION_MARKER) {
+            int dimension = in.readInt();
+            rotation = new float[dimension][dimension];
+            for (var row : rotation) {
+                in.readFully(row);
+            }
+            globalCentroidLength = in.readInt();
+        }
         float[] globalCentroid = null;
         if (globalCentroidLength > 0) {
             globalCentroid = new float[globalCentroidLength];
@@ -268,30 +853,40 @@ public class ProductQuantization {
         }
 
         int M = in.readInt();
-        int[][] subvectorSizes = new int[M][];
-        int offset = 0;
+        int[] sizes = new int[M];
         for (int i = 0; i < M; i++) {
-            subvectorSizes[i] = new int[2];
-            int size = in.readInt();
-            subvectorSizes[i][0] = size;
-            offset += size;
-            subvectorSizes[i][1] = offset;
+            sizes[i] = in.readInt();
         }
 
         int clusters = in.readInt();
-        float[][][] codebooks = new float[M][][];
-        for (int m = 0; m < M; m++) {
-            float[][] codebook = new float[clusters][];
-            for (int i = 0; i < clusters; i++) {
-                int n = subvectorSizes[m][0];
-                float[] centroid = new float[n];
-                in.readFully(centroid);
-                codebook[i] = centroid;
+        float[] codebooks = new float[clusters * Arrays.stream(sizes).sum()];
+        in.readFully(codebooks);
+
+        return new ProductQuantization(codebooks, clusters, getSubvectorSizesAndOffsets(sizes), globalCentroid, rotation);
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        long size = RamUsageEstimator.sizeOf(codebooks)
+                    + RamUsageEstimator.sizeOf(codebookColumns)
+                    + RamUsageEstimator.shallowSizeOf(subvectorSizesAndOffsets);
+        for (var sizeAndOffset : subvectorSizesAndOffsets) {
+            size += RamUsageEstimator.sizeOf(sizeAndOffset);
+        }
+        if (globalCentroid != null) {
+            size += RamUsageEstimator.sizeOf(globalCentroid);
+        }
+        var norms = partialSquaredNorms;
+        if (norms != null) {
+            size += RamUsageEstimator.sizeOf(norms);
+        }
+        if (rotation != null) {
+            size += RamUsageEstimator.shallowSizeOf(rotation);
+            for (var row : rotation) {
+                size += RamUsageEstimator.sizeOf(row);
             }
-            codebooks[m] = codebook;
         }
-
-        return new ProductQuantization(codebooks, globalCentroid);
+        return size;
     }
 
     @Override
@@ -301,16 +896,19 @@ public class ProductQuantization {
         ProductQuantization that = (ProductQuantization) o;
         return M == that.M
                && originalDimension == that.originalDimension
-               && Arrays.deepEquals(codebooks, that.codebooks)
+               && clusters == that.clusters
+               && Arrays.equals(codebooks, that.codebooks)
                && Arrays.equals(globalCentroid, that.globalCentroid)
+               && Arrays.deepEquals(rotation, that.rotation)
                && Arrays.deepEquals(subvectorSizesAndOffsets, that.subvectorSizesAndOffsets);
     }
 
     @Override
     public int hashCode() {
-        int result = Objects.hash(M, originalDimension);
-        result = 31 * result + Arrays.deepHashCode(codebooks);
+        int result = Objects.hash(M, originalDimension, clusters);
+        result = 31 * result + Arrays.hashCode(codebooks);
         result = 31 * result + Arrays.hashCode(globalCentroid);
+        result = 31 * result + Arrays.deepHashCode(rotation);
         result = 31 * result + Arrays.deepHashCode(subvectorSizesAndOffsets);
         return result;
     }
@@ -0,0 +1,209 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.pq;
+
+import com.github.jbellis.jvector.vector.VectorUtil;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Orthogonal rotations of vectors, as square matrices of rows, for OPQ.
+ */
+final class Rotation {
+    private static final int MAX_SWEEPS = 60;
+    private static final double EPSILON = 1e-12;
+
+    private Rotation() {
+    }
+
+    static float[][] identity(int dimension) {
+        var r = new float[dimension][dimension];
+        for (int i = 0; i < dimension; i++) {
+            r[i][i] = 1;
+        }
+        return r;
+    }
+
+    /**
+     * @return a random rotation, the orthogonal factor of a matrix of Gaussian noise
+     */
+    static float[][] random(int dimension, Random random) {
+        var a = new double[dimension][dimension];
+        for (var row : a) {
+            for (int j = 0; j < dimension; j++) {
+                row[j] = random.nextGaussian();
+            }
+        }
+        return procrustes(a);
+    }
+
+    /** @return R v */
+    static float[] apply(float[][] r, float[] v) {
+        var result = new float[r.length];
+        apply(r, v, result);
+        return result;
+    }
+
+    /** Computes R v into `result`, which must not be `v` */
+    static void apply(float[][] r, float[] v, float[] result) {
+        for (int i = 0; i < r.length; i++) {
+            result[i] = VectorUtil.dotProduct(r[i], v);
+        }
+    }
+
+    /** @return R^T v, which undoes {@link #apply} since R is orthogonal */
+    static float[] applyTranspose(float[][] r, float[] v) {
+        var result = new float[r.length];
+        applyTranspose(r, v, result);
+        return result;
+    }
+
+    /** Computes R^T v into `result`, which must not be `v` */
+    static void applyTranspose(float[][] r, float[] v, float[] result) {
+        Arrays.fill(result, 0, r.length, 0);
+        for (int i = 0; i < r.length; i++) {
+            float x = v[i];
+            var row = r[i];
+            for (int j = 0; j < r.length; j++) {
+                result[j] += x * row[j];
+            }
+        }
+    }
+
+    /**
+     * @return the orthogonal matrix R minimizing the sum of ||R x_i - y_i||^2, given
+     * `a` = the sum of the outer products y_i x_i^T.  This is the orthogonal Procrustes
+     * problem, whose solution is U V^T for the singular value decomposition a = U S V^T.
+     */
+    static float[][] procrustes(double[][] a) {
+        int d = a.length;
+        // one-sided Jacobi: rotate pairs of columns of W = a until they are orthogonal,
+        // accumulating the same rotations in V, so that a V = W = U S.
+        // columns are stored as rows, for locality.
+        var w = new double[d][d];
+        var v = new double[d][d];
+        for (int i = 0; i < d; i++) {
+            for (int j = 0; j < d; j++) {
+                w[j][i] = a[i][j];
+            }
+            v[i][i] = 1;
+        }
+
+        for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+            boolean rotated = false;
+            for (int p = 0; p < d - 1; p++) {
+                for (int q = p + 1; q < d; q++) {
+                    double alpha = dot(w[p], w[p]);
+                    double beta = dot(w[q], w[q]);
+                    double gamma = dot(w[p], w[q]);
+                    if (Math.abs(gamma) <= EPSILON * Math.sqrt(alpha * beta) || gamma == 0) {
+                        continue;
+                    }
+                    rotated = true;
+                    double zeta = (beta - alpha) / (2 * gamma);
+                    double t = Math.signum(zeta) / (Math.abs(zeta) + Math.sqrt(1 + zeta * zeta));
+                    if (zeta == 0) {
+                        t = 1;
+                    }
+                    double c = 1 / Math.sqrt(1 + t * t);
+                    double s = c * t;
+                    rotate(w[p], w[q], c, s);
+                    rotate(v[p], v[q], c, s);
+                }
+            }
+            if (!rotated) {
+                break;
+            }
+        }
+
+        // normalize the columns of W to get U, completing the basis where a is singular
+        var u = new double[d][];
+        double largest = 0;
+        for (int i = 0; i < d; i++) {
+            largest = Math.max(largest, Math.sqrt(dot(w[i], w[i])));
+        }
+        for (int i = 0; i < d; i++) {
+            double norm = Math.sqrt(dot(w[i], w[i]));
+            if (norm > EPSILON * Math.max(largest, 1)) {
+                u[i] = scale(w[i], 1 / norm);
+            }
+        }
+        for (int i = 0, basis = 0; i < d; i++) {
+            while (u[i] == null) {
+                var e = new double[d];
+                e[basis++] = 1;
+                u[i] = orthogonalComplement(e, u);
+            }
+        }
+
+        // R = U V^T = sum of u_i v_i^T
+        var r = new float[d][d];
+        for (int row = 0; row < d; row++) {
+            for (int col = 0; col < d; col++) {
+                double sum = 0;
+                for (int i = 0; i < d; i++) {
+                    sum += u[i][row] * v[i][col];
+                }
+                r[row][col] = (float) sum;
+            }
+        }
+        return r;
+    }
+
+    /** @return `e` made orthogonal to the non-null vectors in `basis` and normalized, or null if it lies in their span */
+    private static double[] orthogonalComplement(double[] e, double[][] basis) {
+        // twice, for numerical stability
+        for (int pass = 0; pass < 2; pass++) {
+            for (var b : basis) {
+                if (b != null) {
+                    double projection = dot(e, b);
+                    for (int j = 0; j < e.length; j++) {
+                        e[j] -= projection * b[j];
+                    }
+                }
+            }
+        }
+        double norm = Math.sqrt(dot(e, e));
+        return norm < 1e-6 ? null : scale(e, 1 / norm);
+    }
+
+    private static void rotate(double[] x, double[] y, double c, double s) {
+        for (int i = 0; i < x.length; i++) {
+            double xi = x[i];
+            double yi = y[i];
+            x[i] = c * xi - s * yi;
+            y[i] = s * xi + c * yi;
+        }
+    }
+
+    private static double dot(double[] x, double[] y) {
+        double sum = 0;
+        for (int i = 0; i < x.length; i++) {
+            sum += x[i] * y[i];
+        }
+        return sum;
+    }
+
+    private static double[] scale(double[] x, double factor) {
+        var result = new double[x.length];
+        for (int i = 0; i < x.length; i++) {
+            result[i] = x[i] * factor;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.pq;
+
+import com.github.jbellis.jvector.disk.RandomAccessReader;
+import com.github.jbellis.jvector.graph.NeighborSimilarity;
+import com.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import com.github.jbellis.jvector.vector.VectorUtil;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * The codes of a set of vectors encoded with {@link ScalarQuantization}, scored with the byte
+ * kernels of {@link VectorUtil} when the dimensions share a scale.  The scores are the exact
+ * similarities of the decoded vectors.
+ * <p>
+ * When the dimensions share a scale, the square distance of the decoded vectors is proportional
+ * to that of the codes, so the codes can also be given directly to GraphIndexBuilder as
+ * {@link com.github.jbellis.jvector.vector.VectorEncoding#BYTE} vectors to build a graph for
+ * EUCLIDEAN; otherwise, or for the other similarities, use {@link #neighborSimilarity}.
+ */
+public class ScalarCompressedVectors
+{
+    private final ScalarQuantization sq;
+    private final List<byte[]> compressedVectors;
+    // ScalarQuantization.correction of each code
+    private final float[] corrections;
+    // the square of the norm of each decoded vector, for COSINE
+    private final float[] squaredNorms;
+
+    public ScalarCompressedVectors(ScalarQuantization sq, List<byte[]> compressedVectors)
+    {
+        this.sq = sq;
+        this.compressedVectors = compressedVectors;
+        this.corrections = new float[compressedVectors.size()];
+        this.squaredNorms = new float[compressedVectors.size()];
+        IntStream.range(0, compressedVectors.size()).parallel().forEach(i -> {
+            var code = compressedVectors.get(i);
+            corrections[i] = sq.correction(code);
+            squaredNorms[i] = squaredNorm(code, corrections[i]);
+        });
+    }
+
+    private float squaredNorm(byte[] code, float correction) {
+        return sq.getCentersDot() + 2 * correction + sq.codeDotProduct(code, code);
+    }
+
+    public void write(DataOutput out) throws IOException
+    {
+        sq.write(out);
+
+        out.writeInt(compressedVectors.size());
+        out.writeInt(sq.getOriginalDimension());
+        for (var v : compressedVectors) {
+            out.write(v);
+        }
+    }
+
+    public static ScalarCompressedVectors load(RandomAccessReader in, long offset) throws IOException
+    {
+        in.seek(offset);
+
+        var sq = ScalarQuantization.load(in);
+
+        int size = in.readInt();
+        var compressedVectors = new ArrayList<byte[]>(size);
+        int dimension = in.readInt();
+        for (int i = 0; i < size; i++)
+        {
+            byte[] vector = new byte[dimension];
+            in.readFully(vector);
+            compressedVectors.add(vector);
+        }
+
+        return new ScalarCompressedVectors(sq, compressedVectors);
+    }
+
+    /**
+     * @return a score function for `query`, which is quantized too, so that each score is a single
+     * byte kernel plus corrections
+     */
+    public NeighborSimilarity.ApproximateScoreFunction approximateScoreFunctionFor(float[] query, VectorSimilarityFunction similarityFunction)
+    {
+        var code = sq.encode(query);
+        float correction = sq.correction(code);
+        float squaredNorm = squaredNorm(code, correction);
+        return node -> similarity(code, correction, squaredNorm, node, similarityFunction);
+    }
+
+    /**
+     * @return the similarity of the decoded vectors, for comparing nodes with each other, as in
+     * a ConcurrentNeighborSet
+     */
+    public NeighborSimilarity neighborSimilarity(VectorSimilarityFunction similarityFunction)
+    {
+        return node1 -> (NeighborSimilarity.ApproximateScoreFunction) node2 ->
+                similarity(compressedVectors.get(node1), corrections[node1], squaredNorms[node1], node2, similarityFunction);
+    }
+
+    private float similarity(byte[] code, float correction, float squaredNorm, int node, VectorSimilarityFunction similarityFunction)
+    {
+        var other = compressedVectors.get(node);
+        if (similarityFunction == VectorSimilarityFunction.EUCLIDEAN) {
+            return 1 / (1 + sq.codeSquareDistance(code, other));
+        }
+
+        float dot = sq.getCentersDot() + correction + corrections[node] + sq.codeDotProduct(code, other);
+        if (similarityFunction == VectorSimilarityFunction.DOT_PRODUCT) {
+            return (1 + dot) / 2;
+        }
+        float cosine = (float) (dot / Math.sqrt((double) squaredNorm * squaredNorms[node]));
+        return (1 + cosine) / 2;
+    }
+
+    public ScalarQuantization getScalarQuantization()
+    {
+        return sq;
+    }
+
+    /** return the compressed vector of the given ordinal */
+    public byte[] get(int ordinal)
+    {
+        return compressedVectors.get(ordinal);
+    }
+
+    public int size()
+    {
+        return compressedVectors.size();
+    }
+}
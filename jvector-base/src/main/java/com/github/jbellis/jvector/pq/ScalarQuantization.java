@@ -0,0 +1,321 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.pq;
+
+import com.github.jbellis.jvector.disk.CorruptIndexException;
+import com.github.jbellis.jvector.disk.Io;
+import com.github.jbellis.jvector.disk.RandomAccessReader;
+import com.github.jbellis.jvector.vector.VectorUtil;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Quantizes each dimension of a vector to a signed byte, as x = center + scale * code, where the
+ * center is the midpoint of the range of the dimension (or of all dimensions) in the training
+ * vectors.
+ * <p>
+ * By default all dimensions share one scale, the one needed for the widest range, so that codes
+ * can be compared with the byte kernels of {@link VectorUtil}: the square distance of the
+ * decoded vectors is scale^2 times that of the codes, and their dot product differs from
+ * scale^2 times that of the codes by terms that depend on one code each
+ * (see {@link #correction}).  When the ranges of the dimensions differ widely, the narrow ones
+ * then get only a few distinct codes; giving each dimension its own scale keeps all 255 codes
+ * for each of them, at the cost of comparing codes with a weighted loop instead of the kernels.
+ */
+public class ScalarQuantization {
+    private static final int MAX_CODE = 127;
+
+    private final float[] centers;
+    private final float[] scales;
+    // the scale of every dimension, or NaN if they have their own
+    private final float sharedScale;
+    // center * scale of each dimension, for the corrections
+    private final float[] scaledCenters;
+    // centers . centers, the constant term of the dot product of two decoded vectors
+    private final float centersDot;
+
+    /**
+     * @param vectors the points to quantize
+     * @param perDimension whether to center each dimension on the midpoint of its own range,
+     *                     or all of them on the midpoint of the range of all the components
+     */
+    public ScalarQuantization(List<float[]> vectors, boolean perDimension) {
+        this(vectors, perDimension, false);
+    }
+
+    /**
+     * @param vectors the points to quantize
+     * @param perDimension whether to center each dimension on the midpoint of its own range,
+     *                     or all of them on the midpoint of the range of all the components
+     * @param perDimensionScales whether to fit the scale of each dimension to its own range, or
+     *                           share the one for the widest range so that codes can be compared
+     *                           with the byte kernels.  Only makes a difference with `perDimension`.
+     */
+    public ScalarQuantization(List<float[]> vectors, boolean perDimension, boolean perDimensionScales) {
+        this(rangesOf(vectors, perDimension), perDimensionScales);
+    }
+
+    private ScalarQuantization(float[][] minsAndMaxes, boolean perDimensionScales) {
+        this(centersOf(minsAndMaxes), scalesOf(minsAndMaxes, perDimensionScales));
+    }
+
+    /**
+     * @param centers the value of each dimension that is encoded as zero
+     * @param scale the difference between the values encoded by consecutive codes
+     */
+    public ScalarQuantization(float[] centers, float scale) {
+        this(centers, filled(centers.length, scale));
+    }
+
+    /**
+     * @param centers the value of each dimension that is encoded as zero
+     * @param scales the difference between the values encoded by consecutive codes, in each dimension
+     */
+    public ScalarQuantization(float[] centers, float[] scales) {
+        if (scales.length != centers.length) {
+            throw new IllegalArgumentException(String.format("%d scales do not match dimension %d", scales.length, centers.length));
+        }
+        for (float scale : scales) {
+            if (!(scale > 0) || !Float.isFinite(scale)) {
+                throw new IllegalArgumentException("Scale must be positive: " + scale);
+            }
+        }
+        this.centers = centers;
+        this.scales = scales;
+        this.sharedScale = isShared(scales) ? scales[0] : Float.NaN;
+        this.scaledCenters = new float[centers.length];
+        for (int i = 0; i < centers.length; i++) {
+            scaledCenters[i] = centers[i] * scales[i];
+        }
+        this.centersDot = VectorUtil.dotProduct(centers, centers);
+    }
+
+    private static float[] filled(int length, float value) {
+        var a = new float[length];
+        Arrays.fill(a, value);
+        return a;
+    }
+
+    private static boolean isShared(float[] scales) {
+        for (float scale : scales) {
+            if (Float.compare(scale, scales[0]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return the minimum and maximum of each dimension, or of all of them repeated for each dimension */
+    private static float[][] rangesOf(List<float[]> vectors, boolean perDimension) {
+        int dimension = vectors.get(0).length;
+        var mins = new float[dimension];
+        var maxes = new float[dimension];
+        Arrays.fill(mins, Float.MAX_VALUE);
+        Arrays.fill(maxes, -Float.MAX_VALUE);
+        for (var v : vectors) {
+            for (int i = 0; i < dimension; i++) {
+                mins[i] = Math.min(mins[i], v[i]);
+                maxes[i] = Math.max(maxes[i], v[i]);
+            }
+        }
+        if (!perDimension) {
+            float min = Float.MAX_VALUE;
+            float max = -Float.MAX_VALUE;
+            for (int i = 0; i < dimension; i++) {
+                min = Math.min(min, mins[i]);
+                max = Math.max(max, maxes[i]);
+            }
+            Arrays.fill(mins, min);
+            Arrays.fill(maxes, max);
+        }
+        return new float[][] { mins, maxes };
+    }
+
+    private static float[] centersOf(float[][] minsAndMaxes) {
+        var centers = new float[minsAndMaxes[0].length];
+        for (int i = 0; i < centers.length; i++) {
+            centers[i] = (minsAndMaxes[0][i] + minsAndMaxes[1][i]) / 2;
+        }
+        return centers;
+    }
+
+    private static float[] scalesOf(float[][] minsAndMaxes, boolean perDimension) {
+        var scales = new float[minsAndMaxes[0].length];
+        float widest = 0;
+        for (int i = 0; i < scales.length; i++) {
+            scales[i] = scaleOf(minsAndMaxes[1][i] - minsAndMaxes[0][i]);
+            widest = Math.max(widest, minsAndMaxes[1][i] - minsAndMaxes[0][i]);
+        }
+        if (!perDimension) {
+            Arrays.fill(scales, scaleOf(widest));
+        }
+        return scales;
+    }
+
+    private static float scaleOf(float range) {
+        // if every value is the same, any scale will do
+        return range > 0 ? range / (2 * MAX_CODE) : 1;
+    }
+
+    /**
+     * Encodes the given vectors in parallel.
+     */
+    public List<byte[]> encodeAll(List<float[]> vectors) {
+        return vectors.stream().parallel().map(this::encode).collect(Collectors.toList());
+    }
+
+    /**
+     * @return one signed byte per dimension; values outside the training range are clamped to it
+     */
+    public byte[] encode(float[] vector) {
+        if (vector.length != centers.length) {
+            throw new IllegalArgumentException(String.format("Vector dimension %d does not match %d", vector.length, centers.length));
+        }
+        var encoded = new byte[centers.length];
+        for (int i = 0; i < centers.length; i++) {
+            int code = Math.round((vector[i] - centers[i]) / scales[i]);
+            encoded[i] = (byte) Math.max(-MAX_CODE, Math.min(MAX_CODE, code));
+        }
+        return encoded;
+    }
+
+    /**
+     * Decodes the quantized representation to its approximate original vector.
+     */
+    public void decode(byte[] encoded, float[] target) {
+        for (int i = 0; i < centers.length; i++) {
+            target[i] = centers[i] + scales[i] * encoded[i];
+        }
+    }
+
+    /**
+     * @return the part of the dot product of the decoded vector with any other that depends only
+     * on this code, (centers * scales) . code, so that the dot product of two decoded vectors is
+     * {@link #getCentersDot()} + both corrections + {@link #codeDotProduct} of the codes
+     */
+    public float correction(byte[] encoded) {
+        float sum = 0;
+        for (int i = 0; i < centers.length; i++) {
+            sum += scaledCenters[i] * encoded[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @return the dot product of the codes with each dimension multiplied by its scale, i.e. of
+     * the decoded vectors less their centers
+     */
+    public float codeDotProduct(byte[] a, byte[] b) {
+        if (hasSharedScale()) {
+            return sharedScale * sharedScale * VectorUtil.dotProduct(a, b);
+        }
+        float sum = 0;
+        for (int i = 0; i < scales.length; i++) {
+            sum += scales[i] * scales[i] * a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @return the square distance of the decoded vectors
+     */
+    public float codeSquareDistance(byte[] a, byte[] b) {
+        if (hasSharedScale()) {
+            return sharedScale * sharedScale * VectorUtil.squareDistance(a, b);
+        }
+        float sum = 0;
+        for (int i = 0; i < scales.length; i++) {
+            float diff = scales[i] * (a[i] - b[i]);
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    /**
+     * @return true if every dimension has the same scale, so that codes are compared with the byte kernels
+     */
+    public boolean hasSharedScale() {
+        return !Float.isNaN(sharedScale);
+    }
+
+    /**
+     * @return the difference between the values encoded by consecutive codes in the given dimension
+     */
+    public float getScale(int dimension) {
+        return scales[dimension];
+    }
+
+    /**
+     * @return the dot product of the centers with themselves
+     */
+    public float getCentersDot() {
+        return centersDot;
+    }
+
+    /**
+     * @return The dimension of the vectors being quantized.
+     */
+    public int getOriginalDimension() {
+        return centers.length;
+    }
+
+    public void write(DataOutput out) throws IOException
+    {
+        out.writeInt(centers.length);
+        Io.writeFloats(out, centers);
+        if (hasSharedScale()) {
+            out.writeInt(1);
+            out.writeFloat(sharedScale);
+        } else {
+            out.writeInt(scales.length);
+            Io.writeFloats(out, scales);
+        }
+    }
+
+    public static ScalarQuantization load(RandomAccessReader in) throws IOException {
+        int dimension = in.readInt();
+        var centers = new float[dimension];
+        in.readFully(centers);
+        int scaleCount = in.readInt();
+        if (scaleCount == 1) {
+            return new ScalarQuantization(centers, in.readFloat());
+        }
+        if (scaleCount != dimension) {
+            throw new CorruptIndexException(String.format("%d scales do not match dimension %d", scaleCount, dimension));
+        }
+        var scales = new float[dimension];
+        in.readFully(scales);
+        return new ScalarQuantization(centers, scales);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ScalarQuantization that = (ScalarQuantization) o;
+        return Arrays.equals(scales, that.scales) && Arrays.equals(centers, that.centers);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(scales) + Arrays.hashCode(centers);
+    }
+}
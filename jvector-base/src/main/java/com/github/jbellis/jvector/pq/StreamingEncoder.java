@@ -0,0 +1,170 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.pq;
+
+import com.github.jbellis.jvector.graph.RandomAccessVectorValues;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Encodes vectors with a {@link ProductQuantization} as they arrive, in chunks, into a
+ * single contiguous array or straight to an output, without materializing a List of vectors
+ * or of codes.  The codes of consecutive vectors are laid out one after another, M bytes each,
+ * as in the body of {@link com.github.jbellis.jvector.disk.CompressedVectors#write}.
+ * <p>
+ * The encoder also tracks the quantization error of the vectors it encodes, as a moving average
+ * over recent chunks, and compares it with the error of the vectors the codebooks were built
+ * for.  When new vectors no longer look like those, the error rises and {@link #hasDrifted}
+ * reports that the codebooks should be retrained, before it shows up as falling recall.
+ */
+public class StreamingEncoder {
+    private static final int CHUNK_SIZE = 1024;
+    // weight of each chunk in the moving average of the error, so roughly the last 20 chunks count
+    private static final double SMOOTHING = 0.05;
+
+    private final ProductQuantization pq;
+    private final double baselineError;
+
+    private long encodedCount;
+    private double totalError;
+    private double recentError = Double.NaN;
+
+    /**
+     * @param baselineError the mean square quantization error expected of vectors like those the
+     *                      codebooks were trained on, e.g. {@link #meanError} of a sample of them
+     *                      that were not used for training (the codebooks fit those more closely)
+     */
+    public StreamingEncoder(ProductQuantization pq, double baselineError) {
+        if (!(baselineError >= 0)) {
+            throw new IllegalArgumentException("Baseline error must not be negative: " + baselineError);
+        }
+        this.pq = pq;
+        this.baselineError = baselineError;
+    }
+
+    /**
+     * @return the mean square distance between the given vectors and their decoded approximations
+     */
+    public static double meanError(ProductQuantization pq, List<float[]> vectors) {
+        var scratch = new byte[pq.getSubspaceCount()];
+        double error = 0;
+        for (var v : vectors) {
+            error += pq.encodeTo(v, scratch, 0);
+        }
+        return error / vectors.size();
+    }
+
+    /**
+     * Encodes every vector of `ravv`, in parallel chunks that each read through their own copy of it.
+     * The error of each chunk is recorded in ordinal order once they are all done, so the moving
+     * average does not depend on which chunks finished first.
+     *
+     * @return the codes of all the vectors, M bytes each, in ordinal order
+     */
+    public byte[] encodeAll(RandomAccessVectorValues<float[]> ravv) {
+        int M = pq.getSubspaceCount();
+        var codes = new byte[Math.multiplyExact(ravv.size(), M)];
+        int chunks = (ravv.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        var errors = new double[chunks];
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            var values = ravv.copy();
+            int start = chunk * CHUNK_SIZE;
+            int end = Math.min(ravv.size(), start + CHUNK_SIZE);
+            double error = 0;
+            for (int i = start; i < end; i++) {
+                error += pq.encodeTo(values.vectorValue(i), codes, i * M);
+            }
+            errors[chunk] = error;
+        });
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int start = chunk * CHUNK_SIZE;
+            record(Math.min(ravv.size(), start + CHUNK_SIZE) - start, errors[chunk]);
+        }
+        return codes;
+    }
+
+    /**
+     * Encodes the vectors from `vectors` and writes their codes to `out`, a chunk at a time.
+     * Each vector is encoded as soon as it is read, on the calling thread, so the iterator may
+     * reuse its arrays; use {@link #encodeAll} to encode vectors that can be read in parallel.
+     *
+     * @return the number of vectors encoded
+     */
+    public long encodeTo(Iterator<float[]> vectors, DataOutput out) throws IOException {
+        int M = pq.getSubspaceCount();
+        var codes = new byte[CHUNK_SIZE * M];
+        long count = 0;
+        while (vectors.hasNext()) {
+            int n = 0;
+            double error = 0;
+            while (n < CHUNK_SIZE && vectors.hasNext()) {
+                error += pq.encodeTo(vectors.next(), codes, n * M);
+                n++;
+            }
+            record(n, error);
+            out.write(codes, 0, n * M);
+            count += n;
+        }
+        return count;
+    }
+
+    private synchronized void record(int count, double error) {
+        encodedCount += count;
+        totalError += error;
+        double chunkError = error / count;
+        recentError = Double.isNaN(recentError) ? chunkError : (1 - SMOOTHING) * recentError + SMOOTHING * chunkError;
+    }
+
+    /**
+     * @return true if the recent mean square quantization error exceeds the baseline by more
+     * than a factor of `tolerance`
+     */
+    public synchronized boolean hasDrifted(double tolerance) {
+        return recentError > tolerance * baselineError;
+    }
+
+    /**
+     * @return a moving average of the mean square quantization error of recently encoded vectors,
+     * or NaN if none have been encoded
+     */
+    public synchronized double getRecentError() {
+        return recentError;
+    }
+
+    /**
+     * @return the mean square quantization error of all the vectors encoded so far
+     */
+    public synchronized double getMeanError() {
+        return encodedCount == 0 ? Double.NaN : totalError / encodedCount;
+    }
+
+    public double getBaselineError() {
+        return baselineError;
+    }
+
+    public synchronized long getEncodedCount() {
+        return encodedCount;
+    }
+
+    public ProductQuantization getProductQuantization() {
+        return pq;
+    }
+}
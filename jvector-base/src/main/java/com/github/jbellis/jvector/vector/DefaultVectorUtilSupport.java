@@ -24,6 +24,8 @@
 
 package com.github.jbellis.jvector.vector;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.List;
 
 final class DefaultVectorUtilSupport implements VectorUtilSupport {
@@ -156,6 +158,112 @@ final class DefaultVectorUtilSupport implements VectorUtilSupport {
         + diff7 * diff7;
   }
 
+  @Override
+  public float dotProduct(float[] a, ByteBuffer b, int bOffset) {
+    float sum = 0f;
+    for (int i = 0; i < a.length; i++) {
+      sum += a[i] * b.getFloat(bOffset + i * Float.BYTES);
+    }
+    return sum;
+  }
+
+  @Override
+  public float cosine(float[] a, ByteBuffer b, int bOffset) {
+    float sum = 0.0f;
+    float norm1 = 0.0f;
+    float norm2 = 0.0f;
+
+    for (int i = 0; i < a.length; i++) {
+      float elem1 = a[i];
+      float elem2 = b.getFloat(bOffset + i * Float.BYTES);
+      sum += elem1 * elem2;
+      norm1 += elem1 * elem1;
+      norm2 += elem2 * elem2;
+    }
+    return (float) (sum / Math.sqrt((double) norm1 * (double) norm2));
+  }
+
+  @Override
+  public float squareDistance(float[] a, ByteBuffer b, int bOffset) {
+    float squareSum = 0.0f;
+    for (int i = 0; i < a.length; i++) {
+      float diff = a[i] - b.getFloat(bOffset + i * Float.BYTES);
+      squareSum += diff * diff;
+    }
+    return squareSum;
+  }
+
+  @Override
+  public float dotProduct(float[] a, short[] b, int bOffset) {
+    float sum = 0f;
+    for (int i = 0; i < a.length; i++) {
+      sum += a[i] * Float16.toFloat(b[bOffset + i]);
+    }
+    return sum;
+  }
+
+  @Override
+  public float cosine(float[] a, short[] b, int bOffset) {
+    float sum = 0.0f;
+    float norm1 = 0.0f;
+    float norm2 = 0.0f;
+
+    for (int i = 0; i < a.length; i++) {
+      float elem1 = a[i];
+      float elem2 = Float16.toFloat(b[bOffset + i]);
+      sum += elem1 * elem2;
+      norm1 += elem1 * elem1;
+      norm2 += elem2 * elem2;
+    }
+    return (float) (sum / Math.sqrt((double) norm1 * (double) norm2));
+  }
+
+  @Override
+  public float squareDistance(float[] a, short[] b, int bOffset) {
+    float squareSum = 0.0f;
+    for (int i = 0; i < a.length; i++) {
+      float diff = a[i] - Float16.toFloat(b[bOffset + i]);
+      squareSum += diff * diff;
+    }
+    return squareSum;
+  }
+
+  @Override
+  public float squareDistance(float[] a, int aoffset, float[] b, int boffset, int length) {
+    float squareSum = 0.0f;
+    for (int i = 0; i < length; i++) {
+      float diff = a[aoffset + i] - b[boffset + i];
+      squareSum += diff * diff;
+    }
+    return squareSum;
+  }
+
+  @Override
+  public void squareDistances(float[] a, int aoffset, int dimension, float[] columns, int columnsOffset, int count, float[] distances) {
+    Arrays.fill(distances, 0, count, 0.0f);
+    for (int j = 0; j < dimension; j++) {
+      float x = a[aoffset + j];
+      int column = columnsOffset + j * count;
+      for (int i = 0; i < count; i++) {
+        float diff = x - columns[column + i];
+        distances[i] += diff * diff;
+      }
+    }
+  }
+
+  @Override
+  public void fastScanBlock(byte[] codes, int offset, byte[] table, int pairs, int[] sums) {
+    for (int j = 0; j < 16; j++) {
+      int sum = 0;
+      for (int p = 0; p < pairs; p++) {
+        int code = codes[offset + 16 * p + j];
+        sum += Byte.toUnsignedInt(table[32 * p + (code & 0x0f)]);
+        sum += Byte.toUnsignedInt(table[32 * p + 16 + ((code >> 4) & 0x0f)]);
+      }
+      sums[j] = sum;
+    }
+  }
+
   @Override
   public int dotProduct(byte[] a, byte[] b) {
     int total = 0;
@@ -193,6 +301,15 @@ final class DefaultVectorUtilSupport implements VectorUtilSupport {
     return squareSum;
   }
 
+  @Override
+  public int hammingDistance(long[] a, long[] b) {
+    int distance = 0;
+    for (int i = 0; i < a.length; i++) {
+      distance += Long.bitCount(a[i] ^ b[i]);
+    }
+    return distance;
+  }
+
   @Override
   public float[] sum(List<float[]> vectors) {
     float[] sum = new float[vectors.get(0).length];
@@ -235,4 +352,11 @@ final class DefaultVectorUtilSupport implements VectorUtilSupport {
     }
     return result;
   }
+
+  @Override
+  public void subInPlace(float[] v1, float[] v2) {
+    for (int i = 0; i < v1.length; i++) {
+      v1[i] -= v2[i];
+    }
+  }
 }
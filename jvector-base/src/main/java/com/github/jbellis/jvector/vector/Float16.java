@@ -0,0 +1,102 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.vector;
+
+/**
+ * Conversions between float and IEEE 754 half-precision (binary16) values, which are
+ * represented as the raw bits in a short.  (Float.floatToFloat16 and friends only arrived
+ * in Java 20.)
+ */
+public final class Float16 {
+    private Float16() {
+    }
+
+    public static float toFloat(short half) {
+        int bits = half & 0xffff;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1f;
+        int mantissa = bits & 0x3ff;
+        if (exponent == 0x1f) {
+            // infinity or NaN
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        if (exponent == 0) {
+            // zero or subnormal
+            float f = mantissa * 0x1p-24f;
+            return sign == 0 ? f : -f;
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 127 - 15) << 23) | (mantissa << 13));
+    }
+
+    /**
+     * @return the half-precision value nearest to `f`, rounding ties to even.  Values too large
+     * to represent become infinity.
+     */
+    public static short fromFloat(float f) {
+        int bits = Float.floatToRawIntBits(f);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xff;
+        int mantissa = bits & 0x7fffff;
+        if (exponent == 0xff) {
+            // infinity, or NaN (kept quiet so that it doesn't truncate to infinity)
+            return (short) (sign | 0x7c00 | (mantissa == 0 ? 0 : 0x200 | (mantissa >>> 13)));
+        }
+
+        int halfExponent = exponent - 127 + 15;
+        if (halfExponent >= 0x1f) {
+            return (short) (sign | 0x7c00);
+        }
+        if (halfExponent <= 0) {
+            // subnormal, or too small to represent at all
+            if (halfExponent < -10) {
+                return (short) sign;
+            }
+            mantissa |= 0x800000;
+            int shift = 14 - halfExponent;
+            return (short) (sign | roundShift(mantissa, shift));
+        }
+        // rounding may carry into the exponent, which is what we want (up to and including infinity)
+        return (short) (sign | ((halfExponent << 10) + roundShift(mantissa, 13)));
+    }
+
+    /** @return value >>> shift, rounded to the nearest integer with ties to even */
+    private static int roundShift(int value, int shift) {
+        int result = value >>> shift;
+        int remainder = value & ((1 << shift) - 1);
+        int halfway = 1 << (shift - 1);
+        if (remainder > halfway || (remainder == halfway && (result & 1) != 0)) {
+            result++;
+        }
+        return result;
+    }
+
+    /** @return the half-precision encoding of `v` */
+    public static short[] fromFloats(float[] v) {
+        var halves = new short[v.length];
+        for (int i = 0; i < v.length; i++) {
+            halves[i] = fromFloat(v[i]);
+        }
+        return halves;
+    }
+
+    /** Decodes `target.length` half-precision values starting at `offset` into `target` */
+    public static void toFloats(short[] halves, int offset, float[] target) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] = toFloat(halves[offset + i]);
+        }
+    }
+}
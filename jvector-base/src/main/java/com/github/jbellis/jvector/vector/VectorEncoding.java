@@ -24,7 +24,11 @@
 
 package com.github.jbellis.jvector.vector;
 
-/** The numeric datatype of the vector values. */
+/**
+ * The numeric datatype of the vector values.
+ * <p>
+ * OnDiskGraphIndex persists the ordinal, so new encodings must be added at the end.
+ */
 public enum VectorEncoding {
 
   /**
@@ -36,7 +40,14 @@ public enum VectorEncoding {
   BYTE(1),
 
   /** Encodes vector using 32 bits of precision per sample in IEEE floating point format. */
-  FLOAT32(4);
+  FLOAT32(4),
+
+  /**
+   * Encodes vector using 16 bits of precision per sample in IEEE half-precision format (see
+   * {@link Float16}).  This is a storage format: the vectors are still presented as float[],
+   * at half the memory or disk footprint of FLOAT32 and with about three decimal digits of precision.
+   */
+  FLOAT16(2);
 
   /**
    * The number of bytes required to encode a scalar in this format. A vector will nominally require
@@ -24,6 +24,8 @@
 
 package com.github.jbellis.jvector.vector;
 
+import java.nio.ByteBuffer;
+
 import static com.github.jbellis.jvector.vector.VectorUtil.cosine;
 import static com.github.jbellis.jvector.vector.VectorUtil.dotProduct;
 import static com.github.jbellis.jvector.vector.VectorUtil.dotProductScore;
@@ -47,6 +49,21 @@ public enum VectorSimilarityFunction {
     public float compare(byte[] v1, byte[] v2) {
       return 1 / (1f + squareDistance(v1, v2));
     }
+
+    @Override
+    public float compare(float[] v1, ByteBuffer v2, int v2Offset) {
+      return 1 / (1 + squareDistance(v1, v2, v2Offset));
+    }
+
+    @Override
+    public float compare(float[] v1, short[] v2, int v2Offset) {
+      return 1 / (1 + squareDistance(v1, v2, v2Offset));
+    }
+
+    @Override
+    public float compare(float[] v1, float[] v2, int v2Offset) {
+      return 1 / (1 + squareDistance(v1, 0, v2, v2Offset, v1.length));
+    }
   },
 
   /**
@@ -66,6 +83,21 @@ public enum VectorSimilarityFunction {
     public float compare(byte[] v1, byte[] v2) {
       return dotProductScore(v1, v2);
     }
+
+    @Override
+    public float compare(float[] v1, ByteBuffer v2, int v2Offset) {
+      return (1 + dotProduct(v1, v2, v2Offset)) / 2;
+    }
+
+    @Override
+    public float compare(float[] v1, short[] v2, int v2Offset) {
+      return (1 + dotProduct(v1, v2, v2Offset)) / 2;
+    }
+
+    @Override
+    public float compare(float[] v1, float[] v2, int v2Offset) {
+      return (1 + dotProduct(v1, 0, v2, v2Offset, v1.length)) / 2;
+    }
   },
 
   /**
@@ -84,6 +116,25 @@ public enum VectorSimilarityFunction {
     public float compare(byte[] v1, byte[] v2) {
       return (1 + cosine(v1, v2)) / 2;
     }
+
+    @Override
+    public float compare(float[] v1, ByteBuffer v2, int v2Offset) {
+      return (1 + cosine(v1, v2, v2Offset)) / 2;
+    }
+
+    @Override
+    public float compare(float[] v1, short[] v2, int v2Offset) {
+      return (1 + cosine(v1, v2, v2Offset)) / 2;
+    }
+
+    @Override
+    public float compare(float[] v1, float[] v2, int v2Offset) {
+      float dot = dotProduct(v1, 0, v2, v2Offset, v1.length);
+      float norm1 = dotProduct(v1, 0, v1, 0, v1.length);
+      float norm2 = dotProduct(v2, v2Offset, v2, v2Offset, v1.length);
+      float cosine = (float) (dot / Math.sqrt((double) norm1 * (double) norm2));
+      return (1 + cosine) / 2;
+    }
   };
 
   /**
@@ -106,4 +157,38 @@ public enum VectorSimilarityFunction {
    * @return the value of the similarity function applied to the two vectors
    */
   public abstract float compare(byte[] v1, byte[] v2);
+
+  /**
+   * Calculates a similarity score between a vector and another vector of the same dimension that
+   * is stored as floats in a ByteBuffer, such as a memory-mapped index file, without copying
+   * the latter into an array.
+   *
+   * @param v1 a vector
+   * @param v2 a buffer containing v1.length floats at v2Offset, in the buffer's byte order
+   * @param v2Offset the offset in bytes of the vector in v2
+   * @return the value of the similarity function applied to the two vectors
+   */
+  public abstract float compare(float[] v1, ByteBuffer v2, int v2Offset);
+
+  /**
+   * Calculates a similarity score between a vector and a half-precision vector of the same
+   * dimension, without converting the latter to floats.
+   *
+   * @param v1 a vector
+   * @param v2 an array containing v1.length half-precision values (see {@link Float16}) at v2Offset
+   * @param v2Offset the index of the first value of the vector in v2
+   * @return the value of the similarity function applied to the two vectors
+   */
+  public abstract float compare(float[] v1, short[] v2, int v2Offset);
+
+  /**
+   * Calculates a similarity score between a vector and another vector of the same dimension that
+   * is stored in a larger array, such as a packed cache of vectors, without copying it out.
+   *
+   * @param v1 a vector
+   * @param v2 an array containing v1.length values at v2Offset
+   * @param v2Offset the index of the first value of the vector in v2
+   * @return the value of the similarity function applied to the two vectors
+   */
+  public abstract float compare(float[] v1, float[] v2, int v2Offset);
 }
@@ -24,6 +24,7 @@
 
 package com.github.jbellis.jvector.vector;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 
 /** Utilities for computations with numeric arrays */
@@ -103,6 +104,123 @@ public final class VectorUtil {
     return impl.squareDistance(a, b);
   }
 
+  /** Returns the number of bits that differ between the two bit vectors. */
+  public static int hammingDistance(long[] a, long[] b) {
+    if (a.length != b.length) {
+      throw new IllegalArgumentException("vector dimensions differ: " + a.length + "!=" + b.length);
+    }
+    return impl.hammingDistance(a, b);
+  }
+
+  /**
+   * Returns the dot product of `a` with the a.length floats stored in `b` at byte offset `bOffset`.
+   * The vector in the buffer is read in place, without copying it into an array.
+   *
+   * @throws IllegalArgumentException if the buffer does not contain enough floats at the offset.
+   */
+  public static float dotProduct(float[] a, ByteBuffer b, int bOffset) {
+    checkBufferBounds(a, b, bOffset);
+    float r = impl.dotProduct(a, b, bOffset);
+    assert Float.isFinite(r);
+    return r;
+  }
+
+  /** Returns the cosine similarity of `a` with the a.length floats stored in `b` at byte offset `bOffset`. */
+  public static float cosine(float[] a, ByteBuffer b, int bOffset) {
+    checkBufferBounds(a, b, bOffset);
+    float r = impl.cosine(a, b, bOffset);
+    assert Float.isFinite(r);
+    return r;
+  }
+
+  /** Returns the sum of squared differences of `a` and the a.length floats stored in `b` at byte offset `bOffset`. */
+  public static float squareDistance(float[] a, ByteBuffer b, int bOffset) {
+    checkBufferBounds(a, b, bOffset);
+    float r = impl.squareDistance(a, b, bOffset);
+    assert Float.isFinite(r);
+    return r;
+  }
+
+  /**
+   * Returns the dot product of `a` with the a.length half-precision values (see {@link Float16})
+   * in `b` starting at `bOffset`, without converting them to a float array.
+   */
+  public static float dotProduct(float[] a, short[] b, int bOffset) {
+    checkFloat16Bounds(a, b, bOffset);
+    float r = impl.dotProduct(a, b, bOffset);
+    assert Float.isFinite(r);
+    return r;
+  }
+
+  /** Returns the cosine similarity of `a` with the a.length half-precision values in `b` starting at `bOffset`. */
+  public static float cosine(float[] a, short[] b, int bOffset) {
+    checkFloat16Bounds(a, b, bOffset);
+    float r = impl.cosine(a, b, bOffset);
+    assert Float.isFinite(r);
+    return r;
+  }
+
+  /** Returns the sum of squared differences of `a` and the a.length half-precision values in `b` starting at `bOffset`. */
+  public static float squareDistance(float[] a, short[] b, int bOffset) {
+    checkFloat16Bounds(a, b, bOffset);
+    float r = impl.squareDistance(a, b, bOffset);
+    assert Float.isFinite(r);
+    return r;
+  }
+
+  /** Returns the sum of squared differences of the `length` floats of `a` and `b` starting at their offsets. */
+  public static float squareDistance(float[] a, int aoffset, float[] b, int boffset, int length) {
+    if (aoffset < 0 || boffset < 0 || length < 0 || aoffset + length > a.length || boffset + length > b.length) {
+      throw new IllegalArgumentException(String.format("Arrays of %d and %d floats do not contain %d at offsets %d and %d",
+                                                       a.length, b.length, length, aoffset, boffset));
+    }
+    float r = impl.squareDistance(a, aoffset, b, boffset, length);
+    assert Float.isFinite(r);
+    return r;
+  }
+
+  /**
+   * Computes the square distance from the `dimension` floats of `a` at `aoffset` to each of the
+   * `count` vectors stored transposed in `columns` at `columnsOffset`; see {@link VectorUtilSupport#squareDistances}
+   * for the layout.
+   */
+  public static void squareDistances(float[] a, int aoffset, int dimension, float[] columns, int columnsOffset, int count, float[] distances) {
+    if (aoffset < 0 || dimension < 0 || count < 0 || aoffset + dimension > a.length
+        || columnsOffset < 0 || columnsOffset + (long) dimension * count > columns.length || count > distances.length) {
+      throw new IllegalArgumentException(String.format("Arrays of %d, %d and %d floats are too small for %d vectors of dimension %d at offsets %d and %d",
+                                                       a.length, columns.length, distances.length, count, dimension, aoffset, columnsOffset));
+    }
+    impl.squareDistances(a, aoffset, dimension, columns, columnsOffset, count, distances);
+  }
+
+  /**
+   * Sums the 4-bit table lookups of the block of 16 fast-scan PQ codes at `offset`; see
+   * {@link VectorUtilSupport#fastScanBlock} for the layout.  Each sum must fit in 16 bits,
+   * so `pairs` may be at most 128.
+   */
+  public static void fastScanBlock(byte[] codes, int offset, byte[] table, int pairs, int[] sums) {
+    if (pairs < 0 || pairs > 128) {
+      throw new IllegalArgumentException("pairs must be between 0 and 128: " + pairs);
+    }
+    if (offset < 0 || offset + 16 * pairs > codes.length || 32 * pairs > table.length || sums.length < 16) {
+      throw new IllegalArgumentException(String.format("Arrays of %d codes, %d table entries and %d sums are too small for %d pairs at offset %d",
+                                                       codes.length, table.length, sums.length, pairs, offset));
+    }
+    impl.fastScanBlock(codes, offset, table, pairs, sums);
+  }
+
+  private static void checkFloat16Bounds(float[] a, short[] b, int bOffset) {
+    if (bOffset < 0 || bOffset + a.length > b.length) {
+      throw new IllegalArgumentException("array of " + b.length + " values does not contain " + a.length + " at offset " + bOffset);
+    }
+  }
+
+  private static void checkBufferBounds(float[] a, ByteBuffer b, int bOffset) {
+    if (bOffset < 0 || bOffset + (long) a.length * Float.BYTES > b.limit()) {
+      throw new IllegalArgumentException("buffer of " + b.limit() + " bytes does not contain " + a.length + " floats at offset " + bOffset);
+    }
+  }
+
   /**
    * Modifies the argument to be unit length, dividing by its l2-norm. IllegalArgumentException is
    * thrown for zero vectors.
@@ -220,4 +338,11 @@ public final class VectorUtil {
   public static float[] sub(float[] lhs, float[] rhs) {
     return impl.sub(lhs, rhs);
   }
+
+  public static void subInPlace(float[] v1, float[] v2) {
+    if (v1.length != v2.length) {
+      throw new IllegalArgumentException("vector dimensions differ: " + v1.length + "!=" + v2.length);
+    }
+    impl.subInPlace(v1, v2);
+  }
 }
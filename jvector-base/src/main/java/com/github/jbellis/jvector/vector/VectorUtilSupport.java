@@ -24,6 +24,7 @@
 
 package com.github.jbellis.jvector.vector;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 
 /**
@@ -43,6 +44,50 @@ public interface VectorUtilSupport {
   /** Returns the sum of squared differences of the two vectors. */
   float squareDistance(float[] a, float[] b);
 
+  /** Returns the sum of squared differences of subsets of the given float arrays */
+  float squareDistance(float[] a, int aoffset, float[] b, int boffset, int length);
+
+  /**
+   * Computes the square distance from the `dimension` floats of `a` starting at `aoffset` to each
+   * of `count` vectors stored transposed in `columns` starting at `columnsOffset`, so that
+   * component j of vector i is columns[columnsOffset + j * count + i].  The distance to vector i is written to distances[i].  This lets
+   * short vectors (such as PQ subvectors) be compared with many others at once.
+   */
+  void squareDistances(float[] a, int aoffset, int dimension, float[] columns, int columnsOffset, int count, float[] distances);
+
+  /**
+   * Calculates the dot product of a float array with the same number of floats stored in a ByteBuffer
+   * (in the buffer's byte order), starting at the given byte offset.  Uses absolute reads, so the
+   * buffer's position is ignored and not modified.
+   */
+  float dotProduct(float[] a, ByteBuffer b, int bOffset);
+
+  /** Returns the cosine similarity between a float array and floats stored in a ByteBuffer. */
+  float cosine(float[] a, ByteBuffer b, int bOffset);
+
+  /** Returns the sum of squared differences between a float array and floats stored in a ByteBuffer. */
+  float squareDistance(float[] a, ByteBuffer b, int bOffset);
+
+  /**
+   * Calculates the dot product of a float array with the a.length half-precision values
+   * (see {@link Float16}) starting at index bOffset of b, without converting b to a float array.
+   */
+  float dotProduct(float[] a, short[] b, int bOffset);
+
+  /** Returns the cosine similarity between a float array and half-precision values. */
+  float cosine(float[] a, short[] b, int bOffset);
+
+  /** Returns the sum of squared differences between a float array and half-precision values. */
+  float squareDistance(float[] a, short[] b, int bOffset);
+
+  /**
+   * Sums the 4-bit table lookups of a block of 16 fast-scan PQ codes.  For each of `pairs` subspace
+   * pairs p, the 16 bytes starting at codes[offset + 16p] hold one byte per vector; its low nibble
+   * indexes the 16 unsigned bytes starting at table[32p], and its high nibble the 16 starting at
+   * table[32p + 16].  The sum for each vector is written to sums[0..16).
+   */
+  void fastScanBlock(byte[] codes, int offset, byte[] table, int pairs, int[] sums);
+
   /** Returns the dot product computed over signed bytes. */
   int dotProduct(byte[] a, byte[] b);
 
@@ -52,6 +97,9 @@ public interface VectorUtilSupport {
   /** Returns the sum of squared differences of the two byte vectors. */
   int squareDistance(byte[] a, byte[] b);
 
+  /** Returns the number of bits that differ between the two bit vectors, packed 64 to a long. */
+  int hammingDistance(long[] a, long[] b);
+
   /** returns the sum of the given vectors. */
   float[] sum(List<float[]> vectors);
 
@@ -66,4 +114,7 @@ public interface VectorUtilSupport {
 
   /** @return lhs - rhs, element-wise */
   public float[] sub(float[] lhs, float[] rhs);
+
+  /** Subtracts v2 from v1, in place (v1 will be modified) */
+  public void subInPlace(float[] v1, float[] v2);
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.disk;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.github.jbellis.jvector.TestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class TestDirectReaderSupplier extends RandomizedTest {
+    private Path testDirectory;
+    private Path path;
+    private int[] ints;
+
+    @Before
+    public void setup() throws IOException {
+        testDirectory = Files.createTempDirectory(this.getClass().getSimpleName());
+        // an odd-length prefix, so that the ints straddle blocks
+        ints = new int[100_000];
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = getRandom().nextInt();
+        }
+        path = testDirectory.resolve("data");
+        try (var out = TestUtil.openFileForWriting(path)) {
+            out.write(new byte[3]);
+            for (int i : ints) {
+                out.writeInt(i);
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        TestUtil.deleteQuietly(testDirectory);
+    }
+
+    @Test
+    public void testReads() throws Exception {
+        // a pool much smaller than the file
+        try (var supplier = new DirectReaderSupplier(path, 4096, 3 * 8192)) {
+            assertTrue(supplier.ramBytesUsed() <= 3 * 8192);
+            var reader = supplier.get();
+            assertEquals(3 + 4L * ints.length, reader.length());
+
+            reader.seek(3);
+            var actual = new int[ints.length];
+            reader.readFully(actual);
+            assertArrayEquals(ints, actual);
+
+            for (int i = 0; i < 1000; i++) {
+                int j = getRandom().nextInt(ints.length - 1);
+                reader.seek(3 + 4L * j);
+                assertEquals(ints[j], reader.readInt());
+                assertEquals(Float.intBitsToFloat(ints[j + 1]), reader.readFloat(), 0.0f);
+                reader.seek(3 + 4L * j);
+                assertEquals(((long) ints[j] << 32) | (ints[j + 1] & 0xFFFFFFFFL), reader.readLong());
+            }
+
+            reader.seek(reader.length() - 2);
+            try {
+                reader.readInt();
+                fail();
+            } catch (EOFException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        // fewer buffers than threads, so readers have to wait for each other
+        try (var supplier = new DirectReaderSupplier(path, 4096, 2 * 4096)) {
+            var error = new AtomicReference<Throwable>();
+            var threads = new ArrayList<Thread>();
+            for (int t = 0; t < 4; t++) {
+                var random = new Random(getRandom().nextLong());
+                var thread = new Thread(() -> {
+                    try {
+                        var reader = supplier.get();
+                        for (int i = 0; i < 10_000; i++) {
+                            // runs of consecutive values, which mostly come from the buffer
+                            // the reader last used, while other threads evict and reload it
+                            int j = random.nextInt(ints.length - 16);
+                            reader.seek(3 + 4L * j);
+                            for (int k = j; k < j + 16; k++) {
+                                assertEquals(ints[k], reader.readInt());
+                            }
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            for (var thread : threads) {
+                thread.join();
+            }
+            if (error.get() != null) {
+                throw new AssertionError(error.get());
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.disk;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.github.jbellis.jvector.TestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TestMappedRandomAccessReader extends RandomizedTest {
+    private Path testDirectory;
+
+    @Before
+    public void setup() throws IOException {
+        testDirectory = Files.createTempDirectory(this.getClass().getSimpleName());
+    }
+
+    @After
+    public void tearDown() {
+        TestUtil.deleteQuietly(testDirectory);
+    }
+
+    @Test
+    public void testReadsAcrossSegments() throws Exception {
+        // an odd-length prefix, so that the ints and floats are not aligned with the segments
+        var prefix = new byte[randomIntBetween(1, 7)];
+        getRandom().nextBytes(prefix);
+        var ints = new int[100];
+        var floats = new float[100];
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = getRandom().nextInt();
+            floats[i] = getRandom().nextFloat();
+        }
+
+        var path = testDirectory.resolve("data");
+        try (var out = TestUtil.openFileForWriting(path)) {
+            out.write(prefix);
+            for (int i : ints) {
+                out.writeInt(i);
+            }
+            for (float f : floats) {
+                out.writeFloat(f);
+            }
+        }
+
+        // 16-byte segments, so nearly every read straddles a boundary
+        for (int shift : new int[] { 4, 30 }) {
+            var reader = new MappedRandomAccessReader(path, ByteOrder.BIG_ENDIAN, shift);
+            assertEquals(prefix.length + 800, reader.length());
+
+            var duplicate = reader.duplicate();
+            var actualPrefix = new byte[prefix.length];
+            duplicate.readFully(actualPrefix);
+            assertArrayEquals(prefix, actualPrefix);
+            for (int i : ints) {
+                assertEquals(i, duplicate.readInt());
+            }
+            var actualFloats = new float[floats.length];
+            duplicate.readFully(actualFloats);
+            assertArrayEquals(floats, actualFloats, 0.0f);
+
+            // bulk and wide reads
+            duplicate.seek(prefix.length);
+            var actualInts = new int[ints.length + 2];
+            duplicate.read(actualInts, 1, ints.length);
+            assertArrayEquals(ints, Arrays.copyOfRange(actualInts, 1, ints.length + 1));
+            assertEquals(floats[0], duplicate.readFloat(), 0.0f);
+            for (int i = 0; i < ints.length - 1; i++) {
+                duplicate.seek(prefix.length + 4L * i);
+                assertEquals(((long) ints[i] << 32) | (ints[i + 1] & 0xFFFFFFFFL), duplicate.readLong());
+            }
+
+            // random access
+            for (int i = 0; i < 100; i++) {
+                int j = getRandom().nextInt(ints.length);
+                duplicate.seek(prefix.length + 4L * j);
+                assertEquals(ints[j], duplicate.readInt());
+            }
+
+            // reading past the end
+            duplicate.seek(reader.length() - 2);
+            try {
+                duplicate.readInt();
+                fail();
+            } catch (EOFException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -54,6 +54,27 @@ public class TestNeighborQueue extends RandomizedTest {
     assertEquals(1f, nn.topScore(), 0);
   }
 
+  @Test
+  public void testTopNodes() {
+    for (boolean maxHeap : new boolean[] {true, false}) {
+      NeighborQueue nn = new NeighborQueue(8, maxHeap);
+      int size = getRandom().nextInt(100);
+      for (int i = 0; i < size; i++) {
+        nn.add(i, getRandom().nextFloat());
+      }
+
+      int n = getRandom().nextInt(10);
+      int[] top = new int[n];
+      int copied = nn.topNodes(top, n);
+      assertEquals(Math.min(n, size), copied);
+      assertEquals(size, nn.size());
+      // the same nodes, in the same order, as popping them
+      for (int i = 0; i < copied; i++) {
+        assertEquals(nn.pop(), top[i]);
+      }
+    }
+  }
+
   @Test
   public void testTopMaxHeap() {
     NeighborQueue nn = new NeighborQueue(2, true);
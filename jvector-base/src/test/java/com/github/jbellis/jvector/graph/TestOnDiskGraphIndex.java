@@ -17,21 +17,42 @@
 package com.github.jbellis.jvector.graph;
 
 import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
 import com.github.jbellis.jvector.TestUtil;
 import com.github.jbellis.jvector.disk.CachingGraphIndex;
+import com.github.jbellis.jvector.disk.CompressedVectors;
+import com.github.jbellis.jvector.disk.CorruptIndexException;
+import com.github.jbellis.jvector.disk.DirectReaderSupplier;
+import com.github.jbellis.jvector.disk.FlatGraphIndex;
+import com.github.jbellis.jvector.disk.GraphCache;
+import com.github.jbellis.jvector.disk.IndexContainer;
+import com.github.jbellis.jvector.disk.MappedRandomAccessReader;
+import com.github.jbellis.jvector.disk.NodeAccessProfile;
 import com.github.jbellis.jvector.disk.OnDiskGraphIndex;
 import com.github.jbellis.jvector.example.util.SimpleMappedReader;
+import com.github.jbellis.jvector.pq.ProductQuantization;
+import com.github.jbellis.jvector.vector.VectorEncoding;
+import com.github.jbellis.jvector.vector.VectorSimilarityFunction;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.Assert.*;
 
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
 public class TestOnDiskGraphIndex extends RandomizedTest {
 
     private Path testDirectory;
@@ -105,7 +126,677 @@ public class TestOnDiskGraphIndex extends RandomizedTest {
              var onDiskView = onDiskGraph.getView())
         {
             validateGraph(graph.getView(), onDiskView);
-            validateGraph(graph.getView(), new CachingGraphIndex(onDiskGraph).getView());
+            var cachedView = new CachingGraphIndex(onDiskGraph).getView();
+            validateGraph(graph.getView(), cachedView);
+            for (int i = 0; i < graph.size(); i++) {
+                assertArrayEquals(onDiskView.getVector(i), cachedView.getVector(i), 0.0f);
+            }
+        }
+    }
+
+    @Test
+    public void testDirectReRanker() throws Exception
+    {
+        var graph = new TestUtil.RandomlyConnectedGraphIndex<float[]>(1_000, 8, getRandom());
+        var vectors = new GraphIndexTestCase.CircularFloatVectorValues(graph.size());
+        var outputPath = testDirectory.resolve("reranked_graph");
+        writeGraph(graph, vectors, outputPath);
+
+        // scored in place by the mapped reader, and through a scratch array by the simple one
+        var mapped = new MappedRandomAccessReader(outputPath);
+        try (var simple = new SimpleMappedReader(outputPath.toAbsolutePath().toString());
+             var mappedGraph = new OnDiskGraphIndex<float[]>(mapped::duplicate, 0);
+             var simpleGraph = new OnDiskGraphIndex<float[]>(simple::duplicate, 0))
+        {
+            var query = vectors.vectorValue(getRandom().nextInt(graph.size()));
+            // and in place in the cache, for the nodes near the entry point
+            var cachedView = new CachingGraphIndex(simpleGraph).getView();
+            for (var vsf : VectorSimilarityFunction.values()) {
+                var mappedReRanker = mappedGraph.getView().rerankerFor(query, vsf);
+                var simpleReRanker = simpleGraph.getView().rerankerFor(query, vsf);
+                var cachedReRanker = cachedView.rerankerFor(query, vsf);
+                for (int i = 0; i < graph.size(); i++) {
+                    float expected = vsf.compare(query, vectors.vectorValue(i));
+                    assertEquals(expected, mappedReRanker.similarityTo(i), 1e-6);
+                    assertEquals(expected, simpleReRanker.similarityTo(i), 1e-6);
+                    assertEquals(expected, cachedReRanker.similarityTo(i), 1e-6);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testByteVectors() throws Exception
+    {
+        var graph = new TestUtil.RandomlyConnectedGraphIndex<byte[]>(1_000, 8, getRandom());
+        // an odd dimension, so the vectors need padding
+        var values = new byte[graph.size()][];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = GraphIndexTestCase.randomVector8(getRandom(), 7);
+        }
+        var vectors = MockByteVectorValues.fromValues(values);
+        var outputPath = testDirectory.resolve("byte_graph");
+        writeGraph(graph, vectors, outputPath);
+        // less the header, and the checksum table of the single block
+        assertEquals(4 * graph.size() * (1 + 2 + 9), Files.size(outputPath) - 8 * 4 - 4 * 4);
+
+        try (var marr = new SimpleMappedReader(outputPath.toAbsolutePath().toString());
+             var onDiskGraph = new OnDiskGraphIndex<byte[]>(marr::duplicate, 0);
+             var view = onDiskGraph.getView())
+        {
+            assertEquals(VectorEncoding.BYTE, onDiskGraph.getVectorEncoding());
+            validateGraph(graph.getView(), view);
+            var query = GraphIndexTestCase.randomVector8(getRandom(), 7);
+            var reRanker = view.rerankerFor(query, VectorSimilarityFunction.EUCLIDEAN);
+            for (int i = 0; i < graph.size(); i++) {
+                assertArrayEquals(values[i], view.getVector(i));
+                assertEquals(VectorSimilarityFunction.EUCLIDEAN.compare(query, values[i]), reRanker.similarityTo(i), 0.0f);
+            }
+        }
+    }
+
+    @Test
+    public void testUnknownEncoding() throws Exception
+    {
+        var graph = new TestUtil.RandomlyConnectedGraphIndex<byte[]>(100, 8, getRandom());
+        var values = new byte[graph.size()][];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = GraphIndexTestCase.randomVector8(getRandom(), 8);
+        }
+        var outputPath = testDirectory.resolve("bad_encoding_graph");
+        writeGraph(graph, MockByteVectorValues.fromValues(values), outputPath);
+
+        // the encoding follows the magic number, version, size and dimension
+        var bytes = Files.readAllBytes(outputPath);
+        Arrays.fill(bytes, 16, 20, (byte) 0);
+        bytes[19] = 99;
+        Files.write(outputPath, bytes);
+        try (var marr = new SimpleMappedReader(outputPath.toAbsolutePath().toString())) {
+            new OnDiskGraphIndex<byte[]>(marr::duplicate, 0);
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof CorruptIndexException);
+        }
+    }
+
+    @Test
+    public void testFloat16Vectors() throws Exception
+    {
+        var graph = new TestUtil.RandomlyConnectedGraphIndex<float[]>(1_000, 8, getRandom());
+        var vectorList = new ArrayList<float[]>();
+        for (int i = 0; i < graph.size(); i++) {
+            vectorList.add(GraphIndexTestCase.randomVector(getRandom(), 7));
+        }
+        var halves = new Float16RandomAccessVectorValues(vectorList, 7);
+        var outputPath = testDirectory.resolve("float16_graph");
+        try (var out = TestUtil.openFileForWriting(outputPath)) {
+            OnDiskGraphIndex.write(graph, halves, VectorEncoding.FLOAT16, null, out);
+        }
+
+        try (var marr = new SimpleMappedReader(outputPath.toAbsolutePath().toString());
+             var onDiskGraph = new OnDiskGraphIndex<float[]>(marr::duplicate, 0);
+             var view = onDiskGraph.getView())
+        {
+            assertEquals(VectorEncoding.FLOAT16, onDiskGraph.getVectorEncoding());
+            validateGraph(graph.getView(), view);
+            var query = GraphIndexTestCase.randomVector(getRandom(), 7);
+            for (var vsf : VectorSimilarityFunction.values()) {
+                var reRanker = view.rerankerFor(query, vsf);
+                for (int i = 0; i < graph.size(); i++) {
+                    var decoded = halves.vectorValue(i);
+                    assertArrayEquals(decoded, view.getVector(i), 0.0f);
+                    assertArrayEquals(vectorList.get(i), decoded, 1e-3f);
+                    assertEquals(vsf.compare(query, decoded), reRanker.similarityTo(i), 1e-6);
+                    assertEquals(vsf.compare(query, decoded), halves.similarity(query, i, vsf), 1e-6);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testInlineCodes() throws Exception
+    {
+        var graph = new TestUtil.RandomlyConnectedGraphIndex<float[]>(1_000, 8, getRandom());
+        var vectorList = new ArrayList<float[]>();
+        for (int i = 0; i < graph.size(); i++) {
+            vectorList.add(GraphIndexTestCase.randomVector(getRandom(), 6));
+        }
+        var vectors = MockVectorValues.fromValues(vectorList.toArray(new float[0][]));
+        // 3 subspaces, so the codes blocks need padding
+        var pq = new ProductQuantization(vectorList, 3, randomBoolean());
+        var cv = new CompressedVectors(pq, pq.encodeAll(vectorList));
+        var outputPath = testDirectory.resolve("inline_codes_graph");
+        try (var out = TestUtil.openFileForWriting(outputPath)) {
+            OnDiskGraphIndex.write(graph, vectors, cv, out);
+        }
+
+        try (var marr = new SimpleMappedReader(outputPath.toAbsolutePath().toString());
+             var onDiskGraph = new OnDiskGraphIndex<float[]>(marr::duplicate, 0);
+             var view = onDiskGraph.getView())
+        {
+            validateGraph(graph.getView(), view);
+            assertEquals(pq, onDiskGraph.getInlineQuantization());
+            assertTrue(onDiskGraph.ramBytesUsed() > pq.ramBytesUsed());
+            for (int i = 0; i < graph.size(); i++) {
+                assertArrayEquals(vectors.vectorValue(i), view.getVector(i), 0.0f);
+            }
+
+            var query = GraphIndexTestCase.randomVector(getRandom(), 6);
+            for (var vsf : VectorSimilarityFunction.values()) {
+                // the same tables as CompressedVectors, and (nearly) the similarity of the decoded vectors
+                var sf = view.approximateScoreFunctionFor(query, vsf);
+                var expected = cv.approximateScoreFunctionFor(query, vsf);
+                for (int i = 0; i < graph.size(); i++) {
+                    // neighbors, from the adjacency record
+                    for (var it = view.getNeighborsIterator(i); it.hasNext(); ) {
+                        int neighbor = it.nextInt();
+                        assertEquals(expected.similarityTo(neighbor), sf.similarityTo(neighbor), 0.0f);
+                        assertEquals(cv.decodedSimilarity(neighbor, query, vsf), sf.similarityTo(neighbor), 1e-5f);
+                    }
+                    // the node itself and a random node, from their own records
+                    assertEquals(expected.similarityTo(i), sf.similarityTo(i), 0.0f);
+                    assertEquals(cv.decodedSimilarity(i, query, vsf), sf.similarityTo(i), 1e-5f);
+                    int other = getRandom().nextInt(graph.size());
+                    assertEquals(expected.similarityTo(other), sf.similarityTo(other), 0.0f);
+                    assertEquals(cv.decodedSimilarity(other, query, vsf), sf.similarityTo(other), 1e-5f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPrefetch() throws Exception
+    {
+        var graph = new TestUtil.RandomlyConnectedGraphIndex<float[]>(1_000, 8, getRandom());
+        var vectors = new GraphIndexTestCase.CircularFloatVectorValues(graph.size());
+        var outputPath = testDirectory.resolve("prefetched_graph");
+        writeGraph(graph, vectors, outputPath);
+
+        var executor = Executors.newFixedThreadPool(2);
+        var marr = new MappedRandomAccessReader(outputPath);
+        try (var onDiskGraph = new OnDiskGraphIndex<float[]>(marr::duplicate, 0);
+             var prefetchingGraph = new OnDiskGraphIndex<float[]>(marr::duplicate, 0, executor))
+        {
+            for (int i = 0; i < 10; i++) {
+                var query = vectors.vectorValue(getRandom().nextInt(graph.size())).clone();
+                var expected = GraphSearcher.search(query, 10, vectors, VectorEncoding.FLOAT32, VectorSimilarityFunction.COSINE, onDiskGraph, null);
+
+                var view = prefetchingGraph.getView();
+                NeighborSimilarity.ExactScoreFunction sf = node -> VectorSimilarityFunction.COSINE.compare(query, vectors.vectorValue(node));
+                var actual = new GraphSearcher.Builder<>(view).withPrefetch(4).build().search(sf, null, 10, null);
+                assertEquals(expected.getVisitedCount(), actual.getVisitedCount());
+                for (int j = 0; j < expected.getNodes().length; j++) {
+                    assertEquals(expected.getNodes()[j].node, actual.getNodes()[j].node);
+                }
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+    }
+
+    @Test
+    public void testBeamSearch() throws Exception
+    {
+        // a real graph, so that recall reflects the beam and not the luck of a random graph
+        var vectorList = new ArrayList<float[]>();
+        for (int i = 0; i < 1_000; i++) {
+            vectorList.add(GraphIndexTestCase.randomVector(getRandom(), 16));
+        }
+        var vectors = new ListRandomAccessVectorValues(vectorList, 16);
+        var graph = new GraphIndexBuilder<>(vectors, VectorEncoding.FLOAT32, VectorSimilarityFunction.COSINE, 16, 100, 1.2f, 1.4f).build();
+        var outputPath = testDirectory.resolve("beam_graph");
+        writeGraph(graph, vectors, outputPath);
+
+        var executor = Executors.newFixedThreadPool(4);
+        var marr = new MappedRandomAccessReader(outputPath);
+        try (var onDiskGraph = new OnDiskGraphIndex<float[]>(marr::duplicate, 0);
+             var prefetchingGraph = new OnDiskGraphIndex<float[]>(marr::duplicate, 0, executor))
+        {
+            int narrowRounds = 0, wideRounds = 0, serialRounds = 0;
+            int narrowCorrect = 0, wideCorrect = 0;
+            for (int i = 0; i < 50; i++) {
+                var query = GraphIndexTestCase.randomVector(getRandom(), 16);
+                NeighborSimilarity.ExactScoreFunction sf = node -> VectorSimilarityFunction.COSINE.compare(query, vectors.vectorValue(node));
+                var groundTruth = IntStream.range(0, graph.size()).boxed()
+                        .sorted((a, b) -> Float.compare(sf.similarityTo(b), sf.similarityTo(a)))
+                        .limit(10)
+                        .collect(Collectors.toList());
+
+                // a beam of one is the ordinary search, which reads one neighbor list per round
+                var expected = new GraphSearcher.Builder<>(onDiskGraph.getView()).build().search(sf, null, 10, null);
+                var narrow = new GraphSearcher.Builder<>(prefetchingGraph.getView()).withBeamWidth(1).build().search(sf, null, 10, null);
+                assertEquals(expected.getVisitedCount(), narrow.getVisitedCount());
+                assertEquals(expected.getIoRounds(), narrow.getIoRounds());
+                assertTrue(narrow.getIoRounds() > 0);
+                for (int j = 0; j < expected.getNodes().length; j++) {
+                    assertEquals(expected.getNodes()[j].node, narrow.getNodes()[j].node);
+                }
+
+                // a wide beam reads its lists together with a prefetch executor, and one by one without
+                var wide = new GraphSearcher.Builder<>(prefetchingGraph.getView()).withBeamWidth(4).build().search(sf, null, 10, null);
+                var serial = new GraphSearcher.Builder<>(onDiskGraph.getView()).withBeamWidth(4).build().search(sf, null, 10, null);
+                assertEquals(serial.getVisitedCount(), wide.getVisitedCount());
+                narrowRounds += narrow.getIoRounds();
+                wideRounds += wide.getIoRounds();
+                serialRounds += serial.getIoRounds();
+                for (var ns : narrow.getNodes()) {
+                    narrowCorrect += groundTruth.contains(ns.node) ? 1 : 0;
+                }
+                for (var ns : wide.getNodes()) {
+                    wideCorrect += groundTruth.contains(ns.node) ? 1 : 0;
+                }
+            }
+            assertTrue(String.format("%d rounds with a beam vs %d without", wideRounds, narrowRounds), 2 * wideRounds < narrowRounds);
+            assertTrue(String.format("%d rounds reading the beam together vs %d one by one", wideRounds, serialRounds), 2 * wideRounds < serialRounds);
+            assertTrue(String.format("%d correct with a beam vs %d without", wideCorrect, narrowCorrect), wideCorrect >= 0.9 * narrowCorrect);
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+
+        try {
+            new GraphSearcher.Builder<>(graph.getView()).withBeamWidth(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testScan() throws Exception
+    {
+        var graph = new TestUtil.RandomlyConnectedGraphIndex<float[]>(300, 8, getRandom());
+        var vectorList = new ArrayList<float[]>();
+        for (int i = 0; i < graph.size(); i++) {
+            vectorList.add(GraphIndexTestCase.randomVector(getRandom(), 6));
+        }
+        var vectors = MockVectorValues.fromValues(vectorList.toArray(new float[0][]));
+        var pq = new ProductQuantization(vectorList, 3, false);
+        var cv = new CompressedVectors(pq, pq.encodeAll(vectorList));
+        var outputPath = testDirectory.resolve("scanned_graph");
+        try (var out = TestUtil.openFileForWriting(outputPath)) {
+            OnDiskGraphIndex.write(graph, vectors, cv, out);
+        }
+
+        try (var marr = new SimpleMappedReader(outputPath.toAbsolutePath().toString());
+             var onDiskGraph = new OnDiskGraphIndex<float[]>(marr::duplicate, 0))
+        {
+            var nodes = onDiskGraph.getNodes();
+            assertEquals(graph.size(), nodes.size());
+            for (int i = 0; i < graph.size(); i++) {
+                assertEquals(i, nodes.nextInt());
+            }
+            assertFalse(nodes.hasNext());
+
+            // chunks of one record, a few records that don't divide the size evenly, and everything
+            for (int chunkBytes : new int[] { 1, 7 * 100, Integer.MAX_VALUE }) {
+                var view = graph.getView();
+                try (var scanner = onDiskGraph.scan(chunkBytes)) {
+                    for (int i = 0; i < graph.size(); i++) {
+                        assertTrue(scanner.next());
+                        assertEquals(i, scanner.node());
+                        assertArrayEquals(vectors.vectorValue(i), scanner.vector(), 0.0f);
+                        assertArrayEquals(cv.get(i), scanner.code());
+                        var expected = view.getNeighborsIterator(i);
+                        var actual = scanner.neighbors();
+                        assertEquals(expected.size(), actual.size());
+                        while (expected.hasNext()) {
+                            assertEquals(expected.nextInt(), actual.nextInt());
+                        }
+                    }
+                    assertFalse(scanner.next());
+                }
+            }
+        }
+
+        // byte vectors, without codes
+        var byteGraph = new TestUtil.RandomlyConnectedGraphIndex<byte[]>(100, 4, getRandom());
+        var byteVectors = new byte[byteGraph.size()][];
+        for (int i = 0; i < byteVectors.length; i++) {
+            byteVectors[i] = GraphIndexTestCase.randomVector8(getRandom(), 5);
+        }
+        var byteValues = MockByteVectorValues.fromValues(byteVectors);
+        var bytePath = testDirectory.resolve("scanned_byte_graph");
+        writeGraph(byteGraph, byteValues, bytePath);
+        try (var marr = new SimpleMappedReader(bytePath.toAbsolutePath().toString());
+             var onDiskGraph = new OnDiskGraphIndex<byte[]>(marr::duplicate, 0);
+             var scanner = onDiskGraph.scan(64))
+        {
+            for (int i = 0; i < byteGraph.size(); i++) {
+                assertTrue(scanner.next());
+                assertArrayEquals(byteValues.vectorValue(i), scanner.vector());
+            }
+            assertFalse(scanner.next());
+            try {
+                scanner.code();
+                fail();
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testFlatGraphIndex() throws Exception
+    {
+        // a real graph over random vectors, so that half precision changes the search path only
+        // where it breaks near-ties, rather than sending it to a different part of a random graph
+        var vectorList = new ArrayList<float[]>();
+        for (int i = 0; i < 1_000; i++) {
+            vectorList.add(GraphIndexTestCase.randomVector(getRandom(), 16));
+        }
+        var vectors = new ListRandomAccessVectorValues(vectorList, 16);
+        var graph = new GraphIndexBuilder<>(vectors, VectorEncoding.FLOAT32, VectorSimilarityFunction.COSINE, 16, 100, 1.2f, 1.4f).build();
+        for (var encoding : List.of(VectorEncoding.FLOAT32, VectorEncoding.FLOAT16)) {
+            var outputPath = testDirectory.resolve("flat_graph_" + encoding);
+            try (var out = TestUtil.openFileForWriting(outputPath)) {
+                OnDiskGraphIndex.write(graph, vectors, encoding, null, out);
+            }
+
+            FlatGraphIndex<float[]> flat;
+            try (var marr = new SimpleMappedReader(outputPath.toAbsolutePath().toString());
+                 var onDiskGraph = new OnDiskGraphIndex<float[]>(marr::duplicate, 0))
+            {
+                flat = FlatGraphIndex.load(onDiskGraph);
+                var onDiskView = onDiskGraph.getView();
+                var view = flat.getView();
+                validateGraph(onDiskView, view);
+                assertEquals(encoding, flat.getVectorEncoding());
+                for (int i = 0; i < graph.size(); i++) {
+                    assertArrayEquals(onDiskView.getVector(i), view.getVector(i), 0.0f);
+                }
+            }
+
+            // still searchable once the file is closed
+            var view = flat.getView();
+            validateGraph(graph.getView(), view);
+            for (int i = 0; i < 10; i++) {
+                var query = vectors.vectorValue(getRandom().nextInt(graph.size())).clone();
+                var expected = GraphSearcher.search(query, 10, vectors, VectorEncoding.FLOAT32, VectorSimilarityFunction.COSINE, graph, null);
+                NeighborSimilarity.ExactScoreFunction sf = node -> view.similarity(query, node, VectorSimilarityFunction.COSINE);
+                var actual = new GraphSearcher.Builder<>(view).build().search(sf, null, 10, null);
+                if (encoding == VectorEncoding.FLOAT32) {
+                    for (int j = 0; j < expected.getNodes().length; j++) {
+                        assertEquals(expected.getNodes()[j].node, actual.getNodes()[j].node);
+                        assertEquals(expected.getNodes()[j].score, actual.getNodes()[j].score, 0.0f);
+                    }
+                } else {
+                    // half precision can reorder near-ties and so change the search path,
+                    // but the results are mostly the same and score (nearly) the same
+                    var expectedNodes = Arrays.stream(expected.getNodes()).map(ns -> ns.node).collect(Collectors.toSet());
+                    int overlap = 0;
+                    for (var ns : actual.getNodes()) {
+                        overlap += expectedNodes.contains(ns.node) ? 1 : 0;
+                    }
+                    assertTrue(String.format("%d of the top 10 match full precision", overlap), overlap >= 8);
+                    for (var ns : expected.getNodes()) {
+                        assertEquals(ns.score, view.similarity(query, ns.node, VectorSimilarityFunction.COSINE), 1e-3f);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIndexContainer() throws Exception
+    {
+        var graph1 = new TestUtil.RandomlyConnectedGraphIndex<float[]>(300, 8, getRandom());
+        var graph2 = new TestUtil.RandomlyConnectedGraphIndex<float[]>(50, 4, getRandom());
+        var vectorList = new ArrayList<float[]>();
+        for (int i = 0; i < graph1.size(); i++) {
+            vectorList.add(GraphIndexTestCase.randomVector(getRandom(), 6));
+        }
+        var vectors1 = MockVectorValues.fromValues(vectorList.toArray(new float[0][]));
+        var vectors2 = new GraphIndexTestCase.CircularFloatVectorValues(graph2.size());
+        var pq = new ProductQuantization(vectorList, 3, false);
+        var cv = new CompressedVectors(pq, pq.encodeAll(vectorList));
+        int[] ordinals = IntStream.range(0, graph2.size()).map(i -> 1000 + i).toArray();
+
+        var outputPath = testDirectory.resolve("container");
+        try (var writer = new IndexContainer.Writer(Files.newOutputStream(outputPath))) {
+            writer.writeSection("tenant1/graph", out -> OnDiskGraphIndex.write(graph1, vectors1, out));
+            writer.writeSection("tenant1/pq", cv::write);
+            writer.writeSection("tenant2/graph", out -> OnDiskGraphIndex.write(graph2, vectors2, VectorEncoding.FLOAT16, null, out));
+            writer.writeInts("tenant2/ordinals", ordinals);
+            try {
+                writer.writeInts("tenant2/ordinals", ordinals);
+                fail();
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        var marr = new MappedRandomAccessReader(outputPath);
+        try (var container = IndexContainer.open(marr::duplicate)) {
+            assertEquals(List.of("tenant1/graph", "tenant1/pq", "tenant2/graph", "tenant2/ordinals"), new ArrayList<>(container.sections()));
+            for (var name : container.sections()) {
+                assertEquals(0, container.offset(name) % 8);
+            }
+            assertEquals(Integer.BYTES * (ordinals.length + 1), container.length("tenant2/ordinals"));
+
+            OnDiskGraphIndex<float[]> onDisk1 = container.graph("tenant1/graph");
+            assertSame(onDisk1, container.graph("tenant1/graph"));
+            validateGraph(graph1.getView(), onDisk1.getView());
+            for (int i = 0; i < graph1.size(); i++) {
+                assertArrayEquals(vectors1.vectorValue(i), onDisk1.getView().getVector(i), 0.0f);
+            }
+
+            var loaded = container.compressedVectors("tenant1/pq");
+            assertEquals(pq, loaded.getProductQuantization());
+            for (int i = 0; i < cv.size(); i++) {
+                assertArrayEquals(cv.get(i), loaded.get(i));
+            }
+
+            OnDiskGraphIndex<float[]> onDisk2 = container.graph("tenant2/graph");
+            assertEquals(VectorEncoding.FLOAT16, onDisk2.getVectorEncoding());
+            validateGraph(graph2.getView(), onDisk2.getView());
+            assertArrayEquals(ordinals, container.ints("tenant2/ordinals"));
+
+            assertFalse(container.contains("tenant3/graph"));
+            try {
+                container.graph("tenant3/graph");
+                fail();
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testIndexContainerChecksums() throws Exception
+    {
+        var graph1 = new TestUtil.RandomlyConnectedGraphIndex<float[]>(100, 8, getRandom());
+        var graph2 = new TestUtil.RandomlyConnectedGraphIndex<float[]>(100, 8, getRandom());
+        var vectors = new GraphIndexTestCase.CircularFloatVectorValues(100);
+        var outputPath = testDirectory.resolve("checksummed_container");
+        try (var writer = new IndexContainer.Writer(Files.newOutputStream(outputPath), 256)) {
+            writer.writeSection("graph1", out -> OnDiskGraphIndex.write(graph1, vectors, out));
+            writer.writeSection("graph2", out -> OnDiskGraphIndex.write(graph2, vectors, out));
+        }
+
+        var executor = Executors.newFixedThreadPool(2);
+        try {
+            try (var container = IndexContainer.open(new MappedRandomAccessReader(outputPath)::duplicate)) {
+                container.verify(executor).get();
+                OnDiskGraphIndex<float[]> onDisk = container.graph("graph2");
+                validateGraph(graph2.getView(), onDisk.getView());
+            }
+
+            // flip a bit in the middle of the second graph
+            long corruptOffset;
+            try (var container = IndexContainer.open(new MappedRandomAccessReader(outputPath)::duplicate)) {
+                corruptOffset = container.offset("graph2") + container.length("graph2") / 2;
+            }
+            var bytes = Files.readAllBytes(outputPath);
+            bytes[(int) corruptOffset] ^= 1;
+            Files.write(outputPath, bytes);
+
+            try (var container = IndexContainer.open(new MappedRandomAccessReader(outputPath)::duplicate)) {
+                // the first graph is still usable
+                OnDiskGraphIndex<float[]> onDisk1 = container.graph("graph1");
+                validateGraph(graph1.getView(), onDisk1.getView());
+
+                // reading the corrupt block fails
+                OnDiskGraphIndex<float[]> onDisk2 = container.graph("graph2");
+                try (var scanner = onDisk2.scan()) {
+                    while (scanner.next()) {
+                        // keep going
+                    }
+                    fail();
+                } catch (UncheckedIOException e) {
+                    assertTrue(e.getCause() instanceof CorruptIndexException);
+                }
+
+                // and so does a full verification
+                try {
+                    container.verify(executor).get();
+                    fail();
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause().getCause() instanceof CorruptIndexException);
+                }
+            }
+
+            // corrupting the catalog prevents opening the container at all
+            bytes[bytes.length - 20] ^= 1;
+            Files.write(outputPath, bytes);
+            try {
+                IndexContainer.open(new MappedRandomAccessReader(outputPath)::duplicate);
+                fail();
+            } catch (RuntimeException e) {
+                assertTrue(e.getCause() instanceof CorruptIndexException);
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+    }
+
+    @Test
+    public void testStandaloneChecksums() throws Exception
+    {
+        var graph = new TestUtil.RandomlyConnectedGraphIndex<float[]>(1_000, 8, getRandom());
+        var vectorList = new ArrayList<float[]>();
+        for (int i = 0; i < graph.size(); i++) {
+            vectorList.add(GraphIndexTestCase.randomVector(getRandom(), 16));
+        }
+        var vectors = MockVectorValues.fromValues(vectorList.toArray(new float[0][]));
+        var pq = new ProductQuantization(vectorList, 4, false);
+        var cv = new CompressedVectors(pq, pq.encodeAll(vectorList));
+        var graphPath = testDirectory.resolve("checksummed_graph");
+        writeGraph(graph, vectors, graphPath);
+        var pqPath = testDirectory.resolve("checksummed_pq");
+        try (var out = TestUtil.openFileForWriting(pqPath)) {
+            cv.write(out);
+        }
+
+        var executor = Executors.newFixedThreadPool(2);
+        try {
+            try (var onDisk = new OnDiskGraphIndex<float[]>(new MappedRandomAccessReader(graphPath)::duplicate, 0)) {
+                onDisk.verify(executor).get();
+                validateGraph(graph.getView(), onDisk.getView());
+            }
+            try (var reader = new MappedRandomAccessReader(pqPath)) {
+                var loaded = CompressedVectors.load(reader, 0);
+                for (int i = 0; i < cv.size(); i++) {
+                    assertArrayEquals(cv.get(i), loaded.get(i));
+                }
+            }
+
+            // flip a bit in the vector of the last node, and in the last code
+            var bytes = Files.readAllBytes(graphPath);
+            bytes[bytes.length - 100] ^= 1;
+            Files.write(graphPath, bytes);
+            bytes = Files.readAllBytes(pqPath);
+            bytes[bytes.length - 20] ^= 1;
+            Files.write(pqPath, bytes);
+
+            // mapped readers verify the blocks they read, including when scoring in place
+            try (var onDisk = new OnDiskGraphIndex<float[]>(new MappedRandomAccessReader(graphPath)::duplicate, 0);
+                 var view = onDisk.getView()) {
+                var query = vectorList.get(0);
+                assertEquals(VectorSimilarityFunction.EUCLIDEAN.compare(query, vectorList.get(0)), view.similarity(query, 0, VectorSimilarityFunction.EUCLIDEAN), 1e-6);
+                try {
+                    view.similarity(query, graph.size() - 1, VectorSimilarityFunction.EUCLIDEAN);
+                    fail();
+                } catch (UncheckedIOException e) {
+                    assertTrue(e.getCause() instanceof CorruptIndexException);
+                }
+                try {
+                    onDisk.verify(executor).get();
+                    fail();
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause().getCause() instanceof CorruptIndexException);
+                }
+            }
+
+            // as does the direct supplier, when it loads them
+            try (var onDisk = new OnDiskGraphIndex<float[]>(new DirectReaderSupplier(graphPath, 4096, 1 << 16), 0);
+                 var view = onDisk.getView()) {
+                try {
+                    view.getVector(graph.size() - 1);
+                    fail();
+                } catch (UncheckedIOException e) {
+                    assertTrue(e.getCause() instanceof CorruptIndexException);
+                }
+            }
+
+            try (var reader = new MappedRandomAccessReader(pqPath)) {
+                CompressedVectors.load(reader, 0);
+                fail();
+            } catch (CorruptIndexException e) {
+                // expected
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+    }
+
+    @Test
+    public void testWarmupProfile() throws Exception
+    {
+        var graph = new TestUtil.RandomlyConnectedGraphIndex<float[]>(1_000, 8, getRandom());
+        var graphPath = testDirectory.resolve("profiled_graph");
+        writeGraph(graph, new GraphIndexTestCase.CircularFloatVectorValues(graph.size()), graphPath);
+
+        var profilePath = testDirectory.resolve("profiled_graph.hot");
+        try (var marr = new SimpleMappedReader(graphPath.toAbsolutePath().toString());
+             var onDiskGraph = new OnDiskGraphIndex<float[]>(marr::duplicate, 0))
+        {
+            // touch a handful of nodes, some more often than others
+            var profile = new NodeAccessProfile(graph.size());
+            var view = new CachingGraphIndex(onDiskGraph, new int[0], profile).getView();
+            for (int i = 0; i < 10; i++) {
+                for (int j = 0; j <= i; j++) {
+                    view.getNeighborsIterator(100 + i);
+                }
+            }
+            assertArrayEquals(new int[] {105, 106, 107, 108, 109}, profile.hottest(5));
+            try (var out = TestUtil.openFileForWriting(profilePath)) {
+                profile.write(out, 5);
+            }
+
+            int[] hotNodes;
+            try (var in = new SimpleMappedReader(profilePath.toAbsolutePath().toString())) {
+                hotNodes = NodeAccessProfile.load(in, 0);
+            }
+            assertArrayEquals(profile.hottest(5), hotNodes);
+
+            // the hot nodes are cached, and nodes that aren't in the graph are skipped
+            var cache = GraphCache.load(onDiskGraph, 0, hotNodes);
+            for (int node : hotNodes) {
+                assertTrue(cache.containsNode(node));
+            }
+            assertTrue(cache.ramBytesUsed() > 0);
+            var stale = GraphCache.load(onDiskGraph, 0, new int[] {-1, 5, graph.size()});
+            assertTrue(stale.containsNode(5));
+            assertFalse(stale.containsNode(-1));
+            assertFalse(stale.containsNode(graph.size()));
+
+            // the warmed-up index should behave exactly like the cold one
+            var warmed = new CachingGraphIndex(onDiskGraph, hotNodes, null);
+            validateGraph(graph.getView(), warmed.getView());
         }
     }
 }
@@ -17,6 +17,7 @@
 package com.github.jbellis.jvector.microbench;
 
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
@@ -54,11 +55,25 @@ public class SimilarityBench {
         q3[1] = ThreadLocalRandom.current().nextFloat();
     }
 
+    // q2 as big-endian floats in a direct buffer, as in a memory-mapped index
+    static final ByteBuffer mapped = ByteBuffer.allocateDirect(SIZE * Float.BYTES);
+
+    static {
+        for (int i = 0; i < SIZE; i++) {
+            mapped.putFloat(i * Float.BYTES, q2[i]);
+        }
+    }
+
     @State(Scope.Benchmark)
     public static class Parameters {
 
     }
 
+    @State(Scope.Thread)
+    public static class Scratch {
+        final float[] vector = new float[SIZE];
+    }
+
     @Benchmark
     @BenchmarkMode(Mode.Throughput)
     @Threads(8)
@@ -67,6 +82,33 @@ public class SimilarityBench {
         bh.consume(VectorUtil.dotProduct(q3, 0, q1, 22, q3.length));
     }
 
+    // scoring a vector in a buffer in place, against copying it out first and scoring the copy
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Threads(8)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void dotProductArray(Blackhole bh) {
+        bh.consume(VectorUtil.dotProduct(q1, q2));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Threads(8)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void dotProductBuffer(Blackhole bh) {
+        bh.consume(VectorUtil.dotProduct(q1, mapped, 0));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Threads(8)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void dotProductCopiedBuffer(Blackhole bh, Scratch scratch) {
+        mapped.duplicate().asFloatBuffer().get(scratch.vector);
+        bh.consume(VectorUtil.dotProduct(q1, scratch.vector));
+    }
+
     public static void main(String[] args) throws Exception {
         org.openjdk.jmh.Main.main(args);
     }
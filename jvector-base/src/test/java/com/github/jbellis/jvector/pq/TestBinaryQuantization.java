@@ -0,0 +1,129 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.pq;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import com.github.jbellis.jvector.example.util.SimpleMappedReader;
+import com.github.jbellis.jvector.graph.GraphIndexTestCase;
+import com.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import com.github.jbellis.jvector.vector.VectorUtil;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
+public class TestBinaryQuantization extends RandomizedTest {
+    @Test
+    public void testEncoding() {
+        // not a multiple of 64, so the last long is partly unused
+        int dimension = 100;
+        var vectors = new ArrayList<float[]>();
+        for (int i = 0; i < 50; i++) {
+            vectors.add(GraphIndexTestCase.randomVector(getRandom(), dimension));
+        }
+        var bq = new BinaryQuantization(vectors, randomBoolean());
+        assertEquals(2, bq.getCodeSize());
+
+        var uncentered = new BinaryQuantization(dimension, null);
+        for (var v : vectors) {
+            var encoded = uncentered.encode(v);
+            for (int i = 0; i < dimension; i++) {
+                assertEquals(v[i] > 0, (encoded[i / 64] & (1L << (i % 64))) != 0);
+            }
+            assertEquals(0, VectorUtil.hammingDistance(encoded, encoded));
+
+            var negated = new float[dimension];
+            for (int i = 0; i < dimension; i++) {
+                negated[i] = -v[i];
+            }
+            assertEquals(dimension, VectorUtil.hammingDistance(encoded, uncentered.encode(negated)));
+        }
+
+        // the estimated similarity falls as the distance grows
+        for (var vsf : VectorSimilarityFunction.values()) {
+            var similarities = bq.similarities(vsf);
+            assertEquals(dimension + 1, similarities.length);
+            for (int i = 1; i <= dimension; i++) {
+                assertTrue(similarities[i] < similarities[i - 1]);
+            }
+        }
+    }
+
+    @Test
+    public void testRanking() {
+        // a few vectors close to the query, hidden among many random ones
+        int dimension = 512;
+        var query = VectorUtil.l2normalize(GraphIndexTestCase.randomVector(getRandom(), dimension));
+        var vectors = new ArrayList<float[]>();
+        for (int i = 0; i < 1000; i++) {
+            vectors.add(VectorUtil.l2normalize(GraphIndexTestCase.randomVector(getRandom(), dimension)));
+        }
+        int near = 10;
+        for (int i = 0; i < near; i++) {
+            var v = GraphIndexTestCase.randomVector(getRandom(), dimension);
+            for (int j = 0; j < dimension; j++) {
+                v[j] = query[j] + 0.5f * v[j];
+            }
+            vectors.set(i * vectors.size() / near + getRandom().nextInt(vectors.size() / near), VectorUtil.l2normalize(v));
+        }
+
+        var bq = new BinaryQuantization(vectors, false);
+        var cv = new BinaryCompressedVectors(bq, bq.encodeAll(vectors));
+        for (var vsf : new VectorSimilarityFunction[] { VectorSimilarityFunction.DOT_PRODUCT, VectorSimilarityFunction.EUCLIDEAN }) {
+            var sf = cv.approximateScoreFunctionFor(query, vsf);
+            Comparator<Integer> byApproximate = Comparator.comparingDouble(i -> -sf.similarityTo(i));
+            Comparator<Integer> byExact = Comparator.comparingDouble(i -> -vsf.compare(query, vectors.get(i)));
+            var approximate = IntStream.range(0, vectors.size()).boxed().sorted(byApproximate).limit(near).sorted().toArray();
+            var exact = IntStream.range(0, vectors.size()).boxed().sorted(byExact).limit(near).sorted().toArray();
+            assertArrayEquals(exact, approximate);
+        }
+    }
+
+    @Test
+    public void testSaveLoad() throws IOException {
+        var vectors = new ArrayList<float[]>();
+        for (int i = 0; i < 100; i++) {
+            vectors.add(GraphIndexTestCase.randomVector(getRandom(), 70));
+        }
+        var bq = new BinaryQuantization(vectors, true);
+        var cv = new BinaryCompressedVectors(bq, bq.encodeAll(vectors));
+
+        File tempFile = File.createTempFile("bqtest", ".bin");
+        tempFile.deleteOnExit();
+        try (var out = new DataOutputStream(new FileOutputStream(tempFile))) {
+            cv.write(out);
+        }
+
+        try (var in = new SimpleMappedReader(tempFile.getAbsolutePath())) {
+            var cv2 = BinaryCompressedVectors.load(in, 0);
+            assertEquals(bq, cv2.getBinaryQuantization());
+            assertEquals(cv.size(), cv2.size());
+            for (int i = 0; i < cv.size(); i++) {
+                assertArrayEquals(cv.get(i), cv2.get(i));
+            }
+        }
+    }
+}
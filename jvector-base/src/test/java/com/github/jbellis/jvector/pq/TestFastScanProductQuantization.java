@@ -0,0 +1,103 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.pq;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import com.github.jbellis.jvector.example.util.SimpleMappedReader;
+import com.github.jbellis.jvector.graph.GraphIndexTestCase;
+import com.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import com.github.jbellis.jvector.vector.VectorUtil;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
+public class TestFastScanProductQuantization extends RandomizedTest {
+    @Test
+    public void testScoring() {
+        // an odd number of subspaces, so the last code byte is half padding,
+        // and a size that doesn't fill the last block
+        int dimension = 20;
+        var vectors = new ArrayList<float[]>();
+        for (int i = 0; i < 250; i++) {
+            vectors.add(VectorUtil.l2normalize(GraphIndexTestCase.randomVector(getRandom(), dimension)));
+        }
+        var pq = new FastScanProductQuantization(vectors, 5, randomBoolean());
+        assertEquals(3, pq.getCodeSize());
+        var encoded = pq.encodeAll(vectors);
+        var codes = new FastScanCodes(pq, encoded);
+        assertEquals(vectors.size(), codes.size());
+
+        var query = VectorUtil.l2normalize(GraphIndexTestCase.randomVector(getRandom(), dimension));
+        for (var vsf : new VectorSimilarityFunction[] { VectorSimilarityFunction.DOT_PRODUCT, VectorSimilarityFunction.EUCLIDEAN }) {
+            var table = pq.lookupTable(query, vsf);
+            var scores = new float[codes.size()];
+            codes.scoreAll(table, scores);
+            var sf = codes.approximateScoreFunctionFor(query, vsf);
+            var decoded = new float[dimension];
+            for (int i = 0; i < codes.size(); i++) {
+                assertArrayEquals(encoded.get(i), codes.get(i));
+                // the block scan and the one-at-a-time lookups agree exactly
+                assertEquals(table.similarity(encoded.get(i)), scores[i], 0.0f);
+                assertEquals(scores[i], sf.similarityTo(i), 0.0f);
+
+                // and are close to the similarity of the decoded vector, up to the table quantization
+                pq.decode(encoded.get(i), decoded);
+                assertEquals(vsf.compare(query, decoded), scores[i], 0.02f);
+            }
+        }
+
+        try {
+            pq.lookupTable(query, VectorSimilarityFunction.COSINE);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSaveLoad() throws IOException {
+        var vectors = new ArrayList<float[]>();
+        for (int i = 0; i < 100; i++) {
+            vectors.add(GraphIndexTestCase.randomVector(getRandom(), 8));
+        }
+        var pq = new FastScanProductQuantization(vectors, 4, true);
+        var codes = new FastScanCodes(pq, pq.encodeAll(vectors));
+
+        File tempFile = File.createTempFile("fastscantest", ".bin");
+        tempFile.deleteOnExit();
+        try (var out = new DataOutputStream(new FileOutputStream(tempFile))) {
+            codes.write(out);
+        }
+
+        try (var in = new SimpleMappedReader(tempFile.getAbsolutePath())) {
+            var codes2 = FastScanCodes.load(in, 0);
+            assertEquals(pq, codes2.getProductQuantization());
+            assertEquals(codes.size(), codes2.size());
+            for (int i = 0; i < codes.size(); i++) {
+                assertArrayEquals(codes.get(i), codes2.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.pq;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import com.github.jbellis.jvector.vector.VectorUtil;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
+public class TestKMeansPlusPlusClusterer extends RandomizedTest {
+    @Test
+    public void testParallelInitialization() {
+        int dimension = 4;
+        int k = 64;
+        int n = 5000;
+        var points = new float[n * dimension];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = (float) getRandom().nextGaussian();
+        }
+
+        var errors = new double[2];
+        for (var initialization : KMeansPlusPlusClusterer.Initialization.values()) {
+            // the same seed gives the same clusters
+            long seed = getRandom().nextLong();
+            var centroids = new KMeansPlusPlusClusterer(points, dimension, k, initialization, new Random(seed)).cluster(15);
+            var again = new KMeansPlusPlusClusterer(points, dimension, k, initialization, new Random(seed)).cluster(15);
+            assertEquals(k, centroids.length);
+            for (int j = 0; j < k; j++) {
+                assertArrayEquals(centroids[j], again[j]);
+            }
+            errors[initialization.ordinal()] = error(points, dimension, centroids);
+        }
+
+        // k-means|| clusters as well as k-means++
+        var plusPlus = errors[KMeansPlusPlusClusterer.Initialization.KMEANS_PLUS_PLUS.ordinal()];
+        var parallel = errors[KMeansPlusPlusClusterer.Initialization.KMEANS_PARALLEL.ordinal()];
+        assertTrue(parallel < 1.1 * plusPlus, String.format("k-means|| error %f vs k-means++ %f", parallel, plusPlus));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testSeparableClusters() {
+        // tight clusters around centers far apart from each other
+        int dimension = 8;
+        int k = 5;
+        var centers = new float[k][dimension];
+        for (int j = 0; j < k; j++) {
+            centers[j][j] = 100;
+        }
+        var points = new float[k * 500][];
+        for (int p = 0; p < points.length; p++) {
+            points[p] = centers[p % k].clone();
+            for (int d = 0; d < dimension; d++) {
+                points[p][d] += (float) getRandom().nextGaussian();
+            }
+        }
+
+        // every method finds the true centers, whether it starts from random points or from perturbed centers
+        var perturbed = new float[k][];
+        for (int j = 0; j < k; j++) {
+            perturbed[j] = centers[j].clone();
+            perturbed[j][(j + 1) % dimension] += 30;
+        }
+        var flat = KMeansPlusPlusClusterer.flatten(points);
+        for (var initialization : KMeansPlusPlusClusterer.Initialization.values()) {
+            var clusterer = new KMeansPlusPlusClusterer(flat, dimension, k, initialization, new Random(getRandom().nextLong()));
+            assertFindsCenters(centers, clusterer.cluster(20));
+        }
+        assertFindsCenters(centers, new KMeansPlusPlusClusterer(points, k, VectorUtil::squareDistance).cluster(20));
+        assertFindsCenters(centers, new KMeansPlusPlusClusterer(points, perturbed, VectorUtil::squareDistance).cluster(20));
+        assertFindsCenters(centers, new KMeansPlusPlusClusterer(points, perturbed).clusterMiniBatch(100, 256));
+    }
+
+    private static void assertFindsCenters(float[][] centers, float[][] centroids) {
+        assertEquals(centers.length, centroids.length);
+        for (var center : centers) {
+            float nearest = Float.MAX_VALUE;
+            for (var centroid : centroids) {
+                nearest = Math.min(nearest, VectorUtil.squareDistance(center, centroid));
+            }
+            assertTrue(nearest < 1, String.format("no centroid near %s: %f", Arrays.toString(center), nearest));
+        }
+    }
+
+    /** @return the sum of the squared distances from each point to its nearest centroid */
+    private static double error(float[] points, int dimension, float[][] centroids) {
+        double error = 0;
+        for (int p = 0; p < points.length / dimension; p++) {
+            float nearest = Float.MAX_VALUE;
+            for (var centroid : centroids) {
+                nearest = Math.min(nearest, VectorUtil.squareDistance(points, p * dimension, centroid, 0, dimension));
+            }
+            error += nearest;
+        }
+        return error;
+    }
+
+    @Test
+    public void testFewDistinctPoints() {
+        // fewer distinct points than clusters still gives k centroids
+        var points = new float[300];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = i % 3;
+        }
+        var clusterer = new KMeansPlusPlusClusterer(points, 1, 16, KMeansPlusPlusClusterer.Initialization.KMEANS_PARALLEL, new Random(getRandom().nextLong()));
+        assertEquals(16, clusterer.cluster(5).length);
+    }
+}
@@ -18,17 +18,28 @@ package com.github.jbellis.jvector.pq;
 
 import com.carrotsearch.randomizedtesting.RandomizedTest;
 import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import com.github.jbellis.jvector.disk.CompressedVectors;
 import com.github.jbellis.jvector.example.util.SimpleMappedReader;
+import com.github.jbellis.jvector.graph.ListRandomAccessVectorValues;
+import com.github.jbellis.jvector.graph.RandomAccessVectorValues;
+import com.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import com.github.jbellis.jvector.vector.VectorUtil;
 import org.junit.Test;
 
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @ThreadLeakScope(ThreadLeakScope.Scope.NONE)
 public class TestProductQuantization extends RandomizedTest {
@@ -44,6 +55,7 @@ public class TestProductQuantization extends RandomizedTest {
         try (var out = new DataOutputStream(new FileOutputStream(tempFile))) {
             pq.write(out);
         }
+        assertEquals(pq.serializedSize(), tempFile.length());
 
         // Read the pq object
         try (var in = new SimpleMappedReader(tempFile.getAbsolutePath())) {
@@ -51,4 +63,182 @@ public class TestProductQuantization extends RandomizedTest {
             assertEquals(pq, pq2);
         }
     }
+
+    @Test
+    public void testOptimizedProductQuantization() throws IOException {
+        // nearly all the variance is in the first subspace, which a rotation can spread across all of them
+        int dimension = 16;
+        var vectors = IntStream.range(0, 1024).mapToObj(i -> {
+            var v = new float[dimension];
+            for (int j = 0; j < dimension; j++) {
+                v[j] = (j < 4 ? 1 : 0.1f) * (float) getRandom().nextGaussian();
+            }
+            return v;
+        }).collect(Collectors.toList());
+        var pq = new ProductQuantization(vectors, 4, true);
+        var opq = new ProductQuantization(vectors, 4, true, 5);
+
+        // the rotation is orthogonal
+        var r = opq.getRotation();
+        assertNotNull(r);
+        for (int i = 0; i < dimension; i++) {
+            for (int j = 0; j < dimension; j++) {
+                assertEquals(i == j ? 1 : 0, VectorUtil.dotProduct(r[i], r[j]), 1e-4);
+            }
+        }
+
+        // and it reduces the quantization error
+        assertTrue(quantizationError(opq, vectors) < quantizationError(pq, vectors));
+
+        // partial scores add up to the similarity with the decoded vector
+        var query = vectors.get(0);
+        var encoded = opq.encode(vectors.get(1));
+        var decoded = new float[dimension];
+        opq.decode(encoded, decoded);
+        for (var vsf : List.of(VectorSimilarityFunction.DOT_PRODUCT, VectorSimilarityFunction.EUCLIDEAN)) {
+            var partials = opq.partialScores(query, vsf);
+            float sum = 0;
+            for (int m = 0; m < encoded.length; m++) {
+                sum += partials[m * 256 + Byte.toUnsignedInt(encoded[m])];
+            }
+            float expected = vsf == VectorSimilarityFunction.DOT_PRODUCT
+                             ? VectorUtil.dotProduct(query, decoded)
+                             : VectorUtil.squareDistance(query, decoded);
+            assertEquals(expected, sum, 1e-3 * Math.max(1, Math.abs(expected)));
+        }
+
+        // the rotation is saved and loaded along with the codebooks
+        File tempFile = File.createTempFile("opqtest", ".bin");
+        tempFile.deleteOnExit();
+        try (var out = new DataOutputStream(new FileOutputStream(tempFile))) {
+            opq.write(out);
+        }
+        assertEquals(opq.serializedSize(), tempFile.length());
+        try (var in = new SimpleMappedReader(tempFile.getAbsolutePath())) {
+            assertEquals(opq, ProductQuantization.load(in));
+        }
+    }
+
+    private static double quantizationError(ProductQuantization pq, List<float[]> vectors) {
+        var decoded = new float[pq.getOriginalDimension()];
+        double error = 0;
+        for (var v : vectors) {
+            pq.decode(pq.encode(v), decoded);
+            error += VectorUtil.squareDistance(v, decoded);
+        }
+        return error;
+    }
+
+    @Test
+    public void testSampledTraining() {
+        var vectors = IntStream.range(0, 4000).mapToObj(i -> {
+            var v = new float[4];
+            for (int j = 0; j < v.length; j++) {
+                v[j] = (float) getRandom().nextGaussian();
+            }
+            return v;
+        }).collect(Collectors.toList());
+        var read = new HashSet<Integer>();
+        var ravv = new RecordingVectorValues(new ListRandomAccessVectorValues(vectors, 4), read);
+
+        // only the sample is read
+        var sampled = new ProductQuantization(ravv, 2, true, 0, 1000, 0);
+        assertEquals(1000, read.size());
+        read.clear();
+        var miniBatch = new ProductQuantization(ravv, 2, true, 0, 1000, 256);
+        assertEquals(1000, read.size());
+
+        // and the codebooks are nearly as good as those trained on everything
+        var full = new ProductQuantization(vectors, 2, true);
+        double fullError = quantizationError(full, vectors);
+        assertTrue(quantizationError(sampled, vectors) < 2 * fullError);
+        assertTrue(quantizationError(miniBatch, vectors) < 2 * fullError);
+
+        // a sample larger than the dataset is the whole dataset
+        assertEquals(vectors.size(), ProductQuantization.sampleVectors(ravv, 10_000).size());
+    }
+
+    @Test
+    public void testSeededTraining() {
+        var vectors = IntStream.range(0, 2000).mapToObj(i -> {
+            var v = new float[8];
+            for (int j = 0; j < v.length; j++) {
+                v[j] = (float) getRandom().nextGaussian();
+            }
+            return v;
+        }).collect(Collectors.toList());
+        var ravv = new ListRandomAccessVectorValues(vectors, 8);
+
+        // the same seed gives the same codebooks, sample and rotation
+        for (var initialization : KMeansPlusPlusClusterer.Initialization.values()) {
+            long seed = getRandom().nextLong();
+            int rotationIterations = randomBoolean() ? 0 : 1;
+            assertEquals(new ProductQuantization(vectors, 2, true, rotationIterations, initialization, new Random(seed)),
+                         new ProductQuantization(vectors, 2, true, rotationIterations, initialization, new Random(seed)));
+            int miniBatchSize = randomBoolean() ? 0 : 256;
+            assertEquals(new ProductQuantization(ravv, 2, false, 0, 500, miniBatchSize, initialization, new Random(seed)),
+                         new ProductQuantization(ravv, 2, false, 0, 500, miniBatchSize, initialization, new Random(seed)));
+        }
+    }
+
+    @Test
+    public void testSymmetricScores() {
+        // off-center, so that centering changes the dot products of the centered vectors
+        int dimension = 8;
+        var vectors = IntStream.range(0, 512).mapToObj(i -> {
+            var v = new float[dimension];
+            for (int j = 0; j < dimension; j++) {
+                v[j] = 1 + (float) getRandom().nextGaussian();
+            }
+            return v;
+        }).collect(Collectors.toList());
+        var pq = new ProductQuantization(vectors, 4, true, randomBoolean() ? 0 : 2);
+        var cv = new CompressedVectors(pq, pq.encodeAll(vectors));
+
+        // the code-to-code scores are the similarities of the decoded vectors
+        var decoded1 = new float[dimension];
+        var decoded2 = new float[dimension];
+        for (var vsf : VectorSimilarityFunction.values()) {
+            var similarity = cv.neighborSimilarity(vsf);
+            for (int i = 0; i < 20; i++) {
+                int node1 = getRandom().nextInt(vectors.size());
+                int node2 = getRandom().nextInt(vectors.size());
+                pq.decode(cv.get(node1), decoded1);
+                pq.decode(cv.get(node2), decoded2);
+                float expected = vsf.compare(decoded1, decoded2);
+                assertEquals(expected, similarity.score(node1, node2), 1e-4 * Math.max(1, Math.abs(expected)));
+            }
+        }
+    }
+
+    private static class RecordingVectorValues implements RandomAccessVectorValues<float[]> {
+        private final RandomAccessVectorValues<float[]> ravv;
+        private final Set<Integer> read;
+
+        RecordingVectorValues(RandomAccessVectorValues<float[]> ravv, Set<Integer> read) {
+            this.ravv = ravv;
+            this.read = read;
+        }
+
+        @Override
+        public int size() {
+            return ravv.size();
+        }
+
+        @Override
+        public int dimension() {
+            return ravv.dimension();
+        }
+
+        @Override
+        public float[] vectorValue(int targetOrd) {
+            read.add(targetOrd);
+            return ravv.vectorValue(targetOrd);
+        }
+
+        @Override
+        public RandomAccessVectorValues<float[]> copy() {
+            return new RecordingVectorValues(ravv.copy(), read);
+        }
+    }
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.pq;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import com.github.jbellis.jvector.example.util.SimpleMappedReader;
+import com.github.jbellis.jvector.graph.GraphIndexTestCase;
+import com.github.jbellis.jvector.vector.VectorSimilarityFunction;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
+public class TestScalarQuantization extends RandomizedTest {
+    @Test
+    public void testScoring() {
+        // dimensions with different ranges, offset from the origin
+        int dimension = 24;
+        var vectors = new ArrayList<float[]>();
+        for (int i = 0; i < 200; i++) {
+            var v = GraphIndexTestCase.randomVector(getRandom(), dimension);
+            for (int j = 0; j < dimension; j++) {
+                v[j] = 3 + v[j] * (1 + j % 4);
+            }
+            vectors.add(v);
+        }
+        var sq = new ScalarQuantization(vectors, randomBoolean(), randomBoolean());
+        var encoded = sq.encodeAll(vectors);
+        var cv = new ScalarCompressedVectors(sq, encoded);
+
+        // each component is within half a step of the original
+        var decoded = new float[dimension];
+        for (int i = 0; i < vectors.size(); i++) {
+            sq.decode(encoded.get(i), decoded);
+            for (int j = 0; j < dimension; j++) {
+                assertEquals(vectors.get(i)[j], decoded[j], sq.getScale(j) / 2 + 1e-5f);
+            }
+        }
+
+        // the scores are the similarities of the decoded vectors
+        var query = vectors.get(getRandom().nextInt(vectors.size())).clone();
+        var decodedQuery = new float[dimension];
+        sq.decode(sq.encode(query), decodedQuery);
+        for (var vsf : VectorSimilarityFunction.values()) {
+            var sf = cv.approximateScoreFunctionFor(query, vsf);
+            var ns = cv.neighborSimilarity(vsf);
+            for (int i = 0; i < vectors.size(); i++) {
+                sq.decode(encoded.get(i), decoded);
+                float expected = vsf.compare(decodedQuery, decoded);
+                assertEquals(expected, sf.similarityTo(i), 1e-4f * Math.max(1, Math.abs(expected)));
+                float score = ns.score(i, 0);
+                assertEquals(score, ns.score(0, i), 1e-5f * Math.max(1, Math.abs(score)));
+            }
+        }
+    }
+
+    @Test
+    public void testPerDimensionScales() {
+        // ranges that differ by a factor of 1000, as when features are not normalized
+        int dimension = 16;
+        var vectors = new ArrayList<float[]>();
+        for (int i = 0; i < 500; i++) {
+            var v = new float[dimension];
+            for (int j = 0; j < dimension; j++) {
+                v[j] = (float) Math.pow(10, j % 4 - 2) * (2 * getRandom().nextFloat() - 1);
+            }
+            vectors.add(v);
+        }
+        var shared = new ScalarQuantization(vectors, true);
+        var perDimension = new ScalarQuantization(vectors, true, true);
+        assertTrue(shared.hasSharedScale());
+        assertFalse(perDimension.hasSharedScale());
+
+        // with a shared scale, the narrowest dimensions collapse to a handful of codes;
+        // with their own, every dimension keeps its relative precision
+        var decoded = new float[dimension];
+        double sharedError = 0;
+        double perDimensionError = 0;
+        for (var v : vectors) {
+            shared.decode(shared.encode(v), decoded);
+            sharedError += relativeError(v, decoded);
+            perDimension.decode(perDimension.encode(v), decoded);
+            perDimensionError += relativeError(v, decoded);
+            for (int j = 0; j < dimension; j++) {
+                assertEquals(v[j], decoded[j], perDimension.getScale(j) / 2 + 1e-6f);
+            }
+        }
+        assertTrue(String.format("per-dimension error %s should be well below shared %s", perDimensionError, sharedError),
+                   perDimensionError < sharedError / 10);
+    }
+
+    /** @return the square error of each dimension, relative to the square of its largest magnitude */
+    private static double relativeError(float[] v, float[] decoded) {
+        double error = 0;
+        for (int j = 0; j < v.length; j++) {
+            double range = Math.pow(10, j % 4 - 2);
+            double diff = (v[j] - decoded[j]) / range;
+            error += diff * diff;
+        }
+        return error;
+    }
+
+    @Test
+    public void testSaveLoad() throws IOException {
+        var vectors = new ArrayList<float[]>();
+        for (int i = 0; i < 100; i++) {
+            vectors.add(GraphIndexTestCase.randomVector(getRandom(), 16));
+        }
+        var sq = new ScalarQuantization(vectors, true, randomBoolean());
+        var cv = new ScalarCompressedVectors(sq, sq.encodeAll(vectors));
+
+        File tempFile = File.createTempFile("sqtest", ".bin");
+        tempFile.deleteOnExit();
+        try (var out = new DataOutputStream(new FileOutputStream(tempFile))) {
+            cv.write(out);
+        }
+
+        try (var in = new SimpleMappedReader(tempFile.getAbsolutePath())) {
+            var cv2 = ScalarCompressedVectors.load(in, 0);
+            assertEquals(sq, cv2.getScalarQuantization());
+            assertEquals(cv.size(), cv2.size());
+            for (int i = 0; i < cv.size(); i++) {
+                assertArrayEquals(cv.get(i), cv2.get(i));
+            }
+        }
+    }
+}
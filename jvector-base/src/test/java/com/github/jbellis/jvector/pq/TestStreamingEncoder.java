@@ -0,0 +1,105 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.pq;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import com.github.jbellis.jvector.graph.GraphIndexTestCase;
+import com.github.jbellis.jvector.graph.ListRandomAccessVectorValues;
+import com.github.jbellis.jvector.vector.VectorUtil;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@ThreadLeakScope(ThreadLeakScope.Scope.NONE)
+public class TestStreamingEncoder extends RandomizedTest {
+    @Test
+    public void testEncoding() throws IOException {
+        int dimension = 8;
+        var vectors = randomVectors(3000, dimension, 0);
+        var pq = new ProductQuantization(vectors, 4, randomBoolean());
+        int M = pq.getSubspaceCount();
+
+        // the codes are those of encode, one after another
+        var encoder = new StreamingEncoder(pq, StreamingEncoder.meanError(pq, vectors));
+        var codes = encoder.encodeAll(new ListRandomAccessVectorValues(vectors, dimension));
+        assertEquals(vectors.size() * M, codes.length);
+        double error = 0;
+        var decoded = new float[dimension];
+        for (int i = 0; i < vectors.size(); i++) {
+            var expected = pq.encode(vectors.get(i));
+            for (int m = 0; m < M; m++) {
+                assertEquals(expected[m], codes[i * M + m]);
+            }
+            pq.decode(expected, decoded);
+            error += VectorUtil.squareDistance(vectors.get(i), decoded);
+        }
+        assertEquals(vectors.size(), encoder.getEncodedCount());
+        assertEquals(error / vectors.size(), encoder.getMeanError(), 1e-3 * encoder.getMeanError());
+
+        // and the same when streamed from an iterator, which may reuse its array
+        var bytes = new ByteArrayOutputStream();
+        var reused = new float[dimension];
+        var iterator = vectors.stream().map(v -> {
+            System.arraycopy(v, 0, reused, 0, dimension);
+            return reused;
+        }).iterator();
+        var streamingEncoder = new StreamingEncoder(pq, encoder.getBaselineError());
+        assertEquals(vectors.size(), streamingEncoder.encodeTo(iterator, new DataOutputStream(bytes)));
+        assertArrayEquals(codes, bytes.toByteArray());
+
+        // the chunks are recorded in order either way, so the statistics match exactly
+        assertEquals(encoder.getMeanError(), streamingEncoder.getMeanError(), 0.0);
+        assertEquals(encoder.getRecentError(), streamingEncoder.getRecentError(), 0.0);
+    }
+
+    @Test
+    public void testDrift() {
+        int dimension = 8;
+        var vectors = randomVectors(2000, dimension, 0);
+        var pq = new ProductQuantization(vectors, 4, false);
+        // the baseline comes from vectors the codebooks were not trained on, which they fit more loosely
+        var encoder = new StreamingEncoder(pq, StreamingEncoder.meanError(pq, randomVectors(2000, dimension, 0)));
+
+        // vectors like the training set leave the error where it was
+        encoder.encodeAll(new ListRandomAccessVectorValues(randomVectors(20_000, dimension, 0), dimension));
+        assertFalse(encoder.hasDrifted(1.5));
+
+        // vectors that have moved away from the codebooks raise it
+        encoder.encodeAll(new ListRandomAccessVectorValues(randomVectors(100_000, dimension, 3), dimension));
+        assertTrue(encoder.hasDrifted(1.5));
+        assertTrue(encoder.getRecentError() > encoder.getMeanError());
+    }
+
+    private static List<float[]> randomVectors(int count, int dimension, float shift) {
+        var vectors = new ArrayList<float[]>(count);
+        for (int i = 0; i < count; i++) {
+            var v = GraphIndexTestCase.randomVector(getRandom(), dimension);
+            for (int j = 0; j < dimension; j++) {
+                v[j] += shift;
+            }
+            vectors.add(v);
+        }
+        return vectors;
+    }
+}
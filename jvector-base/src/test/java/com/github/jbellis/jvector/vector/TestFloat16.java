@@ -0,0 +1,71 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.jbellis.jvector.vector;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestFloat16 extends RandomizedTest {
+    @Test
+    public void testKnownValues() {
+        assertEquals(1.0f, Float16.toFloat((short) 0x3c00), 0.0f);
+        assertEquals(-2.0f, Float16.toFloat((short) 0xc000), 0.0f);
+        assertEquals(65504.0f, Float16.toFloat((short) 0x7bff), 0.0f);
+        assertEquals(0x1p-24f, Float16.toFloat((short) 0x0001), 0.0f);
+        assertEquals(Float.POSITIVE_INFINITY, Float16.toFloat((short) 0x7c00), 0.0f);
+        assertTrue(Float.isNaN(Float16.toFloat((short) 0x7e00)));
+
+        assertEquals((short) 0x3c00, Float16.fromFloat(1.0f));
+        assertEquals((short) 0x8000, Float16.fromFloat(-0.0f));
+        assertEquals((short) 0x0001, Float16.fromFloat(0x1p-24f));
+        assertEquals((short) 0x0000, Float16.fromFloat(0x1p-26f));
+        assertEquals((short) 0x7c00, Float16.fromFloat(1e6f));
+        assertTrue(Float.isNaN(Float16.toFloat(Float16.fromFloat(Float.NaN))));
+    }
+
+    @Test
+    public void testRoundsToNearestEven() {
+        // halfway between 1 and the next half, which is odd, so round down to 1
+        assertEquals((short) 0x3c00, Float16.fromFloat(1 + 0x1p-11f));
+        // halfway between two halves, the larger of which is even
+        assertEquals((short) 0x3c02, Float16.fromFloat(1 + 3 * 0x1p-11f));
+        // just above halfway
+        assertEquals((short) 0x3c01, Float16.fromFloat(Math.nextUp(1 + 0x1p-11f)));
+        // 65520 is halfway between the largest half and the next power of two, so rounds to infinity
+        assertEquals((short) 0x7c00, Float16.fromFloat(65520f));
+        assertEquals((short) 0x7bff, Float16.fromFloat(65519f));
+        // subnormal ties
+        assertEquals((short) 0x0002, Float16.fromFloat(2.5f * 0x1p-24f));
+        assertEquals((short) 0x0004, Float16.fromFloat(3.5f * 0x1p-24f));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        for (int i = 0; i < 1 << 16; i++) {
+            short half = (short) i;
+            float f = Float16.toFloat(half);
+            if (Float.isNaN(f)) {
+                assertTrue(Float.isNaN(Float16.toFloat(Float16.fromFloat(f))));
+            } else {
+                assertEquals(half, Float16.fromFloat(f));
+            }
+        }
+    }
+}
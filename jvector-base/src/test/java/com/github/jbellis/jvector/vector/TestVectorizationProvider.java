@@ -23,6 +23,9 @@ import org.junit.Test;
 
 import com.github.jbellis.jvector.graph.GraphIndexTestCase;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 public class TestVectorizationProvider extends RandomizedTest {
     static boolean hasSimd = VectorizationProvider.vectorModulePresentAndReadable();
 
@@ -43,6 +46,151 @@ public class TestVectorizationProvider extends RandomizedTest {
         }
     }
 
+    @Test
+    public void testFloatBuffer() {
+        Assume.assumeTrue(hasSimd);
+
+        VectorizationProvider a = new DefaultVectorizationProvider();
+        VectorizationProvider b = VectorizationProvider.getInstance();
+
+        for (int i = 0; i < 1000; i++) {
+            float[] v1 = GraphIndexTestCase.randomVector(getRandom(), 1021); //prime numbers
+            float[] v2 = GraphIndexTestCase.randomVector(getRandom(), 1021);
+            int offset = getRandom().nextInt(10);
+            var buffer = randomBoolean() ? ByteBuffer.allocateDirect(offset + 4 * v2.length) : ByteBuffer.allocate(offset + 4 * v2.length);
+            buffer.order(randomBoolean() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+            for (int j = 0; j < v2.length; j++) {
+                buffer.putFloat(offset + 4 * j, v2[j]);
+            }
+
+            Assert.assertEquals(a.getVectorUtilSupport().dotProduct(v1, v2), b.getVectorUtilSupport().dotProduct(v1, buffer, offset), 0.00001f);
+            Assert.assertEquals(a.getVectorUtilSupport().cosine(v1, buffer, offset), b.getVectorUtilSupport().cosine(v1, buffer, offset), 0.00001f);
+            Assert.assertEquals(a.getVectorUtilSupport().squareDistance(v1, buffer, offset), b.getVectorUtilSupport().squareDistance(v1, buffer, offset), 0.00001f);
+        }
+    }
+
+    @Test
+    public void testFloat16() {
+        Assume.assumeTrue(hasSimd);
+
+        VectorizationProvider a = new DefaultVectorizationProvider();
+        VectorizationProvider b = VectorizationProvider.getInstance();
+
+        for (int i = 0; i < 1000; i++) {
+            float[] v1 = GraphIndexTestCase.randomVector(getRandom(), 1021); //prime numbers
+            int offset = getRandom().nextInt(10);
+            short[] v2 = new short[offset + v1.length];
+            for (int j = 0; j < v1.length; j++) {
+                // random bits cover subnormals, but not infinities or NaNs
+                float f = Float16.toFloat((short) getRandom().nextInt(1 << 16));
+                v2[offset + j] = Float.isFinite(f) ? Float16.fromFloat(f / 65504) : 0;
+            }
+
+            Assert.assertEquals(a.getVectorUtilSupport().dotProduct(v1, v2, offset), b.getVectorUtilSupport().dotProduct(v1, v2, offset), 0.0001f);
+            Assert.assertEquals(a.getVectorUtilSupport().cosine(v1, v2, offset), b.getVectorUtilSupport().cosine(v1, v2, offset), 0.0001f);
+            Assert.assertEquals(a.getVectorUtilSupport().squareDistance(v1, v2, offset), b.getVectorUtilSupport().squareDistance(v1, v2, offset), 0.0001f);
+        }
+    }
+
+    @Test
+    public void testFastScanBlock() {
+        Assume.assumeTrue(hasSimd);
+
+        VectorizationProvider a = new DefaultVectorizationProvider();
+        VectorizationProvider b = VectorizationProvider.getInstance();
+
+        for (int i = 0; i < 1000; i++) {
+            int pairs = getRandom().nextInt(129);
+            int offset = getRandom().nextInt(10);
+            byte[] codes = new byte[offset + 16 * pairs];
+            byte[] table = new byte[32 * pairs];
+            getRandom().nextBytes(codes);
+            getRandom().nextBytes(table);
+
+            int[] expected = new int[16];
+            int[] actual = new int[16];
+            a.getVectorUtilSupport().fastScanBlock(codes, offset, table, pairs, expected);
+            b.getVectorUtilSupport().fastScanBlock(codes, offset, table, pairs, actual);
+            Assert.assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testHammingDistance() {
+        Assume.assumeTrue(hasSimd);
+
+        VectorizationProvider a = new DefaultVectorizationProvider();
+        VectorizationProvider b = VectorizationProvider.getInstance();
+
+        for (int i = 0; i < 1000; i++) {
+            int length = getRandom().nextInt(40);
+            long[] v1 = new long[length];
+            long[] v2 = new long[length];
+            for (int j = 0; j < length; j++) {
+                v1[j] = getRandom().nextLong();
+                v2[j] = getRandom().nextLong();
+            }
+
+            Assert.assertEquals(a.getVectorUtilSupport().hammingDistance(v1, v2), b.getVectorUtilSupport().hammingDistance(v1, v2));
+        }
+    }
+
+    @Test
+    public void testSubInPlace() {
+        Assume.assumeTrue(hasSimd);
+
+        VectorizationProvider a = new DefaultVectorizationProvider();
+        VectorizationProvider b = VectorizationProvider.getInstance();
+
+        for (int i = 0; i < 1000; i++) {
+            int length = getRandom().nextInt(40);
+            float[] v1 = new float[length];
+            float[] v2 = new float[length];
+            for (int j = 0; j < length; j++) {
+                v1[j] = getRandom().nextFloat();
+                v2[j] = getRandom().nextFloat();
+            }
+
+            float[] expected = a.getVectorUtilSupport().sub(v1, v2);
+            float[] actual = v1.clone();
+            b.getVectorUtilSupport().subInPlace(actual, v2);
+            Assert.assertArrayEquals(expected, actual, 0.0f);
+            a.getVectorUtilSupport().subInPlace(v1, v2);
+            Assert.assertArrayEquals(expected, v1, 0.0f);
+        }
+    }
+
+    @Test
+    public void testSquareDistances() {
+        Assume.assumeTrue(hasSimd);
+
+        VectorizationProvider a = new DefaultVectorizationProvider();
+        VectorizationProvider b = VectorizationProvider.getInstance();
+
+        for (int i = 0; i < 1000; i++) {
+            int dimension = 1 + getRandom().nextInt(16);
+            int count = 1 + getRandom().nextInt(300);
+            int offset = getRandom().nextInt(10);
+            int columnsOffset = getRandom().nextInt(10);
+            float[] v = GraphIndexTestCase.randomVector(getRandom(), offset + dimension);
+            float[] columns = GraphIndexTestCase.randomVector(getRandom(), columnsOffset + dimension * count);
+
+            float[] expected = new float[count];
+            float[] actual = new float[count];
+            a.getVectorUtilSupport().squareDistances(v, offset, dimension, columns, columnsOffset, count, expected);
+            b.getVectorUtilSupport().squareDistances(v, offset, dimension, columns, columnsOffset, count, actual);
+            Assert.assertArrayEquals(expected, actual, 1e-4f);
+
+            // the same as one at a time
+            float[] vector = new float[dimension];
+            for (int j = 0; j < dimension; j++) {
+                vector[j] = columns[columnsOffset + j * count];
+            }
+            Assert.assertEquals(b.getVectorUtilSupport().squareDistance(v, offset, vector, 0, dimension), actual[0], 1e-4f);
+            Assert.assertEquals(a.getVectorUtilSupport().squareDistance(v, offset, vector, 0, dimension), actual[0], 1e-4f);
+        }
+    }
+
     @Test
     public void testDotProductByte() {
         Assume.assumeTrue(hasSimd);
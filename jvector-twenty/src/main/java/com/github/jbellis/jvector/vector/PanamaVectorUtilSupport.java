@@ -16,6 +16,8 @@
 
 package com.github.jbellis.jvector.vector;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.List;
 
 import com.github.jbellis.jvector.vector.VectorUtilSupport;
@@ -24,6 +26,33 @@ import com.github.jbellis.jvector.vector.SimdOps;
 final class
 PanamaVectorUtilSupport implements VectorUtilSupport
 {
+    // The Vector API can only load from a buffer via MemorySegment, which is a preview API in the
+    // JDK releases we compile against, so buffer-backed vectors are bulk-copied into per-thread
+    // arrays and scored with the array kernels.  Index files are big-endian, so those bytes are
+    // swapped with a shuffle rather than one float at a time.  See SimilarityBench.
+    private static final ThreadLocal<Scratch> bufferScratch = ThreadLocal.withInitial(Scratch::new);
+
+    private static final class Scratch {
+        byte[] bytes = new byte[0];
+        float[] floats = new float[0];
+    }
+
+    /** @return the `length` floats at `bOffset` in `b`, in an array that is reused by the next call on this thread */
+    private static float[] floatsOf(ByteBuffer b, int bOffset, int length) {
+        Scratch scratch = bufferScratch.get();
+        if (scratch.floats.length != length) {
+            scratch.bytes = new byte[length * Float.BYTES];
+            scratch.floats = new float[length];
+        }
+        if (b.order() == ByteOrder.BIG_ENDIAN) {
+            b.get(bOffset, scratch.bytes);
+            SimdOps.bigEndianFloats(scratch.bytes, scratch.floats);
+        } else {
+            // duplicates are always big-endian, so restore the order of the original
+            b.duplicate().position(bOffset).order(b.order()).asFloatBuffer().get(scratch.floats);
+        }
+        return scratch.floats;
+    }
 
     @Override
     public float dotProduct(float[] a, float[] b) {
@@ -40,6 +69,51 @@ PanamaVectorUtilSupport implements VectorUtilSupport
         return SimdOps.squareDistance(a, b);
     }
 
+    @Override
+    public float dotProduct(float[] a, ByteBuffer b, int bOffset) {
+        return SimdOps.dotProduct(a, floatsOf(b, bOffset, a.length));
+    }
+
+    @Override
+    public float cosine(float[] a, ByteBuffer b, int bOffset) {
+        return SimdOps.cosineSimilarity(a, floatsOf(b, bOffset, a.length));
+    }
+
+    @Override
+    public float squareDistance(float[] a, ByteBuffer b, int bOffset) {
+        return SimdOps.squareDistance(a, floatsOf(b, bOffset, a.length));
+    }
+
+    @Override
+    public float dotProduct(float[] a, short[] b, int bOffset) {
+        return SimdOps.dotProduct(a, b, bOffset);
+    }
+
+    @Override
+    public float cosine(float[] a, short[] b, int bOffset) {
+        return SimdOps.cosineSimilarity(a, b, bOffset);
+    }
+
+    @Override
+    public float squareDistance(float[] a, short[] b, int bOffset) {
+        return SimdOps.squareDistance(a, b, bOffset);
+    }
+
+    @Override
+    public float squareDistance(float[] a, int aoffset, float[] b, int boffset, int length) {
+        return SimdOps.squareDistance(a, aoffset, b, boffset, length);
+    }
+
+    @Override
+    public void squareDistances(float[] a, int aoffset, int dimension, float[] columns, int columnsOffset, int count, float[] distances) {
+        SimdOps.squareDistances(a, aoffset, dimension, columns, columnsOffset, count, distances);
+    }
+
+    @Override
+    public void fastScanBlock(byte[] codes, int offset, byte[] table, int pairs, int[] sums) {
+        SimdOps.fastScanBlock(codes, offset, table, pairs, sums);
+    }
+
     @Override
     public int dotProduct(byte[] a, byte[] b) {
         return SimdOps.dotProduct(a, b);
@@ -60,6 +134,11 @@ PanamaVectorUtilSupport implements VectorUtilSupport
         return SimdOps.squareDistance(a, b);
     }
 
+    @Override
+    public int hammingDistance(long[] a, long[] b) {
+        return SimdOps.hammingDistance(a, b);
+    }
+
     @Override
     public float[] sum(List<float[]> vectors) {
         return SimdOps.sum(vectors);
@@ -84,4 +163,9 @@ PanamaVectorUtilSupport implements VectorUtilSupport
     public float[] sub(float[] lhs, float[] rhs) {
         return SimdOps.sub(lhs, rhs);
     }
+
+    @Override
+    public void subInPlace(float[] v1, float[] v2) {
+        SimdOps.subInPlace(v1, v2);
+    }
 }
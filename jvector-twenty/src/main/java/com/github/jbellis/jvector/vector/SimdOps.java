@@ -19,7 +19,13 @@ package com.github.jbellis.jvector.vector;
 import jdk.incubator.vector.ByteVector;
 import jdk.incubator.vector.FloatVector;
 import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
 import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
 
 import java.util.List;
 
@@ -28,6 +34,28 @@ final class SimdOps {
         System.setProperty("jdk.incubator.vector.VECTOR_ACCESS_OOB_CHECK", "0");
     }
 
+    // reverses the four bytes of each float; reinterpreting bytes as floats is little-endian
+    private static final VectorShuffle<Byte> SWAP_FLOAT_BYTES =
+            VectorShuffle.fromOp(ByteVector.SPECIES_PREFERRED, i -> (i & ~3) | (3 - (i & 3)));
+
+    /** Decodes `dst.length` big-endian floats from the start of `src` */
+    static void bigEndianFloats(byte[] src, float[] dst) {
+        int vectorizedLength = ByteVector.SPECIES_PREFERRED.loopBound(dst.length * Float.BYTES);
+
+        for (int i = 0; i < vectorizedLength; i += ByteVector.SPECIES_PREFERRED.length()) {
+            ByteVector.fromArray(ByteVector.SPECIES_PREFERRED, src, i)
+                    .rearrange(SWAP_FLOAT_BYTES)
+                    .reinterpretAsFloats()
+                    .intoArray(dst, i / Float.BYTES);
+        }
+
+        for (int i = vectorizedLength / Float.BYTES; i < dst.length; i++) {
+            int j = i * Float.BYTES;
+            int bits = (src[j] & 0xff) << 24 | (src[j + 1] & 0xff) << 16 | (src[j + 2] & 0xff) << 8 | (src[j + 3] & 0xff);
+            dst[i] = Float.intBitsToFloat(bits);
+        }
+    }
+
     static float sum(float[] vector) {
         var sum = FloatVector.zero(FloatVector.SPECIES_PREFERRED);
         int vectorizedLength = FloatVector.SPECIES_PREFERRED.loopBound(vector.length);
@@ -315,6 +343,118 @@ final class SimdOps {
     }
 
 
+    // half-precision values are loaded as shorts with the same lane count as SPECIES_PREFERRED floats,
+    // then widened to ints of the same shape as the floats
+    private static final VectorSpecies<Short> HALF_SPECIES =
+            VectorSpecies.of(short.class, VectorShape.forBitSize(FloatVector.SPECIES_PREFERRED.vectorBitSize() / 2));
+    private static final VectorSpecies<Integer> HALF_BITS_SPECIES =
+            VectorSpecies.of(int.class, FloatVector.SPECIES_PREFERRED.vectorShape());
+
+    /**
+     * Converts SPECIES_PREFERRED.length() half-precision values to floats with bit manipulation
+     * (the Vector API has no half-precision lane type in the JDKs we support).
+     * <p>
+     * Shifting the exponent and mantissa into float position and multiplying by 2^112 rebiases
+     * the exponent of normal values and scales subnormals correctly; infinities and NaNs then
+     * just need their exponent set to all ones.
+     */
+    private static FloatVector float16ToFloat(short[] halves, int offset) {
+        var bits = (IntVector) ShortVector.fromArray(HALF_SPECIES, halves, offset)
+                .convertShape(VectorOperators.S2I, HALF_BITS_SPECIES, 0);
+        var magnitude = bits.and(0x7fff).lanewise(VectorOperators.LSHL, 13);
+        VectorMask<Integer> infOrNaN = magnitude.compare(VectorOperators.GE, 0x1f << 23);
+        var floatBits = magnitude.reinterpretAsFloats().mul(0x1p112f).reinterpretAsInts()
+                .lanewise(VectorOperators.OR, 0x7f800000, infOrNaN)
+                .or(bits.and(0x8000).lanewise(VectorOperators.LSHL, 16));
+        return floatBits.reinterpretAsFloats();
+    }
+
+    static float dotProduct(float[] v1, short[] v2, int v2offset) {
+        var vsum = FloatVector.zero(FloatVector.SPECIES_PREFERRED);
+        int vectorizedLength = FloatVector.SPECIES_PREFERRED.loopBound(v1.length);
+        for (int i = 0; i < vectorizedLength; i += FloatVector.SPECIES_PREFERRED.length()) {
+            var a = FloatVector.fromArray(FloatVector.SPECIES_PREFERRED, v1, i);
+            var b = float16ToFloat(v2, v2offset + i);
+            vsum = a.fma(b, vsum);
+        }
+
+        float sum = vsum.reduceLanes(VectorOperators.ADD);
+        for (int i = vectorizedLength; i < v1.length; i++) {
+            sum += v1[i] * Float16.toFloat(v2[v2offset + i]);
+        }
+        return sum;
+    }
+
+    static float cosineSimilarity(float[] v1, short[] v2, int v2offset) {
+        var vsum = FloatVector.zero(FloatVector.SPECIES_PREFERRED);
+        var vaMagnitude = FloatVector.zero(FloatVector.SPECIES_PREFERRED);
+        var vbMagnitude = FloatVector.zero(FloatVector.SPECIES_PREFERRED);
+
+        int vectorizedLength = FloatVector.SPECIES_PREFERRED.loopBound(v1.length);
+        for (int i = 0; i < vectorizedLength; i += FloatVector.SPECIES_PREFERRED.length()) {
+            var a = FloatVector.fromArray(FloatVector.SPECIES_PREFERRED, v1, i);
+            var b = float16ToFloat(v2, v2offset + i);
+            vsum = a.fma(b, vsum);
+            vaMagnitude = a.fma(a, vaMagnitude);
+            vbMagnitude = b.fma(b, vbMagnitude);
+        }
+
+        float sum = vsum.reduceLanes(VectorOperators.ADD);
+        float aMagnitude = vaMagnitude.reduceLanes(VectorOperators.ADD);
+        float bMagnitude = vbMagnitude.reduceLanes(VectorOperators.ADD);
+        for (int i = vectorizedLength; i < v1.length; i++) {
+            float b = Float16.toFloat(v2[v2offset + i]);
+            sum += v1[i] * b;
+            aMagnitude += v1[i] * v1[i];
+            bMagnitude += b * b;
+        }
+
+        return (float) (sum / Math.sqrt((double) aMagnitude * (double) bMagnitude));
+    }
+
+    static float squareDistance(float[] v1, short[] v2, int v2offset) {
+        var vdiffSumSquared = FloatVector.zero(FloatVector.SPECIES_PREFERRED);
+        int vectorizedLength = FloatVector.SPECIES_PREFERRED.loopBound(v1.length);
+        for (int i = 0; i < vectorizedLength; i += FloatVector.SPECIES_PREFERRED.length()) {
+            var a = FloatVector.fromArray(FloatVector.SPECIES_PREFERRED, v1, i);
+            var diff = a.sub(float16ToFloat(v2, v2offset + i));
+            vdiffSumSquared = diff.fma(diff, vdiffSumSquared);
+        }
+
+        float diffSumSquared = vdiffSumSquared.reduceLanes(VectorOperators.ADD);
+        for (int i = vectorizedLength; i < v1.length; i++) {
+            float diff = v1[i] - Float16.toFloat(v2[v2offset + i]);
+            diffSumSquared += diff * diff;
+        }
+        return diffSumSquared;
+    }
+
+    /**
+     * Each 16-entry table fits in one 128-bit register, so every lookup is a single byte shuffle
+     * for all 16 codes of the block.  Sums are accumulated in 16-bit lanes.
+     */
+    static void fastScanBlock(byte[] codes, int offset, byte[] table, int pairs, int[] sums) {
+        var acc = ShortVector.zero(ShortVector.SPECIES_256);
+        for (int p = 0; p < pairs; p++) {
+            var packed = ByteVector.fromArray(ByteVector.SPECIES_128, codes, offset + 16 * p);
+            var low = packed.and((byte) 0x0f);
+            var high = packed.lanewise(VectorOperators.LSHR, 4);
+            var lowTable = ByteVector.fromArray(ByteVector.SPECIES_128, table, 32 * p);
+            var highTable = ByteVector.fromArray(ByteVector.SPECIES_128, table, 32 * p + 16);
+            var lookups = low.selectFrom(lowTable);
+            var highLookups = high.selectFrom(highTable);
+            // widen to shorts without sign extension
+            acc = acc.add(lookups.convertShape(VectorOperators.B2S, ShortVector.SPECIES_256, 0).reinterpretAsShorts().and((short) 0xff));
+            acc = acc.add(highLookups.convertShape(VectorOperators.B2S, ShortVector.SPECIES_256, 0).reinterpretAsShorts().and((short) 0xff));
+        }
+        // the sums are unsigned, so mask off the sign extension
+        for (int part = 0; part < 2; part++) {
+            acc.convertShape(VectorOperators.S2I, IntVector.SPECIES_256, part).reinterpretAsInts()
+               .and(0xffff)
+               .intoArray(sums, 8 * part);
+        }
+    }
+
     static float squareDistance(float[] v1, float[] v2) {
         if (v1.length != v2.length) {
             throw new IllegalArgumentException("Vectors must have the same length");
@@ -341,6 +481,51 @@ final class SimdOps {
         return diffSumSquared;
     }
 
+    static float squareDistance(float[] v1, int v1offset, float[] v2, int v2offset, int length) {
+        var vdiffSumSquared = FloatVector.zero(FloatVector.SPECIES_PREFERRED);
+        int vectorizedLength = FloatVector.SPECIES_PREFERRED.loopBound(length);
+        for (int i = 0; i < vectorizedLength; i += FloatVector.SPECIES_PREFERRED.length()) {
+            var a = FloatVector.fromArray(FloatVector.SPECIES_PREFERRED, v1, v1offset + i);
+            var b = FloatVector.fromArray(FloatVector.SPECIES_PREFERRED, v2, v2offset + i);
+            var diff = a.sub(b);
+            vdiffSumSquared = diff.fma(diff, vdiffSumSquared);
+        }
+
+        float diffSumSquared = vdiffSumSquared.reduceLanes(VectorOperators.ADD);
+        for (int i = vectorizedLength; i < length; i++) {
+            float diff = v1[v1offset + i] - v2[v2offset + i];
+            diffSumSquared += diff * diff;
+        }
+        return diffSumSquared;
+    }
+
+    /**
+     * Vectorized across the `count` vectors rather than along their (typically short) dimension:
+     * each lane accumulates the distance to one vector, so the accumulators stay in registers
+     * and every load is contiguous.
+     */
+    static void squareDistances(float[] a, int aoffset, int dimension, float[] columns, int columnsOffset, int count, float[] distances) {
+        int vectorizedCount = FloatVector.SPECIES_PREFERRED.loopBound(count);
+        for (int i = 0; i < vectorizedCount; i += FloatVector.SPECIES_PREFERRED.length()) {
+            var acc = FloatVector.zero(FloatVector.SPECIES_PREFERRED);
+            for (int j = 0; j < dimension; j++) {
+                var c = FloatVector.fromArray(FloatVector.SPECIES_PREFERRED, columns, columnsOffset + j * count + i);
+                var diff = c.sub(a[aoffset + j]);
+                acc = diff.fma(diff, acc);
+            }
+            acc.intoArray(distances, i);
+        }
+
+        for (int i = vectorizedCount; i < count; i++) {
+            float sum = 0;
+            for (int j = 0; j < dimension; j++) {
+                float diff = a[aoffset + j] - columns[columnsOffset + j * count + i];
+                sum += diff * diff;
+            }
+            distances[i] = sum;
+        }
+    }
+
     static int squareDistance(byte[] v1, byte[] v2) {
         if (v1.length != v2.length) {
             throw new IllegalArgumentException("Vectors must have the same length");
@@ -368,6 +553,31 @@ final class SimdOps {
         return diffSumSquared;
     }
 
+    static int hammingDistance(long[] v1, long[] v2) {
+        if (v1.length != v2.length) {
+            throw new IllegalArgumentException("Vectors must have the same length");
+        }
+
+        var vcount = LongVector.zero(LongVector.SPECIES_PREFERRED);
+
+        int vectorizedLength = LongVector.SPECIES_PREFERRED.loopBound(v1.length);
+        // Process the vectorized part
+        for (int i = 0; i < vectorizedLength; i += LongVector.SPECIES_PREFERRED.length()) {
+            var a = LongVector.fromArray(LongVector.SPECIES_PREFERRED, v1, i);
+            var b = LongVector.fromArray(LongVector.SPECIES_PREFERRED, v2, i);
+            vcount = vcount.add(a.lanewise(VectorOperators.XOR, b).lanewise(VectorOperators.BIT_COUNT));
+        }
+
+        long count = vcount.reduceLanes(VectorOperators.ADD);
+
+        // Process the tail
+        for (int i = vectorizedLength; i < v1.length; i++) {
+            count += Long.bitCount(v1[i] ^ v2[i]);
+        }
+
+        return (int) count;
+    }
+
     static void addInPlace(float[] v1, float[] v2) {
         if (v1.length != v2.length) {
             throw new IllegalArgumentException("Vectors must have the same length");
@@ -388,6 +598,26 @@ final class SimdOps {
         }
     }
 
+    static void subInPlace(float[] v1, float[] v2) {
+        if (v1.length != v2.length) {
+            throw new IllegalArgumentException("Vectors must have the same length");
+        }
+
+        int vectorizedLength = FloatVector.SPECIES_PREFERRED.loopBound(v1.length);
+
+        // Process the vectorized part
+        for (int i = 0; i < vectorizedLength; i += FloatVector.SPECIES_PREFERRED.length()) {
+            var a = FloatVector.fromArray(FloatVector.SPECIES_PREFERRED, v1, i);
+            var b = FloatVector.fromArray(FloatVector.SPECIES_PREFERRED, v2, i);
+            a.sub(b).intoArray(v1, i);
+        }
+
+        // Process the tail
+        for (int i = vectorizedLength; i < v1.length; i++) {
+            v1[i] = v1[i] - v2[i];
+        }
+    }
+
     static float[] sub(float[] lhs, float[] rhs) {
         if (lhs.length != rhs.length) {
             throw new IllegalArgumentException("Vectors must have the same length");